@@ -0,0 +1,358 @@
+package uk.co.lamsey.score5al.control;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.lamsey.score5al.control.CommandQueue.Command;
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.ui.Icons;
+import uk.co.lamsey.score5al.ui.MainWindow;
+
+/**
+ * Saves a copy of the match in the background while it has unsaved changes,
+ * so there's always a recent copy without the scorer having to stop and save.
+ * Copies are saved in the binary format to a folder in the user's home
+ * folder, and the previous few copies are kept as numbered backups. Each copy
+ * is named after the match's save file plus a hash of its full path, so
+ * matches with the same file name in different folders don't share copies; a
+ * match which has never been saved is named after the time it was first
+ * copied. Autosaving doesn't change the match's save file or mark the match as
+ * saved.
+ * 
+ * A copy is saved once the match has been left unchanged for the idle delay
+ * after a change, or once the interval has passed since the last copy if the
+ * match keeps changing (for example while the jam clock runs). Nothing is
+ * written if the match hasn't changed since the last copy. The interval and
+ * idle delay (in seconds, 0 to turn that trigger off) default to the
+ * "score5al.autosave.interval" and "score5al.autosave.idle" system
+ * properties.
+ */
+public class AutoSaver {
+
+	/**
+	 * The folder in which copies are saved.
+	 */
+	private static final File FOLDER = new File(
+			System.getProperty("user.home"), ".score5al-autosave");
+
+	/**
+	 * The number of older copies kept for each match.
+	 */
+	private static final int BACKUPS = 3;
+
+	/**
+	 * How often the triggers are checked, in milliseconds.
+	 */
+	private static final long CHECK_PERIOD = 1000;
+
+	/**
+	 * The executor which owns the thread saving the copies.
+	 */
+	private final ScheduledThreadPoolExecutor saver;
+
+	/**
+	 * The longest time between copies while the match keeps changing, in
+	 * seconds (0 to only save when the match is idle).
+	 */
+	private volatile int interval;
+
+	/**
+	 * How long the match must be left unchanged before a copy is saved, in
+	 * seconds (0 to only save at the interval).
+	 */
+	private volatile int idleDelay;
+
+	/**
+	 * The time (from System.nanoTime()) at which the match was last changed.
+	 */
+	private volatile long lastChangeTime;
+
+	/**
+	 * The time (from System.nanoTime()) at which the last copy was saved, or
+	 * at which autosaving started. Only used on the autosave thread.
+	 */
+	private long lastSaveTime;
+
+	/**
+	 * The snapshot version of the match when the last copy was saved. Only
+	 * used on the autosave thread.
+	 */
+	private long lastSavedVersion;
+
+	/**
+	 * The match which was last copied. Only used on the autosave thread.
+	 */
+	private Match copiedMatch;
+
+	/**
+	 * The name used for copies of the last copied match while it has never
+	 * been saved (null until one is needed). Only used on the autosave thread.
+	 */
+	private String unsavedName;
+
+	/**
+	 * The number of copies which have been saved.
+	 */
+	private final AtomicLong saves;
+
+	/**
+	 * The total number of bytes written.
+	 */
+	private final AtomicLong bytesWritten;
+
+	/**
+	 * The number of bytes written for the last copy.
+	 */
+	private volatile long lastBytes;
+
+	/**
+	 * The time taken to save the last copy (from copying the match to the file
+	 * being on disk), in milliseconds.
+	 */
+	private volatile long lastLatency;
+
+	/**
+	 * The longest time taken to save a copy, in milliseconds.
+	 */
+	private volatile long maxLatency;
+
+	/**
+	 * Creates the autosaver and starts checking the triggers.
+	 */
+	private AutoSaver() {
+		interval = Integer.getInteger("score5al.autosave.interval", 120);
+		idleDelay = Integer.getInteger("score5al.autosave.idle", 15);
+		lastChangeTime = System.nanoTime();
+		lastSaveTime = lastChangeTime;
+		lastSavedVersion = -1;
+		saves = new AtomicLong();
+		bytesWritten = new AtomicLong();
+		lastBytes = 0;
+		lastLatency = 0;
+		maxLatency = 0;
+		saver = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Match autosaver");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		saver.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				checkTriggers();
+			}
+		}, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Records that the match has changed. Called by the ChangeMonitor for
+	 * match changes, and by JamControl for changes to the selected jam.
+	 */
+	void changed() {
+		lastChangeTime = System.nanoTime();
+	}
+
+	/**
+	 * Sets the longest time between copies while the match keeps changing, in
+	 * seconds (0 to only save when the match is idle).
+	 */
+	public void setInterval(int interval) {
+		this.interval = Math.max(interval, 0);
+	}
+
+	/**
+	 * Sets how long the match must be left unchanged before a copy is saved,
+	 * in seconds (0 to only save at the interval).
+	 */
+	public void setIdleDelay(int idleDelay) {
+		this.idleDelay = Math.max(idleDelay, 0);
+	}
+
+	/**
+	 * Saves a copy if the match has unsaved changes and either trigger has
+	 * fired.
+	 */
+	private void checkTriggers() {
+		MatchControl matchControl = MatchControl.getInstance();
+		long version = matchControl.getSnapshot().getVersion();
+		if (!matchControl.isUnsavedChanges() || version == lastSavedVersion) {
+			return;
+		}
+		long now = System.nanoTime();
+		long idle = idleDelay;
+		long period = interval;
+		if ((idle > 0 && now - lastChangeTime >= TimeUnit.SECONDS
+				.toNanos(idle))
+				|| (period > 0 && now - lastSaveTime >= TimeUnit.SECONDS
+						.toNanos(period))) {
+			save();
+		}
+	}
+
+	/**
+	 * Copies the match on the writer thread, then writes the copy, moves the
+	 * older copies along and puts the new copy in place, and records how long
+	 * it took. The older copies are only moved once the new copy has been
+	 * written, so a failed write leaves them as they were.
+	 */
+	private void save() {
+		long start = System.nanoTime();
+		lastSaveTime = start;
+		final long[] version = new long[1];
+		final Match[] match = new Match[1];
+		final String[] saveFilePath = new String[1];
+		ByteBuffer data;
+		try {
+			data = CommandQueue.getInstance().call(new Command<ByteBuffer>() {
+				public ByteBuffer execute() {
+					MatchControl matchControl = MatchControl.getInstance();
+					match[0] = matchControl.getMatch();
+					version[0] = matchControl.getSnapshot().getVersion();
+					saveFilePath[0] = match[0].getSaveFilePath();
+					return BinaryMatchFormat.encode(match[0],
+							new BinaryMatchFormat.Layout(match[0]));
+				}
+			});
+			// don't retry until the match changes again, even if this fails
+			lastSavedVersion = version[0];
+			String baseName = getBaseName(match[0], saveFilePath[0]);
+			FOLDER.mkdirs();
+			File latest = getFile(baseName, 0);
+			File written = new File(FOLDER, latest.getName() + ".new");
+			MatchSaver.writeAtomically(written,
+					BinaryMatchFormat.content(data));
+			rotate(baseName);
+			if (!written.renameTo(latest)) {
+				written.delete();
+				throw new LogicException("couldn't rename " + written
+						+ " to " + latest);
+			}
+		} catch (LogicException error) {
+			MainWindow.getInstance().updateStatusBar(Icons.WARNING,
+					"Autosave failed: " + error.getMessage(), true);
+			return;
+		}
+
+		// record the save
+		long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+		lastLatency = latency;
+		maxLatency = Math.max(maxLatency, latency);
+		lastBytes = data.limit();
+		bytesWritten.addAndGet(data.limit());
+		saves.incrementAndGet();
+	}
+
+	/**
+	 * Moves each copy of the match with the passed base name along to the
+	 * next number, dropping the oldest.
+	 */
+	private static void rotate(String baseName) {
+		getFile(baseName, BACKUPS).delete();
+		for (int number = BACKUPS - 1; number >= 0; number--) {
+			File file = getFile(baseName, number);
+			if (file.exists()) {
+				file.renameTo(getFile(baseName, number + 1));
+			}
+		}
+	}
+
+	/**
+	 * Returns the name used for copies of the passed match, saved to the
+	 * passed path: the file's name without its extension, followed by a hash
+	 * of the file's full path. A match which has never been saved (a null
+	 * path) is named after the time it was first copied.
+	 */
+	private String getBaseName(Match match, String saveFilePath) {
+		if (match != copiedMatch) {
+			copiedMatch = match;
+			unsavedName = null;
+		}
+		if (saveFilePath == null) {
+			if (unsavedName == null) {
+				unsavedName = "unsaved-"
+						+ new SimpleDateFormat("yyyyMMdd-HHmmss")
+								.format(new Date());
+			}
+			return unsavedName;
+		}
+		File file = new File(saveFilePath).getAbsoluteFile();
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		return name + "-" + String.format("%08x", file.getPath().hashCode());
+	}
+
+	/**
+	 * Returns the file holding the copy with the passed base name and number
+	 * (0 for the latest copy).
+	 */
+	private static File getFile(String baseName, int number) {
+		String suffix = number == 0 ? "" : "." + number;
+		return new File(FOLDER, baseName + suffix
+				+ BinaryMatchFormat.EXTENSION);
+	}
+
+	/**
+	 * Returns the number of copies which have been saved.
+	 */
+	public long getSaves() {
+		return saves.get();
+	}
+
+	/**
+	 * Returns the total number of bytes written.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Returns the number of bytes written for the last copy.
+	 */
+	public long getLastBytes() {
+		return lastBytes;
+	}
+
+	/**
+	 * Returns the time taken to save the last copy, in milliseconds.
+	 */
+	public long getLastLatency() {
+		return lastLatency;
+	}
+
+	/**
+	 * Returns the longest time taken to save a copy, in milliseconds.
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * Returns the singleton instance of this class, starting autosaving if it
+	 * hasn't started yet (it's started when the program starts).
+	 */
+	public static AutoSaver getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+
+	/**
+	 * A 'lazy-loaded' implementation of the Singleton pattern.
+	 * 
+	 * @see "http://en.wikipedia.org/wiki/Initialization_on_demand_holder_idiom"
+	 * @author Bill Pugh
+	 */
+	private static class SingletonHolder {
+
+		/** The Singleton instance of this class. */
+		private static final AutoSaver INSTANCE = new AutoSaver();
+	}
+}
@@ -0,0 +1,510 @@
+package uk.co.lamsey.score5al.control;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.lamsey.score5al.model.JamStore;
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.Team;
+
+/**
+ * Reads and writes the binary match file format, which is much quicker to load
+ * and save than the CSV format for large matches. All numbers are big-endian
+ * ints. A file consists of:
+ * 
+ * <ul>
+ * <li>a fixed-size header: the magic number, the format version, the numbers
+ * of teams, heats and jams, the jam duration, the match name (as a string pool
+ * index) and the offsets of the string pool and the jam records;</li>
+ * <li>the team table: a fixed-size record for each team, holding its name and
+ * abbreviation (as string pool indexes), background and foreground colours and
+ * points adjustment;</li>
+ * <li>the string pool: a count, followed by each string as a byte length and
+ * UTF-8 bytes;</li>
+ * <li>the jam records: a fixed-size record for each jam in match order,
+ * holding the team 1, team 2 and lead jammer indexes (-1 for none), the two
+ * scores and the time remaining.</li>
+ * </ul>
+ * 
+ * Because the team and jam records are fixed-size, a file can be brought up to
+ * date by overwriting just the records which have changed, as long as the
+ * numbers of teams and jams are the same and no new strings are needed.
+ */
+class BinaryMatchFormat {
+
+	/**
+	 * The number at the start of every binary match file ("S5LB").
+	 */
+	static final int MAGIC = 0x53354C42;
+
+	/**
+	 * The extension of binary match files.
+	 */
+	static final String EXTENSION = ".s5b";
+
+	/**
+	 * The newest version of the format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The size of the header, in bytes.
+	 */
+	private static final int HEADER_SIZE = 36;
+
+	/**
+	 * The size of a team record, in bytes.
+	 */
+	private static final int TEAM_SIZE = 20;
+
+	/**
+	 * The size of a jam record, in bytes.
+	 */
+	private static final int JAM_SIZE = 24;
+
+	/**
+	 * The position in the header of the number of heats, which is followed by
+	 * the number of jams, the jam duration and the match name.
+	 */
+	private static final int DETAILS_POSITION = 12;
+
+	/**
+	 * The character set used for strings.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private BinaryMatchFormat() {
+	}
+
+	/**
+	 * The layout of a binary match file: the strings in its string pool and
+	 * the positions of its sections. A file's layout is worked out before the
+	 * match is encoded, and can be kept to overwrite its records in place
+	 * later.
+	 */
+	static class Layout {
+
+		/**
+		 * The index of each string in the string pool.
+		 */
+		private final Map<String, Integer> poolIndexes;
+
+		/**
+		 * The UTF-8 bytes of each string in the string pool.
+		 */
+		private final List<byte[]> pool;
+
+		/**
+		 * The number of teams in the file.
+		 */
+		private final int numTeams;
+
+		/**
+		 * The number of jams in the file.
+		 */
+		private final int numJams;
+
+		/**
+		 * The position of the string pool.
+		 */
+		private final int poolOffset;
+
+		/**
+		 * The position of the first jam record.
+		 */
+		private final int jamOffset;
+
+		/**
+		 * Works out the layout of a file holding the passed match. Must be
+		 * called on the writer thread.
+		 */
+		Layout(Match match) {
+			poolIndexes = new HashMap<String, Integer>();
+			pool = new ArrayList<byte[]>();
+			addString(match.getName());
+			for (Team team : match.getTeams()) {
+				addString(team.getName());
+				addString(team.getAbbreviation());
+			}
+			numTeams = match.getTotalTeams();
+			numJams = match.getTotalJams();
+			poolOffset = HEADER_SIZE + numTeams * TEAM_SIZE;
+			int offset = poolOffset + 4;
+			for (byte[] string : pool) {
+				offset += 4 + string.length;
+			}
+			jamOffset = offset;
+		}
+
+		/**
+		 * Adds the passed string to the string pool, if it isn't there
+		 * already.
+		 */
+		private void addString(String string) {
+			if (!poolIndexes.containsKey(string)) {
+				poolIndexes.put(string, pool.size());
+				pool.add(string.getBytes(UTF8));
+			}
+		}
+
+		/**
+		 * Returns the index of the passed string in the string pool, or -1 if
+		 * it isn't there.
+		 */
+		private int getIndex(String string) {
+			Integer index = poolIndexes.get(string);
+			return index == null ? -1 : index;
+		}
+
+		/**
+		 * Returns the total size of the file, in bytes.
+		 */
+		private int getFileSize() {
+			return jamOffset + numJams * JAM_SIZE;
+		}
+	}
+
+	/**
+	 * Returns true if the passed path has the binary match file extension.
+	 */
+	static boolean isBinaryPath(String path) {
+		return path.toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Returns true if the specified file starts with the binary match file
+	 * magic number.
+	 * 
+	 * @throws LogicException
+	 *             If the file can't be read.
+	 */
+	static boolean isBinaryFile(String path) throws LogicException {
+		try {
+			RandomAccessFile file = new RandomAccessFile(path, "r");
+			try {
+				return file.length() >= 4 && file.readInt() == MAGIC;
+			} finally {
+				file.close();
+			}
+		} catch (IOException error) {
+			throw new LogicException("Error: couldn't read from file: "
+					+ error.getMessage());
+		}
+	}
+
+	/**
+	 * Encodes the passed match in the binary format, using the passed layout
+	 * (which must have been worked out for the match as it is now). Must be
+	 * called on the writer thread.
+	 */
+	static ByteBuffer encode(Match match, Layout layout) {
+		ByteBuffer data = ByteBuffer.allocate(layout.getFileSize());
+
+		// header
+		data.putInt(MAGIC);
+		data.putInt(VERSION);
+		data.putInt(layout.numTeams);
+		data.putInt(match.getTotalHeats());
+		data.putInt(layout.numJams);
+		data.putInt(match.getJamDuration());
+		data.putInt(layout.getIndex(match.getName()));
+		data.putInt(layout.poolOffset);
+		data.putInt(layout.jamOffset);
+
+		// team table
+		for (Team team : match.getTeams()) {
+			putTeam(data, team, layout);
+		}
+
+		// string pool
+		data.putInt(layout.pool.size());
+		for (byte[] string : layout.pool) {
+			data.putInt(string.length);
+			data.put(string);
+		}
+
+		// jam records (the jam store holds the jams in match order)
+		JamStore jams = match.getJamStore();
+		for (int row = 0; row < layout.numJams; row++) {
+			putJam(data, jams, row);
+		}
+		data.flip();
+		return data;
+	}
+
+	/**
+	 * Returns a patch which brings a file written with the passed layout up
+	 * to date by overwriting the records of the passed teams and jams (by
+	 * index) and, if requested, the match's details. Consecutive changed jams
+	 * are written together. Returns null if the changes can't be made in
+	 * place, because the numbers of teams or jams have changed or a string
+	 * isn't in the file's string pool. Must be called on the writer thread.
+	 */
+	static MatchSaver.SavePatch patch(Match match, final Layout layout,
+			boolean detailsChanged, BitSet teams, BitSet jams) {
+		if (match.getTotalTeams() != layout.numTeams
+				|| match.getTotalJams() != layout.numJams) {
+			return null;
+		}
+		final List<Integer> positions = new ArrayList<Integer>();
+		final List<ByteBuffer> records = new ArrayList<ByteBuffer>();
+
+		// match details (the number of jams is unchanged)
+		if (detailsChanged) {
+			int nameIndex = layout.getIndex(match.getName());
+			if (nameIndex == -1) {
+				return null;
+			}
+			ByteBuffer data = ByteBuffer.allocate(16);
+			data.putInt(match.getTotalHeats());
+			data.putInt(layout.numJams);
+			data.putInt(match.getJamDuration());
+			data.putInt(nameIndex);
+			data.flip();
+			positions.add(DETAILS_POSITION);
+			records.add(data);
+		}
+
+		// team records
+		List<Team> allTeams = match.getTeams();
+		for (int teamIndex = teams.nextSetBit(0); teamIndex >= 0
+				&& teamIndex < layout.numTeams; teamIndex = teams
+				.nextSetBit(teamIndex + 1)) {
+			Team team = allTeams.get(teamIndex);
+			if (layout.getIndex(team.getName()) == -1
+					|| layout.getIndex(team.getAbbreviation()) == -1) {
+				return null;
+			}
+			ByteBuffer data = ByteBuffer.allocate(TEAM_SIZE);
+			putTeam(data, team, layout);
+			data.flip();
+			positions.add(HEADER_SIZE + teamIndex * TEAM_SIZE);
+			records.add(data);
+		}
+
+		// jam records, a run of consecutive changed jams at a time
+		JamStore store = match.getJamStore();
+		int start = jams.nextSetBit(0);
+		while (start >= 0 && start < layout.numJams) {
+			int end = Math.min(jams.nextClearBit(start), layout.numJams);
+			ByteBuffer data = ByteBuffer.allocate((end - start) * JAM_SIZE);
+			for (int row = start; row < end; row++) {
+				putJam(data, store, row);
+			}
+			data.flip();
+			positions.add(layout.jamOffset + start * JAM_SIZE);
+			records.add(data);
+			start = jams.nextSetBit(end);
+		}
+
+		return new MatchSaver.SavePatch() {
+			public void write(FileChannel channel) throws IOException {
+				checkLayout(channel, layout);
+				for (int index = 0; index < records.size(); index++) {
+					ByteBuffer data = records.get(index);
+					long position = positions.get(index);
+					while (data.hasRemaining()) {
+						position += channel.write(data, position);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Checks that the file open in the passed channel still has the passed
+	 * layout, so that it's safe to overwrite its records.
+	 * 
+	 * @throws IOException
+	 *             If it doesn't, or the file can't be read.
+	 */
+	private static void checkLayout(FileChannel channel, Layout layout)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				break;
+			}
+		}
+		header.flip();
+		if (channel.size() != layout.getFileSize()
+				|| header.remaining() < HEADER_SIZE
+				|| header.getInt(0) != MAGIC
+				|| header.getInt(8) != layout.numTeams
+				|| header.getInt(16) != layout.numJams
+				|| header.getInt(28) != layout.poolOffset
+				|| header.getInt(32) != layout.jamOffset) {
+			throw new IOException("the file has been changed since it was "
+					+ "last saved");
+		}
+	}
+
+	/**
+	 * Writes the record for the passed team to the passed buffer, using the
+	 * string indexes from the passed layout.
+	 */
+	private static void putTeam(ByteBuffer data, Team team, Layout layout) {
+		data.putInt(layout.getIndex(team.getName()));
+		data.putInt(layout.getIndex(team.getAbbreviation()));
+		data.putInt(team.getBgColour().getRGB());
+		data.putInt(team.getFgColour().getRGB());
+		data.putInt(team.getPointsAdjustment());
+	}
+
+	/**
+	 * Writes the record for the jam in the passed row of the jam store to the
+	 * passed buffer.
+	 */
+	private static void putJam(ByteBuffer data, JamStore jams, int row) {
+		data.putInt(jams.getTeam1Index(row));
+		data.putInt(jams.getTeam2Index(row));
+		data.putInt(jams.getLeadJammerIndex(row));
+		data.putInt(jams.getScore1(row));
+		data.putInt(jams.getScore2(row));
+		data.putInt(jams.getTimeRemaining(row));
+	}
+
+	/**
+	 * Returns save file contents which write the passed encoded match.
+	 */
+	static MatchSaver.SaveContent content(final ByteBuffer data) {
+		return new MatchSaver.SaveContent() {
+			public void write(OutputStream out) throws IOException {
+				out.write(data.array(), data.arrayOffset(), data.limit());
+			}
+		};
+	}
+
+	/**
+	 * Reads the specified binary match file in one bulk read, passing its
+	 * contents to the passed handler: first the match's details, then each
+	 * team and then each jam. The file isn't memory mapped, as a mapping can't
+	 * be released when the load finishes and would stop the file being
+	 * replaced by a later save on some systems.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error occurs, the file is corrupt or from a newer
+	 *             version, or the handler throws one.
+	 */
+	static void read(String path, MatchRecordHandler handler)
+			throws LogicException {
+		ByteBuffer data;
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+			try {
+				long length = file.length();
+				if (length > Integer.MAX_VALUE) {
+					throw new LogicException("Error: the file is too large.");
+				}
+				data = ByteBuffer.allocate((int) length);
+				FileChannel channel = file.getChannel();
+				while (data.hasRemaining() && channel.read(data) >= 0) {
+					// keep reading until the buffer is full
+				}
+				data.flip();
+			} finally {
+				file.close();
+			}
+		} catch (IOException error) {
+			throw new LogicException("Error: couldn't read from file: "
+					+ error.getMessage());
+		}
+
+		try {
+			// header
+			if (data.getInt() != MAGIC) {
+				throw new LogicException("Error: not a Score5al match file.");
+			} else if (data.getInt() > VERSION) {
+				throw new LogicException("Error: the file was saved by a newer "
+						+ "version of Score5al.");
+			}
+			int numTeams = data.getInt();
+			int numHeats = data.getInt();
+			int numJams = data.getInt();
+			int jamDuration = data.getInt();
+			int nameIndex = data.getInt();
+			int poolOffset = data.getInt();
+			int jamOffset = data.getInt();
+
+			// string pool
+			data.position(poolOffset);
+			int poolSize = data.getInt();
+			if (poolSize < 0 || poolSize > data.remaining() / 4) {
+				throw new LogicException("Error: the file is corrupt.");
+			}
+			String[] pool = new String[poolSize];
+			for (int index = 0; index < poolSize; index++) {
+				int length = data.getInt();
+				if (length < 0 || length > data.remaining()) {
+					throw new LogicException("Error: the file is corrupt.");
+				}
+				byte[] bytes = new byte[length];
+				data.get(bytes);
+				pool[index] = new String(bytes, UTF8);
+			}
+
+			// match details
+			handler.updateMatch(getString(pool, nameIndex), numTeams,
+					numHeats, numJams, jamDuration);
+
+			// team table
+			data.position(HEADER_SIZE);
+			for (int teamIndex = 0; teamIndex < numTeams; teamIndex++) {
+				String name = getString(pool, data.getInt());
+				String abbreviation = getString(pool, data.getInt());
+				Color bgColour = new Color(data.getInt());
+				Color fgColour = new Color(data.getInt());
+				int pointsAdjustment = data.getInt();
+				handler.updateTeam(teamIndex, name, abbreviation, fgColour,
+						bgColour, pointsAdjustment);
+			}
+
+			// jam records
+			data.position(jamOffset);
+			for (int jamIndex = 0; jamIndex < numJams; jamIndex++) {
+				int team1Index = data.getInt();
+				int team2Index = data.getInt();
+				int leadJammerIndex = data.getInt();
+				int score1 = data.getInt();
+				int score2 = data.getInt();
+				int timeRemaining = data.getInt();
+				handler.updateJam(jamIndex, team1Index, team2Index,
+						leadJammerIndex, score1, score2, timeRemaining);
+			}
+		} catch (BufferUnderflowException error) {
+			throw new LogicException("Error: the file is incomplete.");
+		} catch (IllegalArgumentException error) {
+			// an offset is outside the file
+			throw new LogicException("Error: the file is corrupt.");
+		}
+	}
+
+	/**
+	 * Returns the string with the passed index in the passed pool.
+	 * 
+	 * @throws LogicException
+	 *             If the index is invalid.
+	 */
+	private static String getString(String[] pool, int index)
+			throws LogicException {
+		if (index < 0 || index >= pool.length) {
+			throw new LogicException("Error: the file is corrupt.");
+		}
+		return pool[index];
+	}
+}
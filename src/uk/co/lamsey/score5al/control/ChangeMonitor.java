@@ -2,12 +2,13 @@ package uk.co.lamsey.score5al.control;
 
 /**
  * An observer which should be added to any class which changes data that should
- * be saved to disk.
+ * be saved to disk. Each change is also passed on to the autosaver.
  */
 public class ChangeMonitor<T> implements Observer<T> {
 
 	@Override
 	public void update(T updatedObject) {
 		MatchControl.getInstance().setUnsavedChanges(true);
+		AutoSaver.getInstance().changed();
 	}
 }
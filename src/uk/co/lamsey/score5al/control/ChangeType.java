@@ -0,0 +1,59 @@
+package uk.co.lamsey.score5al.control;
+
+/**
+ * The kinds of change which an Observable can notify its observers about.
+ * Observers may subscribe to a subset of these so that they aren't updated for
+ * changes they don't display (e.g. the once-per-second clock tick).
+ * 
+ * @see Observable#addObserver(Observer, ChangeType, ChangeType...)
+ */
+public enum ChangeType {
+
+	/**
+	 * A team's score in the current jam has changed.
+	 */
+	SCORE_CHANGED,
+
+	/**
+	 * The lead jammer status in the current jam has changed.
+	 */
+	LEAD_JAMMER_CHANGED,
+
+	/**
+	 * The time remaining in the current jam has changed, without the jam being
+	 * completed or reopened.
+	 */
+	CLOCK_TICKED,
+
+	/**
+	 * The current jam has been completed (time remaining reached zero), or a
+	 * completed jam has been reopened.
+	 */
+	JAM_COMPLETED,
+
+	/**
+	 * The jam timer has been stopped.
+	 */
+	TIMER_STOPPED,
+
+	/**
+	 * A different jam has been selected for editing/display, or the selected
+	 * jam may have been replaced by a match change.
+	 */
+	JAM_SELECTED,
+
+	/**
+	 * A team's details (name, colours, points adjustment, etc) have changed.
+	 */
+	TEAM_EDITED,
+
+	/**
+	 * The teams assigned to the jams in one or more heats have changed.
+	 */
+	SCHEDULE_CHANGED,
+
+	/**
+	 * The match's details have changed, or a different match has been loaded.
+	 */
+	MATCH_CHANGED
+}
@@ -0,0 +1,236 @@
+package uk.co.lamsey.score5al.control;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every change to the match on a single writer thread, in the order in
+ * which the changes were submitted. Observers are notified from the writer
+ * thread as each change is made, so notifications also go out in order.
+ * 
+ * A command which is already running on the writer thread runs any commands it
+ * submits straight away, so several commands can be made into one atomic step
+ * by submitting a single command which runs them all - nothing else can change
+ * the match in between.
+ */
+public class CommandQueue {
+
+	/**
+	 * A change to be made on the writer thread, which may fail with a
+	 * LogicException.
+	 */
+	public interface Command<T> {
+
+		/**
+		 * Makes the change and returns its result.
+		 */
+		T execute() throws LogicException;
+	}
+
+	/**
+	 * The executor which owns the writer thread.
+	 */
+	private final ScheduledThreadPoolExecutor writer;
+
+	/**
+	 * The writer thread.
+	 */
+	private volatile Thread writerThread;
+
+	/**
+	 * The number of commands waiting to be run.
+	 */
+	private final AtomicInteger depth;
+
+	/**
+	 * The largest number of commands which have been waiting at once.
+	 */
+	private final AtomicInteger maxDepth;
+
+	/**
+	 * The number of commands submitted from other threads which have been run.
+	 */
+	private final AtomicLong executed;
+
+	/**
+	 * Creates the queue and starts the writer thread.
+	 */
+	private CommandQueue() {
+		depth = new AtomicInteger();
+		maxDepth = new AtomicInteger();
+		executed = new AtomicLong();
+		writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Match writer");
+				thread.setDaemon(true);
+				writerThread = thread;
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns true if the current thread is the writer thread.
+	 */
+	public boolean isWriterThread() {
+		return Thread.currentThread() == writerThread;
+	}
+
+	/**
+	 * Runs the passed command on the writer thread and waits for its result.
+	 * 
+	 * @throws LogicException
+	 *             If the command throws one.
+	 */
+	public <T> T call(final Command<T> command) throws LogicException {
+		if (isWriterThread()) {
+			return command.execute();
+		}
+		Future<T> future = enqueue(new Callable<T>() {
+			public T call() throws LogicException {
+				return command.execute();
+			}
+		});
+		try {
+			return waitFor(future);
+		} catch (ExecutionException error) {
+			if (error.getCause() instanceof LogicException) {
+				throw (LogicException) error.getCause();
+			}
+			throw propagate(error.getCause());
+		}
+	}
+
+	/**
+	 * Runs the passed command (which can't fail with a LogicException) on the
+	 * writer thread and waits for it to finish.
+	 */
+	public void run(final Runnable command) {
+		if (isWriterThread()) {
+			command.run();
+			return;
+		}
+		Future<Void> future = enqueue(new Callable<Void>() {
+			public Void call() {
+				command.run();
+				return null;
+			}
+		});
+		try {
+			waitFor(future);
+		} catch (ExecutionException error) {
+			throw propagate(error.getCause());
+		}
+	}
+
+	/**
+	 * Schedules the passed command to run on the writer thread after the
+	 * specified delay, without waiting for it. Delayed commands aren't counted
+	 * as waiting until they are due.
+	 */
+	public ScheduledFuture<?> schedule(Runnable command, long delay,
+			TimeUnit unit) {
+		return writer.schedule(command, delay, unit);
+	}
+
+	/**
+	 * Adds the passed task to the queue, keeping track of the queue depth.
+	 */
+	private <T> Future<T> enqueue(final Callable<T> task) {
+		int waiting = depth.incrementAndGet();
+		int max = maxDepth.get();
+		while (waiting > max && !maxDepth.compareAndSet(max, waiting)) {
+			max = maxDepth.get();
+		}
+		return writer.submit(new Callable<T>() {
+			public T call() throws Exception {
+				depth.decrementAndGet();
+				executed.incrementAndGet();
+				return task.call();
+			}
+		});
+	}
+
+	/**
+	 * Waits for the passed command to finish and returns its result. Commands
+	 * can't be abandoned once submitted, so an interrupt doesn't stop the wait
+	 * but is passed on afterwards.
+	 */
+	private static <T> T waitFor(Future<T> future) throws ExecutionException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException error) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Rethrows the passed unchecked exception or error from a command on the
+	 * thread which submitted it.
+	 */
+	private static RuntimeException propagate(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IllegalStateException(cause);
+	}
+
+	/**
+	 * Returns the number of commands currently waiting to be run.
+	 */
+	public int getDepth() {
+		return depth.get();
+	}
+
+	/**
+	 * Returns the largest number of commands which have been waiting at once.
+	 */
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	/**
+	 * Returns the number of commands submitted from other threads which have
+	 * been run.
+	 */
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * Returns the singleton instance of this class.
+	 */
+	public static CommandQueue getInstance() {
+		return SingletonHolder.INSTANCE;
+	}
+
+	/**
+	 * A 'lazy-loaded' implementation of the Singleton pattern.
+	 * 
+	 * @see "http://en.wikipedia.org/wiki/Initialization_on_demand_holder_idiom"
+	 * @author Bill Pugh
+	 */
+	private static class SingletonHolder {
+
+		/** The Singleton instance of this class. */
+		private static final CommandQueue INSTANCE = new CommandQueue();
+	}
+}
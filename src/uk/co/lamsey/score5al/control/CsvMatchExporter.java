@@ -0,0 +1,119 @@
+package uk.co.lamsey.score5al.control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+import uk.co.lamsey.score5al.model.JamSnapshot;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
+import uk.co.lamsey.score5al.model.Ranking;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
+import uk.co.lamsey.score5al.ui.ExportTeamFormat;
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Exports matches as CSV, for importing into a spreadsheet package. Each row
+ * is written as soon as it's produced.
+ */
+public class CsvMatchExporter implements MatchExporter {
+
+	/**
+	 * Writes the rows to the output (null until the export begins).
+	 */
+	private CSVWriter writer;
+
+	/**
+	 * Writes the time the export was made.
+	 */
+	public void begin(Writer out, Date generatedAt) throws IOException {
+		writer = new CSVWriter(out);
+
+		// include time data at top of file
+		writer.writeNext(new String[] { "GENERATED AT: ",
+				generatedAt.toString() });
+		writer.writeNext(new String[] {});
+	}
+
+	/**
+	 * Writes the match's sections one row at a time.
+	 */
+	public void exportMatch(Writer out, MatchSnapshot match,
+			List<Ranking> rankings, ExportTeamFormat teamFormat)
+			throws IOException {
+
+		// match details
+		writer.writeNext(new String[] { "MATCH DETAILS" });
+		writer.writeNext(new String[] { "Name:", match.getName() });
+		writer.writeNext(new String[] { "Number of teams:",
+				String.valueOf(match.getTotalTeams()) });
+		writer.writeNext(new String[] { "Number of heats:",
+				String.valueOf(match.getTotalHeats()) });
+		writer.writeNext(new String[] { "Number of jams:",
+				String.valueOf(match.getTotalJams()) });
+		int jamDuration = match.getJamDuration();
+		writer.writeNext(new String[] { "Jam duration:",
+				String.format("%d:%02d", jamDuration / 60, jamDuration % 60) });
+		writer.writeNext(new String[] {});
+
+		// team details
+		writer.writeNext(new String[] { "TEAM DETAILS" });
+		writer.writeNext(new String[] { "Number", "Name", "Abbreviated Name",
+				"Background Colour (RGB/hex)", "Foreground Colour (RGB/hex)",
+				"Points Adjustment" });
+		for (TeamSnapshot team : match.getTeams()) {
+			String bg = String.format("%08x", team.getBgColour().getRGB())
+					.substring(2);
+			String fg = String.format("%08x", team.getFgColour().getRGB())
+					.substring(2);
+			writer.writeNext(new String[] { String.valueOf(team.getNumber()),
+					team.getName(), team.getAbbreviation(), "#" + bg, "#" + fg,
+					String.valueOf(team.getPointsAdjustment()) });
+		}
+		writer.writeNext(new String[] {});
+
+		// schedule/results
+		writer.writeNext(new String[] { "JAM SCHEDULE/RESULTS" });
+		for (int heat = 0; heat < match.getTotalHeats(); heat++) {
+			writer.writeNext(new String[] { "Heat " + (heat + 1) });
+			for (JamSnapshot jam : match.getJams(heat)) {
+				String score = jam.isCompleted() ? jam.getScore1() + " - "
+						+ jam.getScore2() : "vs";
+				writer.writeNext(new String[] {
+						teamFormat.format(jam.getTeam1()), score,
+						teamFormat.format(jam.getTeam2()) });
+			}
+		}
+		writer.writeNext(new String[] {});
+
+		// rankings table
+		writer.writeNext(new String[] { "RANKINGS TABLE" });
+		writer.writeNext(new String[] { "Position", "Team", "Wins", "Draws",
+				"Losses", "Jams Led", "Points For", "Points Against",
+				"Points Difference", "Match Score" });
+		for (Ranking ranking : rankings) {
+			writer.writeNext(new String[] { ranking.getRank(),
+					teamFormat.format(ranking.getTeamSnapshot()),
+					String.valueOf(ranking.getWins()),
+					String.valueOf(ranking.getDraws()),
+					String.valueOf(ranking.getLosses()),
+					String.valueOf(ranking.getLedJams()),
+					String.valueOf(ranking.getPointsFor()),
+					String.valueOf(ranking.getPointsAgainst()),
+					String.valueOf(ranking.getPointsDifference()),
+					String.valueOf(ranking.getMatchScore()) });
+		}
+		writer.writeNext(new String[] {});
+	}
+
+	/**
+	 * Flushes the rows, checking for I/O errors (which the CSV writer doesn't
+	 * report as it goes).
+	 */
+	public void end(Writer out) throws IOException {
+		writer.flush();
+		if (writer.checkError()) {
+			throw new IOException("an I/O error occurred");
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package uk.co.lamsey.score5al.control;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import uk.co.lamsey.score5al.model.Match;
+
+/**
+ * Keeps track of which teams and jams have changed since the match was last
+ * written to a binary match file, so that the next save of the same file can
+ * overwrite just the changed records in place rather than rewriting the whole
+ * match. Only used on the writer thread.
+ */
+class DirtyTracker {
+
+	/**
+	 * The binary match file which the tracked changes are relative to (null
+	 * if there isn't one, so the next save must write the whole match).
+	 */
+	private String filePath;
+
+	/**
+	 * The layout of that file.
+	 */
+	private BinaryMatchFormat.Layout layout;
+
+	/**
+	 * Whether the match's details have changed.
+	 */
+	private boolean detailsDirty;
+
+	/**
+	 * The indexes of the teams which have changed.
+	 */
+	private final BitSet dirtyTeams;
+
+	/**
+	 * The indexes of the jams which have changed.
+	 */
+	private final BitSet dirtyJams;
+
+	/**
+	 * Creates a tracker with no file, so the next save writes the whole match.
+	 */
+	DirtyTracker() {
+		dirtyTeams = new BitSet();
+		dirtyJams = new BitSet();
+		reset();
+	}
+
+	/**
+	 * Forgets the file and any changes, so that the next save writes the
+	 * whole match. Used when the match is replaced, saved in another format,
+	 * or a save fails.
+	 */
+	void reset() {
+		filePath = null;
+		layout = null;
+		clear();
+	}
+
+	/**
+	 * Records that the match's details have changed.
+	 */
+	void detailsChanged() {
+		detailsDirty = true;
+	}
+
+	/**
+	 * Records that the team with the passed index has changed.
+	 */
+	void teamChanged(int teamIndex) {
+		dirtyTeams.set(teamIndex);
+	}
+
+	/**
+	 * Records that the jam with the passed (match-wide) index has changed.
+	 */
+	void jamChanged(int jamIndex) {
+		dirtyJams.set(jamIndex);
+	}
+
+	/**
+	 * Returns a patch which brings the specified file up to date with the
+	 * passed match, and starts tracking changes afresh. Returns null if the
+	 * match must be written in full instead: because the file isn't the one
+	 * being tracked, or because the changes can't be made in place.
+	 */
+	MatchSaver.SavePatch takePatch(String saveFilePath, Match match) {
+		if (filePath == null || !filePath.equals(saveFilePath)) {
+			return null;
+		}
+		MatchSaver.SavePatch patch = BinaryMatchFormat.patch(match, layout,
+				detailsDirty, dirtyTeams, dirtyJams);
+		if (patch != null) {
+			clear();
+		}
+		return patch;
+	}
+
+	/**
+	 * Encodes the whole of the passed match to be written to the specified
+	 * file, and starts tracking changes relative to that file.
+	 */
+	ByteBuffer encode(String saveFilePath, Match match) {
+		filePath = saveFilePath;
+		layout = new BinaryMatchFormat.Layout(match);
+		clear();
+		return BinaryMatchFormat.encode(match, layout);
+	}
+
+	/**
+	 * Forgets any changes.
+	 */
+	private void clear() {
+		detailsDirty = false;
+		dirtyTeams.clear();
+		dirtyJams.clear();
+	}
+}
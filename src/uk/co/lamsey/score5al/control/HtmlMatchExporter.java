@@ -0,0 +1,147 @@
+package uk.co.lamsey.score5al.control;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+import uk.co.lamsey.score5al.model.JamSnapshot;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
+import uk.co.lamsey.score5al.model.Ranking;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
+import uk.co.lamsey.score5al.ui.ExportTeamFormat;
+
+/**
+ * Exports matches as an HTML results sheet, for printing or publishing. Each
+ * match gets its rankings table (with each team shown in its colours)
+ * followed by the results of each heat. Markup is written as soon as it's
+ * produced.
+ */
+public class HtmlMatchExporter implements MatchExporter {
+
+	/**
+	 * The time at which the export was made (null until the export begins).
+	 */
+	private Date generatedAt;
+
+	/**
+	 * Writes the start of the page.
+	 */
+	public void begin(Writer out, Date generatedAt) throws IOException {
+		this.generatedAt = generatedAt;
+		out.write("<!DOCTYPE html>\n<html>\n<head>\n"
+				+ "<meta charset=\"UTF-8\">\n"
+				+ "<title>Score5al results</title>\n<style>\n"
+				+ "body { font-family: sans-serif; }\n"
+				+ "table { border-collapse: collapse; margin-bottom: 1em; }\n"
+				+ "th, td { border: 1px solid #999; padding: 2px 8px; }\n"
+				+ "td.number { text-align: right; }\n"
+				+ "td.score { text-align: center; }\n"
+				+ "</style>\n</head>\n<body>\n");
+	}
+
+	/**
+	 * Writes the match's details, rankings and results.
+	 */
+	public void exportMatch(Writer out, MatchSnapshot match,
+			List<Ranking> rankings, ExportTeamFormat teamFormat)
+			throws IOException {
+
+		// match details
+		int jamDuration = match.getJamDuration();
+		out.write("<h1>" + escape(match.getName()) + "</h1>\n");
+		out.write("<p>" + match.getTotalTeams() + " teams, "
+				+ match.getTotalHeats() + " heats, " + match.getTotalJams()
+				+ " jams of "
+				+ String.format("%d:%02d", jamDuration / 60, jamDuration % 60)
+				+ "</p>\n");
+
+		// rankings table
+		out.write("<h2>Rankings</h2>\n<table>\n<tr><th>Position</th>"
+				+ "<th>Team</th><th>Wins</th><th>Draws</th><th>Losses</th>"
+				+ "<th>Jams Led</th><th>Points For</th><th>Points Against</th>"
+				+ "<th>Points Difference</th><th>Match Score</th></tr>\n");
+		for (Ranking ranking : rankings) {
+			TeamSnapshot team = ranking.getTeamSnapshot();
+			out.write("<tr><td>" + escape(ranking.getRank()) + "</td>"
+					+ "<td style=\"background: " + toHex(team.getBgColour())
+					+ "; color: " + toHex(team.getFgColour()) + "\">"
+					+ escape(teamFormat.format(team)) + "</td>"
+					+ numberCell(ranking.getWins())
+					+ numberCell(ranking.getDraws())
+					+ numberCell(ranking.getLosses())
+					+ numberCell(ranking.getLedJams())
+					+ numberCell(ranking.getPointsFor())
+					+ numberCell(ranking.getPointsAgainst())
+					+ numberCell(ranking.getPointsDifference())
+					+ numberCell(ranking.getMatchScore()) + "</tr>\n");
+		}
+		out.write("</table>\n");
+
+		// schedule/results
+		out.write("<h2>Results</h2>\n");
+		for (int heat = 0; heat < match.getTotalHeats(); heat++) {
+			out.write("<h3>Heat " + (heat + 1) + "</h3>\n<table>\n");
+			for (JamSnapshot jam : match.getJams(heat)) {
+				String score = jam.isCompleted() ? jam.getScore1() + " - "
+						+ jam.getScore2() : "vs";
+				out.write("<tr><td>" + escape(teamFormat.format(jam.getTeam1()))
+						+ "</td><td class=\"score\">" + score + "</td><td>"
+						+ escape(teamFormat.format(jam.getTeam2()))
+						+ "</td></tr>\n");
+			}
+			out.write("</table>\n");
+		}
+	}
+
+	/**
+	 * Writes the time of the export and the end of the page.
+	 */
+	public void end(Writer out) throws IOException {
+		out.write("<p><small>Generated at " + escape(generatedAt.toString())
+				+ "</small></p>\n</body>\n</html>\n");
+	}
+
+	/**
+	 * Returns a right-aligned table cell holding the passed number.
+	 */
+	private static String numberCell(int number) {
+		return "<td class=\"number\">" + number + "</td>";
+	}
+
+	/**
+	 * Returns the passed text with any characters which have a special
+	 * meaning in HTML escaped.
+	 */
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int index = 0; index < text.length(); index++) {
+			char character = text.charAt(index);
+			switch (character) {
+			case '&':
+				escaped.append("&amp;");
+				break;
+			case '<':
+				escaped.append("&lt;");
+				break;
+			case '>':
+				escaped.append("&gt;");
+				break;
+			case '"':
+				escaped.append("&quot;");
+				break;
+			default:
+				escaped.append(character);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Returns the passed colour as a hex string, such as "#ff0000".
+	 */
+	private static String toHex(Color colour) {
+		return String.format("#%06x", colour.getRGB() & 0xffffff);
+	}
+}
@@ -0,0 +1,135 @@
+package uk.co.lamsey.score5al.control;
+
+/**
+ * A countdown clock for a single jam, based on System.nanoTime(). Rather than
+ * counting down in steps, the clock stores the instant at which it was started
+ * and the time remaining at that instant, and works out the time remaining
+ * whenever it is read. Stopping and restarting the clock therefore never loses
+ * or gains time, and scheduler jitter doesn't accumulate.
+ * 
+ * The clock is displayed in whole seconds (rounded up, so that it reaches zero
+ * exactly when time runs out), except for the last few seconds where it is
+ * displayed in tenths.
+ */
+public class JamClock {
+
+	/**
+	 * The time remaining (in milliseconds) below which the clock is displayed
+	 * in tenths of a second.
+	 */
+	public static final long TENTHS_THRESHOLD = 10000;
+
+	/**
+	 * The number of nanoseconds in a second.
+	 */
+	private static final long SECOND = 1000000000L;
+
+	/**
+	 * The number of nanoseconds in a tenth of a second.
+	 */
+	private static final long TENTH = SECOND / 10;
+
+	/**
+	 * The time remaining in nanoseconds when the clock was last started or
+	 * stopped.
+	 */
+	private long remainingAtStart;
+
+	/**
+	 * The System.nanoTime() at which the clock was last started.
+	 */
+	private long startTime;
+
+	/**
+	 * Whether or not the clock is currently running.
+	 */
+	private boolean running;
+
+	/**
+	 * Creates a new stopped clock with the specified number of seconds
+	 * remaining.
+	 */
+	public JamClock(int seconds) {
+		reset(seconds);
+	}
+
+	/**
+	 * Stops the clock and sets the time remaining to the specified number of
+	 * seconds.
+	 */
+	public synchronized void reset(int seconds) {
+		remainingAtStart = seconds * SECOND;
+		running = false;
+	}
+
+	/**
+	 * Starts the clock (does nothing if it's already running).
+	 */
+	public synchronized void start() {
+		if (!running) {
+			startTime = System.nanoTime();
+			running = true;
+		}
+	}
+
+	/**
+	 * Stops the clock, keeping any fraction of a second remaining (does nothing
+	 * if it isn't running).
+	 */
+	public synchronized void stop() {
+		if (running) {
+			remainingAtStart = getRemainingNanos();
+			running = false;
+		}
+	}
+
+	/**
+	 * Returns whether or not the clock is currently running.
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns the time remaining in nanoseconds (never negative).
+	 */
+	public synchronized long getRemainingNanos() {
+		if (!running) {
+			return remainingAtStart;
+		}
+		long elapsed = System.nanoTime() - startTime;
+		return Math.max(0, remainingAtStart - elapsed);
+	}
+
+	/**
+	 * Returns the time remaining in milliseconds, rounded up.
+	 */
+	public long getRemainingMillis() {
+		return divideRoundingUp(getRemainingNanos(), 1000000);
+	}
+
+	/**
+	 * Returns the time remaining in whole seconds, rounded up.
+	 */
+	public int getRemainingSeconds() {
+		return (int) divideRoundingUp(getRemainingNanos(), SECOND);
+	}
+
+	/**
+	 * Returns the number of nanoseconds until the displayed time next changes:
+	 * the next whole second, or the next tenth during the last few seconds.
+	 */
+	public long getNanosUntilNextChange() {
+		long remaining = getRemainingNanos();
+		long step = remaining <= TENTHS_THRESHOLD * 1000000 ? TENTH : SECOND;
+		long untilChange = remaining % step;
+		return untilChange == 0 ? step : untilChange;
+	}
+
+	/**
+	 * Divides the passed (non-negative) value, rounding up.
+	 */
+	private static long divideRoundingUp(long value, long divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+}
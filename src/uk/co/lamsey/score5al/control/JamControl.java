@@ -1,8 +1,6 @@
 package uk.co.lamsey.score5al.control;
 
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -14,7 +12,8 @@ import uk.co.lamsey.score5al.ui.MainWindow;
 
 /**
  * Implements the logic related to updating jams, including jam selection and
- * the score and timer functions.
+ * the score and timer functions. All changes (including timer ticks) are made
+ * on the CommandQueue's writer thread.
  */
 public class JamControl extends Observable<Jam> {
 
@@ -22,24 +21,41 @@ public class JamControl extends Observable<Jam> {
 	 * The heat index of the jam which is currently selected for
 	 * editing/display.
 	 */
-	private int heatIndex;
+	private volatile int heatIndex;
 
 	/**
 	 * The jam index of the jam which is currently selected for editing/display.
 	 */
-	private int jamIndex;
+	private volatile int jamIndex;
 
 	/**
-	 * The service used to implement the jam timer.
+	 * The queue through which all changes to jams are made. Timer ticks are
+	 * also scheduled on its writer thread.
 	 */
-	private ScheduledExecutorService timer;
+	private final CommandQueue commands;
 
 	/**
-	 * The Future object representing the currently-running timer (null if not
-	 * running).
+	 * The Future object representing the next scheduled timer tick (null if
+	 * not running).
 	 */
 	private ScheduledFuture<?> runningTimer;
 
+	/**
+	 * Incremented whenever the timer ticks are cancelled, so that a tick which
+	 * was already executing knows not to schedule another.
+	 */
+	private int timerGeneration;
+
+	/**
+	 * The clock used to time the jam which is running (or last ran).
+	 */
+	private JamClock clock;
+
+	/**
+	 * The jam to which the clock currently relates.
+	 */
+	private Jam clockJam;
+
 	/**
 	 * An object used for synchronisation locking when manipulating the time
 	 * remaining.
@@ -54,54 +70,87 @@ public class JamControl extends Observable<Jam> {
 		heatIndex = 0;
 		jamIndex = 0;
 		MatchControl.getInstance().addObserver(new MatchObserver());
-		timer = Executors.newSingleThreadScheduledExecutor();
+		commands = CommandQueue.getInstance();
 		runningTimer = null;
+		timerGeneration = 0;
+		clock = new JamClock(0);
+		clockJam = null;
 		timerSync = new Object();
 	}
 
+	/**
+	 * Publishes the jam's current state in the match snapshot before notifying
+	 * observers, so that any observer reading the snapshot sees the change.
+	 * Changes to the jam's details (rather than which jam is selected) are
+	 * also passed on to the autosaver, so it doesn't treat the match as idle
+	 * while a jam is being scored or timed.
+	 */
+	@Override
+	protected void notifyObservers(Jam updatedObject, ChangeType type) {
+		if (updatedObject != null) {
+			MatchControl.getInstance().publishJam(updatedObject);
+			if (type != ChangeType.JAM_SELECTED
+					&& type != ChangeType.TIMER_STOPPED) {
+				AutoSaver.getInstance().changed();
+			}
+		}
+		super.notifyObservers(updatedObject, type);
+	}
+
 	/**
 	 * Selects the next jam in the match (does nothing if no more jams).
 	 */
 	public void nextJam() {
-
-		// try getting the next jam in the heat
-		Match match = MatchControl.getInstance().getMatch();
-		Jam jam = match.getJam(heatIndex, jamIndex + 1);
-		if (jam != null) { // jam found
-			stopTimer(); // make sure timer isn't still running
-			jamIndex++;
-			notifyObservers(jam);
-		} else {
-			// try getting the first jam of the next heat
-			jam = match.getJam(heatIndex + 1, 0);
-			if (jam != null) { // jam found
-				stopTimer(); // make sure timer isn't still running
-				heatIndex++;
-				jamIndex = 0;
-				notifyObservers(jam);
+		commands.run(new Runnable() {
+			public void run() {
+
+				// try getting the next jam in the heat
+				Match match = MatchControl.getInstance().getMatch();
+				Jam jam = match.getJam(heatIndex, jamIndex + 1);
+				if (jam != null) { // jam found
+					stopTimer(); // make sure timer isn't still running
+					jamIndex++;
+					notifyObservers(jam, ChangeType.JAM_SELECTED);
+				} else {
+					// try getting the first jam of the next heat
+					jam = match.getJam(heatIndex + 1, 0);
+					if (jam != null) { // jam found
+						stopTimer(); // make sure timer isn't still running
+						heatIndex++;
+						jamIndex = 0;
+						notifyObservers(jam, ChangeType.JAM_SELECTED);
+					}
+				}
 			}
-		}
+		});
 	}
 
 	/**
 	 * Selects the previous jam in the match (does nothing if no more jams).
 	 */
 	public void prevJam() {
-
-		// try getting the previous jam in the heat
-		Match match = MatchControl.getInstance().getMatch();
-		if (jamIndex > 0) { // there must be a previous jam in this heat
-			stopTimer(); // make sure timer isn't still running
-			jamIndex--;
-			notifyObservers(match.getJam(heatIndex, jamIndex));
-		} else if (heatIndex > 0) {
-			stopTimer(); // make sure timer isn't still running
-			// get the last jam of the previous heat
-			heatIndex--;
-			List<Jam> jams = match.getHeats().get(heatIndex).getJams();
-			jamIndex = jams.size() - 1;
-			notifyObservers(jams.get(jamIndex));
-		}
+		commands.run(new Runnable() {
+			public void run() {
+
+				// try getting the previous jam in the heat
+				Match match = MatchControl.getInstance().getMatch();
+				if (jamIndex > 0) { // there must be a previous jam in this heat
+					stopTimer(); // make sure timer isn't still running
+					jamIndex--;
+					notifyObservers(match.getJam(heatIndex, jamIndex),
+							ChangeType.JAM_SELECTED);
+				} else if (heatIndex > 0) {
+					stopTimer(); // make sure timer isn't still running
+					// get the last jam of the previous heat
+					heatIndex--;
+					List<Jam> jams = match.getHeats().get(heatIndex)
+							.getJams();
+					jamIndex = jams.size() - 1;
+					notifyObservers(jams.get(jamIndex),
+							ChangeType.JAM_SELECTED);
+				}
+			}
+		});
 	}
 
 	/**
@@ -116,21 +165,27 @@ public class JamControl extends Observable<Jam> {
 	 * Updates the heat index of the jam which is currently selected for
 	 * editing/display.
 	 */
-	public void setHeatIndex(int newHeatIndex) {
-		if (heatIndex != newHeatIndex) {
-			stopTimer(); // make sure timer isn't still running
-			Match match = MatchControl.getInstance().getMatch();
-			// try getting the same jam for the new heat; if not, then work back
-			for (int newJamIndex = jamIndex; newJamIndex >= 0; newJamIndex--) {
-				Jam jam = match.getJam(newHeatIndex, newJamIndex);
-				if (jam != null) {
-					heatIndex = newHeatIndex;
-					jamIndex = newJamIndex;
-					notifyObservers(jam);
-					return;
+	public void setHeatIndex(final int newHeatIndex) {
+		commands.run(new Runnable() {
+			public void run() {
+				if (heatIndex != newHeatIndex) {
+					stopTimer(); // make sure timer isn't still running
+					Match match = MatchControl.getInstance().getMatch();
+					// try getting the same jam for the new heat; if not, then
+					// work back
+					for (int newJamIndex = jamIndex; newJamIndex >= 0;
+							newJamIndex--) {
+						Jam jam = match.getJam(newHeatIndex, newJamIndex);
+						if (jam != null) {
+							heatIndex = newHeatIndex;
+							jamIndex = newJamIndex;
+							notifyObservers(jam, ChangeType.JAM_SELECTED);
+							return;
+						}
+					}
 				}
 			}
-		}
+		});
 	}
 
 	/**
@@ -145,40 +200,89 @@ public class JamControl extends Observable<Jam> {
 	 * Updates the jam index of the jam which is currently selected for
 	 * editing/display.
 	 */
-	public void setJamIndex(int newJamIndex) {
-		stopTimer(); // make sure timer isn't still running
-		if (jamIndex != newJamIndex) {
-			Jam jam = MatchControl.getInstance().getMatch()
-					.getJam(heatIndex, newJamIndex);
-			if (jam != null) {
-				jamIndex = newJamIndex;
-				notifyObservers(jam);
+	public void setJamIndex(final int newJamIndex) {
+		commands.run(new Runnable() {
+			public void run() {
+				stopTimer(); // make sure timer isn't still running
+				if (jamIndex != newJamIndex) {
+					Jam jam = MatchControl.getInstance().getMatch()
+							.getJam(heatIndex, newJamIndex);
+					if (jam != null) {
+						jamIndex = newJamIndex;
+						notifyObservers(jam, ChangeType.JAM_SELECTED);
+					}
+				}
 			}
-		}
+		});
 	}
 
 	/**
 	 * Sets the time remaining for the current jam to the specified value.
 	 */
-	public void setTimeRemaining(int time) {
-		if (time >= 0) {
-			synchronized (timerSync) {
-				Jam jam = getJam();
-				if (time != jam.getTimeRemaining()) {
-					jam.setTimeRemaining(time);
+	public void setTimeRemaining(final int time) {
+		commands.run(new Runnable() {
+			public void run() {
+				if (time >= 0) {
+					Jam jam = getJam();
+					boolean wasCompleted;
+					boolean timerStopped = false;
+					synchronized (timerSync) {
+						if (time == jam.getTimeRemaining()) {
+							return;
+						}
+						wasCompleted = jam.isCompleted();
+						jam.setTimeRemaining(time);
+
+						// restart the clock from the new time
+						boolean running = isTimerRunning();
+						cancelTicks();
+						clockJam = jam;
+						clock.reset(time);
+						if (running && time > 0) {
+							clock.start();
+							scheduleTick();
+						} else if (running) {
+							// stop the timer if it's running and we hit 0
+							timerStopped = true;
+						}
+					}
 
-					// stop the timer if it's running and we hit 0
-					if (time == 0 && isTimerRunning()) {
-						runningTimer.cancel(false);
-						runningTimer = null;
+					if (timerStopped) {
 						MainWindow.getInstance().updateStatusBar(
 								Icons.TIME_STOP, "Jam timer stopped.", true);
 					}
-
-					notifyObservers(jam);
+					notifyTimeChanged(jam, wasCompleted);
 					MatchControl.getInstance().setUnsavedChanges(true);
 				}
 			}
+		});
+	}
+
+	/**
+	 * Notifies observers that the passed jam's time remaining has changed.
+	 * This is only a tick unless the jam was completed or reopened.
+	 */
+	private void notifyTimeChanged(Jam jam, boolean wasCompleted) {
+		if (wasCompleted == jam.isCompleted()) {
+			notifyObservers(jam, ChangeType.CLOCK_TICKED);
+		} else {
+			notifyObservers(jam, ChangeType.JAM_COMPLETED);
+		}
+	}
+
+	/**
+	 * Returns the time remaining for the current jam in milliseconds. This is
+	 * more precise than the jam's own time remaining (which is in whole
+	 * seconds) while the jam is being timed.
+	 */
+	public long getTimeRemainingMillis() {
+		synchronized (timerSync) {
+			Jam jam = getJam();
+			if (jam == clockJam
+					&& clock.getRemainingSeconds() == jam.getTimeRemaining()) {
+				return clock.getRemainingMillis();
+			}
+			return jam.getTimeRemaining() * 1000L;
 		}
 	}
 
@@ -186,46 +290,86 @@ public class JamControl extends Observable<Jam> {
 	 * Starts the jam timer (does nothing if already running or time is up).
 	 */
 	public void startTimer() {
-		synchronized (timerSync) {
-			if (!isTimerRunning()) {
-				final Jam jam = getJam();
-				if (jam.getTimeRemaining() > 0) {
-					runningTimer = timer.scheduleAtFixedRate(new Runnable() {
-						public void run() {
-							synchronized (timerSync) {
-								setTimeRemaining(jam.getTimeRemaining() - 1);
+		commands.run(new Runnable() {
+			public void run() {
+				synchronized (timerSync) {
+					if (!isTimerRunning()) {
+						Jam jam = getJam();
+						if (jam.getTimeRemaining() > 0) {
+
+							// carry on from where the clock stopped, unless
+							// the jam or its time remaining have changed since
+							if (jam != clockJam
+									|| clock.getRemainingSeconds() != jam
+											.getTimeRemaining()) {
+								clockJam = jam;
+								clock.reset(jam.getTimeRemaining());
 							}
+							clock.start();
+							scheduleTick();
+							MainWindow.getInstance().updateStatusBar(
+									Icons.TIME_START, "Jam timer started.",
+									true);
 						}
-					}, 1, 1, TimeUnit.SECONDS);
-					MainWindow.getInstance().updateStatusBar(Icons.TIME_START,
-							"Jam timer started.", true);
+					}
 				}
 			}
-		}
+		});
 	}
 
 	/**
 	 * Stops the jam timer (does nothing if not running).
 	 */
 	public void stopTimer() {
-		synchronized (timerSync) {
-			if (isTimerRunning()) {
-				runningTimer.cancel(false);
-				runningTimer = null;
+		commands.run(new Runnable() {
+			public void run() {
+				synchronized (timerSync) {
+					if (!isTimerRunning()) {
+						return;
+					}
+					clock.stop();
+					cancelTicks();
+				}
 				MainWindow.getInstance().updateStatusBar(Icons.TIME_STOP,
 						"Jam timer stopped.", true);
-				notifyObservers(getJam());
+				notifyObservers(getJam(), ChangeType.TIMER_STOPPED);
 			}
+		});
+	}
+
+	/**
+	 * Schedules the next timer tick for when the displayed time next changes.
+	 * Must be called while holding the timer lock.
+	 */
+	private void scheduleTick() {
+		runningTimer = commands.schedule(new TimerTick(timerGeneration),
+				clock.getNanosUntilNextChange(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Cancels any scheduled timer tick. Must be called while holding the timer
+	 * lock.
+	 */
+	private void cancelTicks() {
+		if (runningTimer != null) {
+			runningTimer.cancel(false);
+			runningTimer = null;
 		}
+		timerGeneration++;
 	}
 
 	/**
 	 * Resets the jam timer.
 	 */
 	public void resetTimer() {
-		setTimeRemaining(MatchControl.getInstance().getMatch().getJamDuration());
-		MainWindow.getInstance().updateStatusBar(Icons.TIME_RESET,
-				"Jam timer reset.", true);
+		commands.run(new Runnable() {
+			public void run() {
+				setTimeRemaining(MatchControl.getInstance().getMatch()
+						.getJamDuration());
+				MainWindow.getInstance().updateStatusBar(Icons.TIME_RESET,
+						"Jam timer reset.", true);
+			}
+		});
 	}
 
 	/**
@@ -233,70 +377,94 @@ public class JamControl extends Observable<Jam> {
 	 */
 	public boolean isTimerRunning() {
 		synchronized (timerSync) {
-			return runningTimer != null;
+			return clock.isRunning();
 		}
 	}
 
 	/**
 	 * Adjusts team 1's score by the specified value.
 	 */
-	public void adjustTeam1Score(int amount) {
-		Jam jam = getJam();
-		jam.setScore1(Math.max(jam.getScore1() + amount, 0));
-		notifyObservers(jam);
-		MatchControl.getInstance().setUnsavedChanges(true);
+	public void adjustTeam1Score(final int amount) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				jam.setScore1(Math.max(jam.getScore1() + amount, 0));
+				notifyObservers(jam, ChangeType.SCORE_CHANGED);
+				MatchControl.getInstance().setUnsavedChanges(true);
+			}
+		});
 	}
 
 	/**
 	 * Adjusts team 2's score by the specified value.
 	 */
-	public void adjustTeam2Score(int amount) {
-		Jam jam = getJam();
-		jam.setScore2(Math.max(jam.getScore2() + amount, 0));
-		notifyObservers(jam);
-		MatchControl.getInstance().setUnsavedChanges(true);
+	public void adjustTeam2Score(final int amount) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				jam.setScore2(Math.max(jam.getScore2() + amount, 0));
+				notifyObservers(jam, ChangeType.SCORE_CHANGED);
+				MatchControl.getInstance().setUnsavedChanges(true);
+			}
+		});
 	}
 
 	/**
 	 * Sets team 1's score to the specified value.
 	 */
-	public void setTeam1Score(int score) {
-		Jam jam = getJam();
-		if (score != jam.getScore1()) {
-			jam.setScore1(score);
-			notifyObservers(jam);
-			MatchControl.getInstance().setUnsavedChanges(true);
-		}
+	public void setTeam1Score(final int score) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				if (score != jam.getScore1()) {
+					jam.setScore1(score);
+					notifyObservers(jam, ChangeType.SCORE_CHANGED);
+					MatchControl.getInstance().setUnsavedChanges(true);
+				}
+			}
+		});
 	}
 
 	/**
 	 * Sets team 2's score to the specified value.
 	 */
-	public void setTeam2Score(int score) {
-		Jam jam = getJam();
-		if (score != jam.getScore2()) {
-			jam.setScore2(score);
-			notifyObservers(jam);
-			MatchControl.getInstance().setUnsavedChanges(true);
-		}
+	public void setTeam2Score(final int score) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				if (score != jam.getScore2()) {
+					jam.setScore2(score);
+					notifyObservers(jam, ChangeType.SCORE_CHANGED);
+					MatchControl.getInstance().setUnsavedChanges(true);
+				}
+			}
+		});
 	}
 
 	/**
 	 * Sets or unsets team 1's lead jammer status (if true, also unsets team 2's
 	 * LJ status).
 	 */
-	public void setTeam1LJ(boolean isLJ) {
-		Jam jam = getJam();
-		setLJ(isLJ, jam.getTeam1(), jam);
+	public void setTeam1LJ(final boolean isLJ) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				setLJ(isLJ, jam.getTeam1(), jam);
+			}
+		});
 	}
 
 	/**
 	 * Sets or unsets team 2's lead jammer status (if true, also unsets team 1's
 	 * LJ status).
 	 */
-	public void setTeam2LJ(boolean isLJ) {
-		Jam jam = getJam();
-		setLJ(isLJ, jam.getTeam2(), jam);
+	public void setTeam2LJ(final boolean isLJ) {
+		commands.run(new Runnable() {
+			public void run() {
+				Jam jam = getJam();
+				setLJ(isLJ, jam.getTeam2(), jam);
+			}
+		});
 	}
 
 	/**
@@ -306,11 +474,11 @@ public class JamControl extends Observable<Jam> {
 	private void setLJ(boolean isLJ, Team team, Jam jam) {
 		if (isLJ && jam.getLeadJammer() != team) {
 			jam.setLeadJammer(team);
-			notifyObservers(jam);
+			notifyObservers(jam, ChangeType.LEAD_JAMMER_CHANGED);
 			MatchControl.getInstance().setUnsavedChanges(true);
 		} else if (!isLJ && jam.getLeadJammer() == team) {
 			jam.setLeadJammer(null);
-			notifyObservers(jam);
+			notifyObservers(jam, ChangeType.LEAD_JAMMER_CHANGED);
 			MatchControl.getInstance().setUnsavedChanges(true);
 		}
 	}
@@ -342,6 +510,64 @@ public class JamControl extends Observable<Jam> {
 		private static final JamControl INSTANCE = new JamControl();
 	}
 
+	/**
+	 * Updates the running jam's time remaining from the clock, and schedules
+	 * the next tick until time runs out.
+	 */
+	private class TimerTick implements Runnable {
+
+		/**
+		 * The timer generation in which this tick was scheduled.
+		 */
+		private final int generation;
+
+		/**
+		 * Creates a tick for the passed timer generation.
+		 */
+		public TimerTick(int generation) {
+			this.generation = generation;
+		}
+
+		public void run() {
+			Jam jam;
+			boolean wasCompleted;
+			boolean secondsChanged;
+			boolean timeUp;
+			synchronized (timerSync) {
+
+				// ignore ticks from a timer which has since been cancelled
+				if (generation != timerGeneration) {
+					return;
+				}
+
+				// update the jam from the clock
+				jam = clockJam;
+				int seconds = clock.getRemainingSeconds();
+				wasCompleted = jam.isCompleted();
+				secondsChanged = seconds != jam.getTimeRemaining();
+				jam.setTimeRemaining(seconds);
+
+				// stop when time is up, otherwise wait for the next change
+				timeUp = seconds == 0;
+				if (timeUp) {
+					clock.stop();
+					runningTimer = null;
+				} else {
+					scheduleTick();
+				}
+			}
+
+			if (timeUp) {
+				MainWindow.getInstance().updateStatusBar(Icons.TIME_STOP,
+						"Jam timer stopped.", true);
+			}
+			notifyTimeChanged(jam, wasCompleted);
+			if (secondsChanged) {
+				MatchControl.getInstance().setUnsavedChanges(true);
+			}
+		}
+	}
+
 	/**
 	 * Listens for changes in the overall match and updates accordingly.
 	 */
@@ -357,7 +583,7 @@ public class JamControl extends Observable<Jam> {
 			}
 
 			// update the panel (data may have changed)
-			notifyObservers(jam);
+			notifyObservers(jam, ChangeType.JAM_SELECTED);
 		}
 	}
 }
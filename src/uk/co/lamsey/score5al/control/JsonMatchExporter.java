@@ -0,0 +1,173 @@
+package uk.co.lamsey.score5al.control;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import uk.co.lamsey.score5al.model.JamSnapshot;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
+import uk.co.lamsey.score5al.model.Ranking;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
+import uk.co.lamsey.score5al.ui.ExportTeamFormat;
+
+/**
+ * Exports matches as a JSON document, for use by other programs. The document
+ * is an object holding the time of the export and an array of matches; each
+ * match holds its details, teams, heats (each an array of jams) and rankings.
+ * Values are written as soon as they're produced.
+ */
+public class JsonMatchExporter implements MatchExporter {
+
+	/**
+	 * Whether or not a match has been written yet.
+	 */
+	private boolean matchWritten;
+
+	/**
+	 * Opens the document and the array of matches.
+	 */
+	public void begin(Writer out, Date generatedAt) throws IOException {
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ssZ");
+		out.write("{\n  \"generatedAt\": ");
+		writeString(out, format.format(generatedAt));
+		out.write(",\n  \"matches\": [");
+		matchWritten = false;
+	}
+
+	/**
+	 * Writes the match as an object in the array of matches.
+	 */
+	public void exportMatch(Writer out, MatchSnapshot match,
+			List<Ranking> rankings, ExportTeamFormat teamFormat)
+			throws IOException {
+		out.write(matchWritten ? ",\n" : "\n");
+		matchWritten = true;
+
+		// match details
+		out.write("    {\n      \"name\": ");
+		writeString(out, match.getName());
+		out.write(",\n      \"jamDuration\": " + match.getJamDuration());
+
+		// team details
+		out.write(",\n      \"teams\": [");
+		String separator = "\n";
+		for (TeamSnapshot team : match.getTeams()) {
+			out.write(separator + "        {\"number\": " + team.getNumber()
+					+ ", \"name\": ");
+			writeString(out, team.getName());
+			out.write(", \"abbreviation\": ");
+			writeString(out, team.getAbbreviation());
+			out.write(", \"bgColour\": ");
+			writeString(out, toHex(team.getBgColour()));
+			out.write(", \"fgColour\": ");
+			writeString(out, toHex(team.getFgColour()));
+			out.write(", \"pointsAdjustment\": " + team.getPointsAdjustment()
+					+ "}");
+			separator = ",\n";
+		}
+		out.write("\n      ]");
+
+		// schedule/results
+		out.write(",\n      \"heats\": [");
+		for (int heat = 0; heat < match.getTotalHeats(); heat++) {
+			out.write(heat == 0 ? "\n        [" : ",\n        [");
+			separator = "\n";
+			for (JamSnapshot jam : match.getJams(heat)) {
+				out.write(separator + "          {\"team1\": ");
+				writeString(out, teamFormat.format(jam.getTeam1()));
+				out.write(", \"team2\": ");
+				writeString(out, teamFormat.format(jam.getTeam2()));
+				out.write(", \"completed\": " + jam.isCompleted());
+				if (jam.isCompleted()) {
+					out.write(", \"score1\": " + jam.getScore1()
+							+ ", \"score2\": " + jam.getScore2()
+							+ ", \"leadJammer\": ");
+					TeamSnapshot leadJammer = jam.getLeadJammer();
+					if (leadJammer == null) {
+						out.write("null");
+					} else {
+						writeString(out, teamFormat.format(leadJammer));
+					}
+				}
+				out.write("}");
+				separator = ",\n";
+			}
+			out.write("\n        ]");
+		}
+		out.write("\n      ]");
+
+		// rankings table
+		out.write(",\n      \"rankings\": [");
+		separator = "\n";
+		for (Ranking ranking : rankings) {
+			out.write(separator + "        {\"position\": ");
+			writeString(out, ranking.getRank());
+			out.write(", \"team\": ");
+			writeString(out, teamFormat.format(ranking.getTeamSnapshot()));
+			out.write(", \"wins\": " + ranking.getWins() + ", \"draws\": "
+					+ ranking.getDraws() + ", \"losses\": "
+					+ ranking.getLosses() + ", \"jamsLed\": "
+					+ ranking.getLedJams() + ", \"pointsFor\": "
+					+ ranking.getPointsFor() + ", \"pointsAgainst\": "
+					+ ranking.getPointsAgainst() + ", \"pointsDifference\": "
+					+ ranking.getPointsDifference() + ", \"matchScore\": "
+					+ ranking.getMatchScore() + "}");
+			separator = ",\n";
+		}
+		out.write("\n      ]\n    }");
+	}
+
+	/**
+	 * Closes the array of matches and the document.
+	 */
+	public void end(Writer out) throws IOException {
+		out.write(matchWritten ? "\n  ]\n}\n" : "]\n}\n");
+	}
+
+	/**
+	 * Writes the passed string as a quoted JSON string, escaping any
+	 * characters which need it.
+	 */
+	private static void writeString(Writer out, String string)
+			throws IOException {
+		out.write('"');
+		for (int index = 0; index < string.length(); index++) {
+			char character = string.charAt(index);
+			switch (character) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (character < 0x20) {
+					out.write(String.format("\\u%04x", (int) character));
+				} else {
+					out.write(character);
+				}
+			}
+		}
+		out.write('"');
+	}
+
+	/**
+	 * Returns the passed colour as a hex string, such as "#ff0000".
+	 */
+	private static String toHex(Color colour) {
+		return String.format("#%06x", colour.getRGB() & 0xffffff);
+	}
+}
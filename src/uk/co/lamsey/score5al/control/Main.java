@@ -47,6 +47,8 @@ public class Main {
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				MainWindow.getInstance().show();
+				// start autosaving the match in the background
+				AutoSaver.getInstance();
 				// display any LaF errors
 				if (error != null) {
 					MainWindow.getInstance().showError(error);
@@ -0,0 +1,111 @@
+package uk.co.lamsey.score5al.control;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.Team;
+
+/**
+ * Describes everything which changed in a match between two notifications:
+ * the types of change, and which teams, jams and heats were affected. When
+ * changes are made in a batch, they are all combined into one MatchChange.
+ * 
+ * @see MatchControl#getLastChange()
+ */
+public class MatchChange {
+
+	/**
+	 * The types of change which were made.
+	 */
+	private final Set<ChangeType> types;
+
+	/**
+	 * The teams whose details were edited.
+	 */
+	private final Set<Team> teams;
+
+	/**
+	 * The jams whose teams or results were changed.
+	 */
+	private final Set<Jam> jams;
+
+	/**
+	 * The indexes of the heats containing changed jams.
+	 */
+	private final SortedSet<Integer> heats;
+
+	/**
+	 * Creates a new, empty change.
+	 */
+	MatchChange() {
+		types = EnumSet.noneOf(ChangeType.class);
+		teams = Collections.newSetFromMap(new IdentityHashMap<Team, Boolean>());
+		jams = Collections.newSetFromMap(new IdentityHashMap<Jam, Boolean>());
+		heats = new TreeSet<Integer>();
+	}
+
+	/**
+	 * Records a type of change (null means the type wasn't specified, and is
+	 * treated as a change to the whole match).
+	 */
+	void addType(ChangeType type) {
+		types.add(type == null ? ChangeType.MATCH_CHANGED : type);
+	}
+
+	/**
+	 * Records that the passed team's details were edited.
+	 */
+	void addTeam(Team team) {
+		teams.add(team);
+	}
+
+	/**
+	 * Records that the passed jam, in the specified heat, was changed.
+	 */
+	void addJam(Jam jam, int heatIndex) {
+		jams.add(jam);
+		heats.add(heatIndex);
+	}
+
+	/**
+	 * Returns the types of change which were made.
+	 */
+	public Set<ChangeType> getTypes() {
+		return Collections.unmodifiableSet(types);
+	}
+
+	/**
+	 * Returns true if the whole match may have changed (e.g. a different match
+	 * was loaded, or teams, heats or jams were added or removed), in which
+	 * case the sets of teams, jams and heats aren't complete.
+	 */
+	public boolean isMatchChanged() {
+		return types.contains(ChangeType.MATCH_CHANGED);
+	}
+
+	/**
+	 * Returns the teams whose details were edited.
+	 */
+	public Set<Team> getTeams() {
+		return Collections.unmodifiableSet(teams);
+	}
+
+	/**
+	 * Returns the jams whose teams or results were changed.
+	 */
+	public Set<Jam> getJams() {
+		return Collections.unmodifiableSet(jams);
+	}
+
+	/**
+	 * Returns the indexes of the heats containing changed jams, in order.
+	 */
+	public SortedSet<Integer> getHeats() {
+		return Collections.unmodifiableSortedSet(heats);
+	}
+}
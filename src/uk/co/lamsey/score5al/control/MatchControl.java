@@ -1,18 +1,26 @@
 package uk.co.lamsey.score5al.control;
 
 import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
+import uk.co.lamsey.score5al.control.CommandQueue.Command;
 import uk.co.lamsey.score5al.model.Heat;
 import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.JamSnapshot;
 import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
 import uk.co.lamsey.score5al.model.Ranking;
 import uk.co.lamsey.score5al.model.Team;
 import uk.co.lamsey.score5al.ui.ExportTeamFormat;
@@ -21,10 +29,23 @@ import au.com.bytecode.opencsv.CSVWriter;
 
 /**
  * Used to manipulate the currently-active Match and coordinates updates via the
- * Observer design pattern.
+ * Observer design pattern. All changes to the match are made on the
+ * CommandQueue's writer thread, so observers are notified from that thread.
  */
 public class MatchControl extends Observable<Match> implements Observer<Jam> {
 
+	/**
+	 * The time spent searching for a schedule when replanning a match (in
+	 * milliseconds).
+	 */
+	private static final long REPLAN_MILLIS = 2000;
+
+	/**
+	 * The file in which changes are journalled until the match is saved.
+	 */
+	private static final File JOURNAL_FILE = new File(
+			System.getProperty("user.home"), ".score5al-journal");
+
 	/**
 	 * The currently-loaded match.
 	 */
@@ -33,7 +54,54 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	/**
 	 * Whether or not the match has been changed since it was last saved.
 	 */
-	private boolean unsavedChanges;
+	private volatile boolean unsavedChanges;
+
+	/**
+	 * The queue through which all changes to the match are made.
+	 */
+	private final CommandQueue commands;
+
+	/**
+	 * The most recently published snapshot of the match.
+	 */
+	private volatile MatchSnapshot snapshot;
+
+	/**
+	 * The version number given to the most recently published snapshot.
+	 */
+	private long snapshotVersion;
+
+	/**
+	 * An object used for synchronisation locking when publishing snapshots.
+	 */
+	private final Object snapshotSync;
+
+	/**
+	 * The changes made since observers were last notified. Only used on the
+	 * writer thread.
+	 */
+	private MatchChange pendingChange;
+
+	/**
+	 * The changes passed on in the most recent notification.
+	 */
+	private volatile MatchChange lastChange;
+
+	/**
+	 * The journal of changes made since the match was last saved.
+	 */
+	private final MatchJournal journal;
+
+	/**
+	 * Writes save files in the background.
+	 */
+	private final MatchSaver saver;
+
+	/**
+	 * The teams and jams changed since the match was last written to a binary
+	 * match file. Only used on the writer thread.
+	 */
+	private final DirtyTracker dirty;
 
 	/**
 	 * Creates a default Match.
@@ -42,9 +110,121 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 		super();
 		match = new Match();
 		unsavedChanges = false;
+		commands = CommandQueue.getInstance();
+		snapshotSync = new Object();
+		snapshotVersion = 0;
+		publishSnapshot();
+		pendingChange = new MatchChange();
+		lastChange = null;
+		journal = new MatchJournal(JOURNAL_FILE);
+		journal.reset(null);
+		saver = new MatchSaver();
+		dirty = new DirtyTracker();
 		addObserver(new ChangeMonitor<Match>());
 	}
 
+	/**
+	 * Records the type of change before notifying observers (or holding the
+	 * notification back, during a batch).
+	 */
+	@Override
+	protected void notifyObservers(Match updatedObject, ChangeType type) {
+		pendingChange.addType(type);
+		super.notifyObservers(updatedObject, type);
+	}
+
+	/**
+	 * Publishes a new snapshot of the match and the changes made since the
+	 * last notification before notifying observers, so that any observer
+	 * reading them sees the change.
+	 */
+	@Override
+	protected void dispatch(Match updatedObject, Set<ChangeType> types) {
+		publishSnapshot();
+		lastChange = pendingChange;
+		pendingChange = new MatchChange();
+		super.dispatch(updatedObject, types);
+	}
+
+	/**
+	 * Runs the passed command on the writer thread as a single transaction:
+	 * no other changes can be made while it runs, and observers of the match
+	 * and of jams are notified once at the end (each with all of the types of
+	 * change combined) rather than after each change. Changes which have been
+	 * made are kept, and still notified, if the command fails part way
+	 * through.
+	 * 
+	 * @throws LogicException
+	 *             If the command throws one.
+	 */
+	public <T> T batch(final Command<T> command) throws LogicException {
+		return commands.call(new Command<T>() {
+			public T execute() throws LogicException {
+				JamControl jamControl = JamControl.getInstance();
+				jamControl.beginBatch();
+				beginBatch();
+				try {
+					return command.execute();
+				} finally {
+					// notify match observers first, so that jam observers see
+					// the changed match
+					endBatch();
+					jamControl.endBatch();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the changes passed on in the most recent notification to match
+	 * observers (null if there hasn't been one yet). Observers notified on the
+	 * writer thread can use this to find out exactly what changed.
+	 */
+	public MatchChange getLastChange() {
+		return lastChange;
+	}
+
+	/**
+	 * Publishes a new snapshot of the whole match.
+	 */
+	private void publishSnapshot() {
+		synchronized (snapshotSync) {
+			snapshot = new MatchSnapshot(match, ++snapshotVersion);
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot in which only the passed jam has been updated,
+	 * journals the change and marks the jam as changed for the next save
+	 * (does nothing if the jam isn't in the current match or hasn't changed).
+	 * Should be called after changing a jam and before notifying observers.
+	 */
+	public void publishJam(Jam jam) {
+		synchronized (snapshotSync) {
+			int heatIndex = match.getHeatIndex(jam);
+			if (heatIndex == -1) {
+				return;
+			}
+			int jamIndex = match.getJamIndexInHeat(jam);
+			JamSnapshot jamSnapshot = snapshot.copyJam(match, jam);
+			if (!jamSnapshot.equals(snapshot.getJam(heatIndex, jamIndex))) {
+				snapshot = snapshot.withJam(heatIndex, jamIndex, jamSnapshot,
+						++snapshotVersion);
+				journal.writeJam(match, jam);
+				dirty.jamChanged(match.getJamIndex(jam));
+			}
+		}
+	}
+
+	/**
+	 * Returns the most recently published snapshot of the match. This can be
+	 * read from any thread without locking, and won't change while it's being
+	 * read.
+	 */
+	public MatchSnapshot getSnapshot() {
+		return snapshot;
+	}
+
 	/**
 	 * Listens for updates from the Jam panel.
 	 */
@@ -58,14 +238,44 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 * 
 	 * @return true if a change was made, else false.
 	 */
-	public boolean updateMatch(String name, int numTeams, int numHeats,
-			int numJams, int jamDuration) throws LogicException {
+	public boolean updateMatch(final String name, final int numTeams,
+			final int numHeats, final int numJams, final int jamDuration)
+			throws LogicException {
+		return commands.call(new Command<Boolean>() {
+			public Boolean execute() throws LogicException {
+				return updateMatchOnWriter(name, numTeams, numHeats, numJams,
+						jamDuration);
+			}
+		});
+	}
 
-		// if any changes were made, notify observers
+	/**
+	 * Updates the current Match's details on the writer thread.
+	 */
+	private boolean updateMatchOnWriter(String name, int numTeams,
+			int numHeats, int numJams, int jamDuration) throws LogicException {
+
+		// if any changes were made, notify observers (the details are
+		// journalled regardless, as a change to the jam duration alone isn't
+		// notified)
+		int oldTeams = match.getTotalTeams();
+		int oldHeats = match.getTotalHeats();
+		int oldJams = match.getTotalJams();
+		int oldDuration = match.getJamDuration();
 		boolean changeMade = updateMatch(match, name, numTeams, numHeats,
 				numJams, jamDuration);
+		journal.writeMatch(match);
+
+		// changing the structure moves or resets jams without marking them,
+		// so the next binary save must write the whole match
+		if (numTeams != oldTeams || numHeats != oldHeats
+				|| numJams != oldJams || jamDuration != oldDuration) {
+			dirty.reset();
+		} else {
+			dirty.detailsChanged();
+		}
 		if (changeMade) {
-			notifyObservers(match);
+			notifyObservers(match, ChangeType.MATCH_CHANGED);
 		}
 		return changeMade;
 	}
@@ -74,8 +284,9 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 * Updates the passed Match's details. Used when loading or updating a
 	 * match.
 	 */
-	private boolean updateMatch(Match matchToUpdate, String name, int numTeams,
-			int numHeats, int numJams, int jamDuration) throws LogicException {
+	private static boolean updateMatch(Match matchToUpdate, String name,
+			int numTeams, int numHeats, int numJams, int jamDuration)
+			throws LogicException {
 
 		// trim string input
 		if (name != null) {
@@ -129,9 +340,24 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 * 
 	 * @return true if a change was made, else false.
 	 */
-	public boolean updateTeam(int teamNum, String name, String abbreviation,
-			Color fgColour, Color bgColour, int pointsAdjustment)
+	public boolean updateTeam(final int teamNum, final String name,
+			final String abbreviation, final Color fgColour,
+			final Color bgColour, final int pointsAdjustment)
 			throws LogicException {
+		return commands.call(new Command<Boolean>() {
+			public Boolean execute() throws LogicException {
+				return updateTeamOnWriter(teamNum, name, abbreviation,
+						fgColour, bgColour, pointsAdjustment);
+			}
+		});
+	}
+
+	/**
+	 * Updates the specified Team's details on the writer thread.
+	 */
+	private boolean updateTeamOnWriter(int teamNum, String name,
+			String abbreviation, Color fgColour, Color bgColour,
+			int pointsAdjustment) throws LogicException {
 
 		// check a valid team was specified
 		if (match.getTotalTeams() <= teamNum) {
@@ -142,7 +368,11 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 		boolean changeMade = updateTeam(match.getTeams().get(teamNum), name,
 				abbreviation, fgColour, bgColour, pointsAdjustment);
 		if (changeMade) {
-			notifyObservers(match);
+			Team team = match.getTeams().get(teamNum);
+			pendingChange.addTeam(team);
+			journal.writeTeam(teamNum, team);
+			dirty.teamChanged(teamNum);
+			notifyObservers(match, ChangeType.TEAM_EDITED);
 		}
 		return changeMade;
 	}
@@ -150,9 +380,9 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	/**
 	 * Updates the passed Team's details. Used when loading or updating a match.
 	 */
-	private boolean updateTeam(Team team, String name, String abbreviation,
-			Color fgColour, Color bgColour, int pointsAdjustment)
-			throws LogicException {
+	private static boolean updateTeam(Team team, String name,
+			String abbreviation, Color fgColour, Color bgColour,
+			int pointsAdjustment) throws LogicException {
 
 		// trim string input
 		if (name != null) {
@@ -213,7 +443,19 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 *            in the heat.
 	 * @return Whether or not a change was made.
 	 */
-	public boolean updateHeat(int heatNum, List<Team> team1List,
+	public boolean updateHeat(final int heatNum, final List<Team> team1List,
+			final List<Team> team2List) throws LogicException {
+		return commands.call(new Command<Boolean>() {
+			public Boolean execute() throws LogicException {
+				return updateHeatOnWriter(heatNum, team1List, team2List);
+			}
+		});
+	}
+
+	/**
+	 * Updates the teams in the specified heat on the writer thread.
+	 */
+	private boolean updateHeatOnWriter(int heatNum, List<Team> team1List,
 			List<Team> team2List) throws LogicException {
 
 		// double-check the numbers
@@ -239,12 +481,8 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 			// update the jam if necessary
 			boolean jamChangeMade = false;
 			Jam jam = heat.getJams().get(jamNo);
-			if (team1 != jam.getTeam1()) {
-				jam.setTeam1(team1);
-				jamChangeMade = true;
-			}
-			if (team2 != jam.getTeam2()) {
-				jam.setTeam2(team2);
+			if (team1 != jam.getTeam1() || team2 != jam.getTeam2()) {
+				match.setTeams(jam, team1, team2);
 				jamChangeMade = true;
 			}
 
@@ -254,17 +492,28 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 				jam.setScore2(0);
 				jam.setLeadJammer(null);
 				jam.setTimeRemaining(match.getJamDuration());
+				jamChanged(jam, heatNum);
 				heatChangeMade = true;
 			}
 		}
 
 		// notify if a change was made
 		if (heatChangeMade) {
-			notifyObservers(match);
+			notifyObservers(match, ChangeType.SCHEDULE_CHANGED);
 		}
 		return heatChangeMade;
 	}
 
+	/**
+	 * Records that the passed jam's teams or results were changed, for the
+	 * next notification, in the journal and for the next save.
+	 */
+	private void jamChanged(Jam jam, int heatIndex) {
+		pendingChange.addJam(jam, heatIndex);
+		journal.writeJam(match, jam);
+		dirty.jamChanged(match.getJamIndex(jam));
+	}
+
 	/**
 	 * Attempts to auto-assign teams to all heats, distributing teams as evenly
 	 * as possible.
@@ -274,291 +523,264 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 * @throws LogicException
 	 *             If there are too many teams per heat.
 	 */
-	public void autoAssign(int teamsPerHeat) throws LogicException {
+	public void autoAssign(final int teamsPerHeat) throws LogicException {
+
+		// check input and take a copy of the match to search
+		ScheduleSearch search = commands.call(new Command<ScheduleSearch>() {
+			public ScheduleSearch execute() throws LogicException {
+				if (teamsPerHeat > match.getTotalTeams()) {
+					throw new LogicException("Error: teams per heat cannot "
+							+ "exceed total number of teams");
+				} else if (teamsPerHeat < 2) {
+					throw new LogicException(
+							"Error: Must have at least two teams per heat");
+				}
+				return new ScheduleSearch(match, teamsPerHeat);
+			}
+		});
 
-		// check input
-		if (teamsPerHeat > match.getTotalTeams()) {
-			throw new LogicException("Error: teams per heat cannot exceed "
-					+ "total number of teams");
-		} else if (teamsPerHeat < 2) {
-			throw new LogicException(
-					"Error: Must have at least two teams per heat");
+		// build a perfect distribution directly if possible, otherwise search
+		// for one for up to 60s (on this thread, so that other changes can
+		// carry on meanwhile)
+		Team[][] schedule = search.construct();
+		if (schedule == null) {
+			try {
+				schedule = search.search(60000);
+			} catch (InterruptedException error) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (schedule == null) {
+			throw new LogicException("Couldn't create a perfect "
+					+ "distribution after 60s (" + search.getAttempts()
+					+ " attempts).\nIf retrying doesn't work, you could "
+					+ "try increasing the number of teams per heat.");
 		}
 
-		// keep trying until we have a perfect distribution
-		int lowCount, highCount, iterations = 0;
-		long startTime = System.currentTimeMillis();
-		List<Team> allTeams = match.getTeams();
-		do {
-			// check we haven't been trying for too long (60s)
-			if (System.currentTimeMillis() - startTime > 60000) {
-				notifyObservers(match);
-				throw new LogicException("Couldn't create a perfect "
-						+ "distribution after 60s (" + iterations
-						+ " attempts).\nIf retrying doesn't work, you could "
-						+ "try increasing the number of teams per heat.");
+		// apply the schedule, as long as the match hasn't been replaced and
+		// its teams and heats haven't been restructured
+		final ScheduleSearch searched = search;
+		final Team[][] found = schedule;
+		commands.call(new Command<Void>() {
+			public Void execute() throws LogicException {
+				if (!searched.fits(match)) {
+					throw new LogicException("The match has changed - the "
+							+ "schedule can no longer be applied.");
+				}
+				assignSchedule(found);
+				return null;
 			}
+		});
+	}
 
-			// build a map to track team-versus-team assignment count
-			Map<Team, Map<Team, Integer>> teamVsCountMap = new HashMap<Team, Map<Team, Integer>>();
-			for (Team team : allTeams) {
-				Map<Team, Integer> teamMap = new HashMap<Team, Integer>();
-				teamVsCountMap.put(team, teamMap);
-				for (Team opponent : allTeams) {
-					if (opponent != team) {
-						teamMap.put(opponent, 0);
-					}
+	/**
+	 * Replaces the teams in every jam with those in the passed schedule from
+	 * auto-assignment, renumbering the teams in order of appearance and
+	 * zeroing all scores. Must be called on the writer thread.
+	 */
+	private void assignSchedule(Team[][] schedule) {
+
+		// rearrange teams in order, so that the first team to appear is team
+		// 1, the second to appear is team 2, and so on
+		List<Team> allTeams = match.getTeams();
+		Team[] renumbered = new Team[allTeams.size()];
+		int nextTeamNo = 0;
+		for (Team[] jamTeams : schedule) {
+			for (Team team : jamTeams) {
+				int teamNo = match.getTeamIndex(team);
+				if (renumbered[teamNo] == null) {
+					renumbered[teamNo] = allTeams.get(nextTeamNo++);
 				}
 			}
-
-			// build a map to track team total assignment count
-			Map<Team, Integer> teamJamCountMap = new HashMap<Team, Integer>();
-			for (Team team : allTeams) {
-				teamJamCountMap.put(team, 0);
+		}
+		for (int teamNo = 0; teamNo < renumbered.length; teamNo++) {
+			if (renumbered[teamNo] == null) {
+				renumbered[teamNo] = allTeams.get(nextTeamNo++);
 			}
+		}
 
-			// build a map to track the last jam to which each team was assigned
-			Map<Team, Integer> teamLastJamMap = new HashMap<Team, Integer>();
-			for (Team team : allTeams) {
-				teamLastJamMap.put(team, -1);
+		// apply the schedule to the jams
+		int jamNo = 0;
+		for (Heat heat : match.getHeats()) {
+			for (Jam jam : heat.getJams()) {
+				Team[] jamTeams = schedule[jamNo];
+				match.setTeams(jam,
+						renumbered[match.getTeamIndex(jamTeams[0])],
+						renumbered[match.getTeamIndex(jamTeams[1])]);
+				jam.setScore1(0);
+				jam.setScore2(0);
+				jam.setLeadJammer(null);
+				jam.setTimeRemaining(match.getJamDuration());
+				jamChanged(jam, match.getHeatIndex(jam));
+				jamNo++;
 			}
+		}
 
-			// iterate over each heat and assign teams
-			for (Heat heat : match.getHeats()) {
-
-				// find the first team to add to the heat
-				List<Team> candidateTeams = allTeams;
-
-				// find the teams which have played least recently
-				candidateTeams = getLowestTeams(candidateTeams, teamJamCountMap);
-
-				// of those, find the teams who have played the least jams
-				candidateTeams = getLowestTeams(candidateTeams, teamJamCountMap);
-
-				// select the first remaining team
-				List<Team> heatTeams = new ArrayList<Team>();
-				int randomIndex = (int) (Math.random() * candidateTeams.size());
-				heatTeams.add(candidateTeams.get(randomIndex));
-
-				// add the remaining teams to the heat
-				while (heatTeams.size() < teamsPerHeat) {
-
-					// map how often each other team has played the heat teams
-					candidateTeams = new ArrayList<Team>();
-					Map<Team, Integer> heatVsCountMap = new HashMap<Team, Integer>();
-					for (Team team : allTeams) {
-						if (!heatTeams.contains(team)) {
-							candidateTeams.add(team);
-							int playedHeatTeamsCount = 0;
-							for (Team opponent : heatTeams) {
-								playedHeatTeamsCount += teamVsCountMap
-										.get(team).get(opponent);
-							}
-							heatVsCountMap.put(team, playedHeatTeamsCount);
-						}
-					}
-
-					// find the teams which have played the heat teams least
-					candidateTeams = getLowestTeams(candidateTeams,
-							heatVsCountMap);
-
-					// of those, find the teams which have played least recently
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamLastJamMap);
-
-					// of those, find the teams which have played the least jams
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamJamCountMap);
-
-					// add a random team to the heat
-					randomIndex = (int) (Math.random() * candidateTeams.size());
-					heatTeams.add(candidateTeams.get(randomIndex));
-				}
+		// notify observers
+		notifyObservers(match, ChangeType.SCHEDULE_CHANGED);
+	}
 
-				// map how often the teams in the heat have played each other
-				Map<Team, Integer> heatVsCountMap = new HashMap<Team, Integer>();
-				for (Team team : heatTeams) {
-					heatVsCountMap.put(team, 0);
-					for (Team opponent : heatTeams) {
-						if (opponent != team) {
-							heatVsCountMap.put(team, heatVsCountMap.get(team)
-									+ teamVsCountMap.get(team).get(opponent));
-						}
+	/**
+	 * Replans the heats which haven't been played yet, for example after a
+	 * team withdraws part way through the match. Every heat up to the last one
+	 * with a completed jam is kept, apart from unplayed jams involving a
+	 * withdrawn team, which are given other teams from the same heat. The
+	 * remaining heats are distributed amongst the teams still taking part,
+	 * as evenly as possible given the jams already played.
+	 * 
+	 * @param teamsPerHeat
+	 *            The number of teams to be assigned to each replanned heat.
+	 * @param withdrawnTeams
+	 *            The teams which are no longer taking part in the match.
+	 * @return Whether or not a change was made.
+	 * @throws LogicException
+	 *             If there are too many teams per heat for the remaining
+	 *             teams.
+	 */
+	public boolean replan(final int teamsPerHeat,
+			final Collection<Team> withdrawnTeams) throws LogicException {
+
+		// check input and take a copy of the match to search
+		ScheduleSearch search = commands.call(new Command<ScheduleSearch>() {
+			public ScheduleSearch execute() throws LogicException {
+				int remainingTeams = 0;
+				for (Team team : match.getTeams()) {
+					if (!withdrawnTeams.contains(team)) {
+						remainingTeams++;
 					}
 				}
-
-				// iterate over each jam in this heat and assign teams
-				for (Jam jam : heat.getJams()) {
-
-					// first find team 1
-					candidateTeams = new ArrayList<Team>(heatTeams);
-
-					// find the teams which have played the others least
-					candidateTeams = getLowestTeams(candidateTeams,
-							heatVsCountMap);
-
-					// of those, find the teams which have played least recently
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamLastJamMap);
-
-					// of those, find the teams which have played the least jams
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamJamCountMap);
-
-					// take the first one from the list and use it as team 1
-					randomIndex = (int) (Math.random() * candidateTeams.size());
-					Team team1 = candidateTeams.get(randomIndex);
-
-					// now find team 2
-					candidateTeams = new ArrayList<Team>(heatTeams);
-					candidateTeams.remove(team1);
-
-					// find the teams which team 1 has played the fewest times
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamVsCountMap.get(team1));
-
-					// of those, find the teams which have played least recently
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamLastJamMap);
-
-					// of those, find the teams which have played the least jams
-					candidateTeams = getLowestTeams(candidateTeams,
-							teamJamCountMap);
-
-					// take the last one from the list and use it as team 2
-					randomIndex = (int) (Math.random() * candidateTeams.size());
-					Team team2 = candidateTeams.get(randomIndex);
-
-					// now update the jam
-					jam.setTeam1(team1);
-					jam.setTeam2(team2);
-					jam.setScore1(0);
-					jam.setScore2(0);
-					jam.setLeadJammer(null);
-					jam.setTimeRemaining(match.getJamDuration());
-
-					// work out this jam's overall match number
-					int jamNo = (match.getHeats().indexOf(heat) * heat
-							.getTotalJams()) + heat.getJams().indexOf(jam);
-
-					// update all the counters for team 1
-					Map<Team, Integer> team1VsCountMap = teamVsCountMap
-							.get(team1);
-					team1VsCountMap.put(team2, team1VsCountMap.get(team2) + 1);
-					teamJamCountMap.put(team1, teamJamCountMap.get(team1) + 1);
-					teamLastJamMap.put(team1, jamNo);
-					heatVsCountMap.put(team1, heatVsCountMap.get(team1) + 1);
-
-					// update counters for team 2
-					Map<Team, Integer> team2VsCountMap = teamVsCountMap
-							.get(team2);
-					team2VsCountMap.put(team1, team2VsCountMap.get(team1) + 1);
-					teamJamCountMap.put(team2, teamJamCountMap.get(team2) + 1);
-					teamLastJamMap.put(team2, jamNo);
-					heatVsCountMap.put(team2, heatVsCountMap.get(team2) + 1);
+				if (teamsPerHeat > remainingTeams) {
+					throw new LogicException("Error: teams per heat cannot "
+							+ "exceed number of remaining teams");
+				} else if (teamsPerHeat < 2) {
+					throw new LogicException(
+							"Error: Must have at least two teams per heat");
 				}
+				return new ScheduleSearch(match, teamsPerHeat, withdrawnTeams);
 			}
+		});
 
-			// check if we have as perfect a distribution as possible
-			highCount = 0;
-			lowCount = Integer.MAX_VALUE;
-			iterations++;
-			for (Team team : allTeams) {
-				for (Team opponent : allTeams) {
-					if (opponent != team) {
-						int count = teamVsCountMap.get(team).get(opponent);
-						if (count > highCount) {
-							highCount = count;
-						}
-						if (count < lowCount) {
-							lowCount = count;
-						}
-					}
-				}
-			}
-		} while (highCount - lowCount > 1);
-
-		// rearrange teams in order
-		for (Team thisTeam : allTeams) {
-			int teamNo = allTeams.indexOf(thisTeam);
+		// find the most even schedule we can in a couple of seconds
+		Team[][] schedule = null;
+		try {
+			schedule = search.searchBest(REPLAN_MILLIS);
+		} catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+		if (schedule == null) {
+			throw new LogicException("Couldn't replan the remaining heats.");
+		}
 
-			// look for the first jam involving a team >= this teams' number
-			Team otherTeam = null;
-			for (Heat heat : match.getHeats()) {
-				if (otherTeam == null) {
-					for (Jam jam : heat.getJams()) {
-						if (allTeams.indexOf(jam.getTeam1()) >= teamNo) {
-							otherTeam = jam.getTeam1();
-							break;
-						} else if (allTeams.indexOf(jam.getTeam2()) >= teamNo) {
-							otherTeam = jam.getTeam2();
-							break;
-						}
-					}
-				} else {
-					break;
+		// apply the schedule, as long as the match hasn't been replaced and
+		// its teams and heats haven't been restructured
+		final ScheduleSearch searched = search;
+		final Team[][] found = schedule;
+		return commands.call(new Command<Boolean>() {
+			public Boolean execute() throws LogicException {
+				if (!searched.fits(match)) {
+					throw new LogicException("The match has changed - the "
+							+ "schedule can no longer be applied.");
 				}
+				return applyScheduleOnWriter(found);
 			}
+		});
+	}
 
-			// if the other team isn't the expected team, swap them
-			if (thisTeam != otherTeam) {
-				for (Heat heat : match.getHeats()) {
-					for (Jam jam : heat.getJams()) {
-						if (jam.getTeam1() == thisTeam) {
-							jam.setTeam1(otherTeam);
-						} else if (jam.getTeam1() == otherTeam) {
-							jam.setTeam1(thisTeam);
-						}
-						if (jam.getTeam2() == thisTeam) {
-							jam.setTeam2(otherTeam);
-						} else if (jam.getTeam2() == otherTeam) {
-							jam.setTeam2(thisTeam);
-						}
-					}
-				}
+	/**
+	 * Creates a schedule optimiser for the current match. The optimiser takes
+	 * a copy of the match, so it can then be run on any thread.
+	 * 
+	 * @throws LogicException
+	 *             If any jam doesn't have both teams assigned.
+	 */
+	public ScheduleOptimiser createOptimiser() throws LogicException {
+		return commands.call(new Command<ScheduleOptimiser>() {
+			public ScheduleOptimiser execute() throws LogicException {
+				return new ScheduleOptimiser(match);
 			}
-		}
-
-		// notify observers
-		notifyObservers(match);
+		});
 	}
 
 	/**
-	 * Selects the teams with the lowest count from the passed Map.
+	 * Replaces the teams in every jam with those in the passed schedule (as
+	 * produced by a ScheduleOptimiser). Zeroes out any scores in a changed
+	 * jam.
 	 * 
-	 * @param includeList
-	 *            The list of candidate teams which should be checked.
-	 * @param valueMap
-	 *            The map whose values should be inspected.
-	 * @return The list of teams who have the minimum value from the passed Map.
+	 * @param schedule
+	 *            The teams for each jam in the match, in match order (element
+	 *            0 is team 1, element 1 is team 2).
+	 * @return Whether or not a change was made.
+	 * @throws LogicException
+	 *             If the schedule no longer fits the match, or would change a
+	 *             completed jam.
 	 */
-	private List<Team> getLowestTeams(List<Team> includeList,
-			Map<Team, Integer> valueMap) {
-
-		// find the lowest value in the map
-		int lowestValue = Integer.MAX_VALUE;
-		for (Team team : includeList) {
-			int teamValue = valueMap.get(team);
-			if (teamValue < lowestValue) {
-				lowestValue = teamValue;
+	public boolean applySchedule(final Team[][] schedule)
+			throws LogicException {
+		return commands.call(new Command<Boolean>() {
+			public Boolean execute() throws LogicException {
+				return applyScheduleOnWriter(schedule);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the teams in every jam with those in the passed schedule on the
+	 * writer thread.
+	 */
+	private boolean applyScheduleOnWriter(Team[][] schedule)
+			throws LogicException {
+
+		// check the schedule still fits the match before changing anything
+		if (schedule.length != match.getTotalJams()) {
+			throw new LogicException("The match has changed - the schedule "
+					+ "can no longer be applied.");
+		}
+		int jamNo = 0;
+		for (Heat heat : match.getHeats()) {
+			for (Jam jam : heat.getJams()) {
+				if (jam.isCompleted()
+						&& (schedule[jamNo][0] != jam.getTeam1() || schedule[jamNo][1] != jam
+								.getTeam2())) {
+					throw new LogicException("The match has changed - the "
+							+ "schedule can no longer be applied.");
+				}
+				jamNo++;
 			}
 		}
 
-		// find the teams who have the lowest value
-		List<Team> lowestTeams = new ArrayList<Team>();
-		for (Team team : includeList) {
-			if (valueMap.get(team) == lowestValue) {
-				lowestTeams.add(team);
+		// update the teams in any changed jams
+		boolean changeMade = false;
+		jamNo = 0;
+		for (Heat heat : match.getHeats()) {
+			for (Jam jam : heat.getJams()) {
+				Team team1 = schedule[jamNo][0];
+				Team team2 = schedule[jamNo][1];
+				if (team1 != jam.getTeam1() || team2 != jam.getTeam2()) {
+					match.setTeams(jam, team1, team2);
+					jam.setScore1(0);
+					jam.setScore2(0);
+					jam.setLeadJammer(null);
+					jam.setTimeRemaining(match.getJamDuration());
+					jamChanged(jam, match.getHeatIndex(jam));
+					changeMade = true;
+				}
+				jamNo++;
 			}
 		}
-		return lowestTeams;
+
+		// notify if a change was made
+		if (changeMade) {
+			notifyObservers(match, ChangeType.SCHEDULE_CHANGED);
+		}
+		return changeMade;
 	}
 
 	/**
 	 * Updates the passed Jam's details. Used when loading or updating a match.
 	 */
-	private boolean updateJam(Jam jam, Team team1, Team team2, Team leadJammer,
-			int score1, int score2, int timeRemaining) throws LogicException {
+	private static boolean updateJam(Match matchToUpdate, Jam jam, Team team1,
+			Team team2, Team leadJammer, int score1, int score2,
+			int timeRemaining) throws LogicException {
 
 		// validate the new details
 		if (leadJammer != null && (team1 == null || team2 == null)) {
@@ -574,12 +796,8 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 
 		// update any changed details
 		boolean changeMade = false;
-		if (team1 != jam.getTeam1()) {
-			jam.setTeam1(team1);
-			changeMade = true;
-		}
-		if (team2 != jam.getTeam2()) {
-			jam.setTeam2(team2);
+		if (team1 != jam.getTeam1() || team2 != jam.getTeam2()) {
+			matchToUpdate.setTeams(jam, team1, team2);
 			changeMade = true;
 		}
 		if (leadJammer != jam.getLeadJammer()) {
@@ -590,7 +808,7 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 			jam.setScore1(score1);
 			changeMade = true;
 		}
-		if (score1 != jam.getScore1()) {
+		if (score2 != jam.getScore2()) {
 			jam.setScore2(score2);
 			changeMade = true;
 		}
@@ -606,27 +824,86 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 	 * Discards the current match and creates a new one.
 	 */
 	public void newMatch() {
-		match = new Match();
-		notifyObservers(match);
-		unsavedChanges = false;
+		commands.run(new Runnable() {
+			public void run() {
+				match = new Match();
+				notifyObservers(match, ChangeType.MATCH_CHANGED);
+				unsavedChanges = false;
+				journal.reset(null);
+				dirty.reset();
+			}
+		});
 	}
 
 	/**
-	 * Saves the current match to disk.
+	 * Saves the current match to disk in the background. The match's details
+	 * are copied straight away, so later changes won't be included. The file
+	 * is replaced in one step once the data is safely written, so a failed
+	 * save leaves it as it was.
 	 * 
 	 * @param saveFilePath
-	 *            The path to the file to be written.
+	 *            The path to the file to be written. The match is saved in the
+	 *            binary format if the path has the binary file extension, or
+	 *            as CSV otherwise. If the match was last written to the same
+	 *            binary file, only the teams and jams which have changed since
+	 *            are overwritten, where possible.
+	 * @param listener
+	 *            Told the outcome of the save, from the thread writing the
+	 *            file.
 	 * @throws LogicException
-	 *             If an I/O error occurs.
+	 *             If no file path is passed.
 	 */
-	public void saveMatch(String saveFilePath) throws LogicException {
+	public void saveMatch(final String saveFilePath,
+			final SaveListener listener) throws LogicException {
 
 		// check a file path has been defined
 		if (saveFilePath == null) {
 			throw new LogicException("Error: save file name undefined.");
 		}
 
-		// build the save file data
+		// copy the match's details on the writer thread, so they're consistent
+		commands.run(new Runnable() {
+			public void run() {
+				final Match savedMatch = match;
+				final long savedVersion = snapshot.getVersion();
+				SaveListener savedListener = new SaveListener() {
+					public void saveCompleted(String path) {
+						savedOnWriter(path, savedMatch, savedVersion);
+						listener.saveCompleted(path);
+					}
+
+					public void saveFailed(String path, LogicException error) {
+						saveFailedOnWriter(savedMatch);
+						listener.saveFailed(path, error);
+					}
+				};
+
+				// patch the binary file if possible, or else write it in full
+				if (BinaryMatchFormat.isBinaryPath(saveFilePath)) {
+					MatchSaver.SavePatch patch = dirty.takePatch(saveFilePath,
+							match);
+					if (patch != null) {
+						saver.patch(saveFilePath, patch, savedListener);
+					} else {
+						saver.save(saveFilePath, BinaryMatchFormat
+								.content(dirty.encode(saveFilePath, match)),
+								savedListener);
+					}
+				} else {
+					saver.save(saveFilePath, csvContent(buildSaveData()),
+							savedListener);
+					dirty.reset();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Builds the save file data for the current match. Must be called on the
+	 * writer thread.
+	 */
+	private List<String[]> buildSaveData() {
+
 		List<String[]> csvData = new ArrayList<String[]>();
 
 		// first line: total match data
@@ -659,9 +936,10 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 		for (Heat heat : match.getHeats()) {
 			for (Jam jam : heat.getJams()) {
 				csvData.add(new String[] { "JAM", String.valueOf(jamIndex),
-						String.valueOf(teams.indexOf(jam.getTeam1())),
-						String.valueOf(teams.indexOf(jam.getTeam2())),
-						String.valueOf(teams.indexOf(jam.getLeadJammer())),
+						String.valueOf(match.getTeamIndex(jam.getTeam1())),
+						String.valueOf(match.getTeamIndex(jam.getTeam2())),
+						String.valueOf(match.getTeamIndex(jam
+								.getLeadJammer())),
 						String.valueOf(jam.getScore1()),
 						String.valueOf(jam.getScore2()),
 						String.valueOf(jam.getTimeRemaining()) });
@@ -669,31 +947,70 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 			}
 		}
 
-		// CSV data complete, write to disk
-		try {
-			CSVWriter writer = new CSVWriter(new FileWriter(saveFilePath));
-			writer.writeAll(csvData);
-			writer.close();
-
-			// check for IO errors
-			if (writer.checkError()) {
-				throw new LogicException(
-						"Couldn't save file - an I/O error occurred.");
+		return csvData;
+	}
+
+	/**
+	 * Returns save file contents which write the passed rows as CSV.
+	 */
+	private static MatchSaver.SaveContent csvContent(
+			final List<String[]> rows) {
+		return new MatchSaver.SaveContent() {
+			public void write(OutputStream out) throws IOException {
+				CSVWriter writer = new CSVWriter(new OutputStreamWriter(out));
+				writer.writeAll(rows);
+				writer.flush();
+				if (writer.checkError()) {
+					throw new IOException("an I/O error occurred");
+				}
 			}
+		};
+	}
 
-			// make sure the match has this file name set
-			match.setSaveFilePath(saveFilePath);
+	/**
+	 * Records that the passed match has been saved to the specified file as
+	 * it was at the passed snapshot version. The match is only marked as
+	 * having no unsaved changes (and the journal restarted) if it hasn't
+	 * changed since.
+	 */
+	private void savedOnWriter(final String saveFilePath,
+			final Match savedMatch, final long savedVersion) {
+		commands.run(new Runnable() {
+			public void run() {
+				if (match != savedMatch) {
+					return;
+				}
 
-			// if successful, then there are no unsaved changes
-			unsavedChanges = false;
+				// make sure the match has this file name set
+				match.setSaveFilePath(saveFilePath);
 
-		} catch (IOException error) {
-			throw new LogicException("Couldn't save file - I/O error: " + error);
-		}
+				// if nothing has changed since, there are no unsaved changes
+				if (snapshot.getVersion() == savedVersion) {
+					unsavedChanges = false;
+					journal.reset(saveFilePath);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Records that a save of the passed match failed, so the next save writes
+	 * the whole match (as the file may not be as expected).
+	 */
+	private void saveFailedOnWriter(final Match savedMatch) {
+		commands.run(new Runnable() {
+			public void run() {
+				if (match == savedMatch) {
+					dirty.reset();
+				}
+			}
+		});
 	}
 
 	/**
-	 * Loads the current match from disk.
+	 * Loads the current match from disk. The file is read and parsed on the
+	 * calling thread; only the switch to the new match is made on the writer
+	 * thread.
 	 * 
 	 * @param saveFilePath
 	 *            The path to the file containing the save data.
@@ -708,16 +1025,75 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 			throw new LogicException("Error: save file name undefined.");
 		}
 
-		// try to read the data from file
-		List<String[]> lines;
+		// read the file, then replace the current match with the new one and
+		// notify observers
+		List<String> warnings = new ArrayList<String>();
+		final Match loadedMatch = readMatch(saveFilePath, warnings);
+		commands.run(new Runnable() {
+			public void run() {
+				match = loadedMatch;
+				notifyObservers(match, ChangeType.MATCH_CHANGED);
+
+				// if successful, then there are no unsaved changes
+				unsavedChanges = false;
+				journal.reset(match.getSaveFilePath());
+				dirty.reset();
+			}
+		});
+
+		// return the list of warnings
+		return warnings;
+	}
+
+	/**
+	 * Reads and parses a match from disk, adding any non-fatal warnings to the
+	 * passed list. Binary match files are recognised by their magic number;
+	 * anything else is read as CSV. The match read is separate from the
+	 * current match, so this can be called from any thread (and without
+	 * creating the MatchControl instance, and so the journal).
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error or fatal parsing error occurs.
+	 */
+	public static Match readMatch(String saveFilePath, List<String> warnings)
+			throws LogicException {
+
+		// binary files are loaded straight into a new match
+		if (BinaryMatchFormat.isBinaryFile(saveFilePath)) {
+			Match newMatch = new Match();
+			newMatch.setSaveFilePath(saveFilePath);
+			BinaryMatchFormat.read(saveFilePath, new MatchBuilder(newMatch));
+			return newMatch;
+		}
+
+		// open the file, which is read and parsed a line at a time
+		CSVReader reader;
 		try {
-			CSVReader reader = new CSVReader(new FileReader(saveFilePath));
-			lines = reader.readAll();
-			reader.close();
+			reader = new CSVReader(new FileReader(saveFilePath));
 		} catch (IOException error) {
 			throw new LogicException("Error: couldn't read from file: "
 					+ error.getMessage());
 		}
+		try {
+			return parseMatch(reader, saveFilePath, warnings);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException error) {
+				// everything needed has already been read
+			}
+		}
+	}
+
+	/**
+	 * Parses a match from the passed save file reader, one line at a time,
+	 * adding any non-fatal warnings to the passed list.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error or fatal parsing error occurs.
+	 */
+	private static Match parseMatch(CSVReader reader, String saveFilePath,
+			List<String> warnings) throws LogicException {
 
 		// create a new match object to be updated with the file data
 		Match newMatch = new Match();
@@ -732,7 +1108,8 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 
 		// iterate over lines, tracking line number for reporting errors
 		int lineNum = 0;
-		for (String[] line : lines) {
+		String[] line;
+		while ((line = readLine(reader)) != null) {
 			lineNum++;
 
 			try {
@@ -839,7 +1216,7 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 						// parse the team indexes
 						List<Team> teams = newMatch.getTeams();
 						index = line.length > 2 ? Integer.parseInt(line[2])
-								: teams.indexOf(jam.getTeam1());
+								: newMatch.getTeamIndex(jam.getTeam1());
 						if (index < -1 || index >= teams.size()) {
 							throw new LogicException("Error: invalid team 1 "
 									+ "index specified on line " + lineNum
@@ -847,7 +1224,7 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 						}
 						Team team1 = index == -1 ? null : teams.get(index);
 						index = line.length > 3 ? Integer.parseInt(line[3])
-								: teams.indexOf(jam.getTeam2());
+								: newMatch.getTeamIndex(jam.getTeam2());
 						if (index < -1 || index >= teams.size()) {
 							throw new LogicException("Error: invalid team 2 "
 									+ "index specified on line " + lineNum
@@ -855,7 +1232,8 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 						}
 						Team team2 = index == -1 ? null : teams.get(index);
 						index = line.length > 4 ? Integer.parseInt(line[4])
-								: teams.indexOf(jam.getLeadJammer());
+								: newMatch.getTeamIndex(jam
+										.getLeadJammer());
 						if (index < -1 || index >= teams.size()) {
 							throw new LogicException("Error: invalid LJ team "
 									+ "index specified on line " + lineNum
@@ -872,11 +1250,11 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 								: jam.getTimeRemaining();
 
 						// update the jam object and increment counter
-						updateJam(jam, team1, team2, teamLJ, score1, score2,
-								time);
+						updateJam(newMatch, jam, team1, team2, teamLJ, score1,
+								score2, time);
 						jamLines++;
 
-					} else if (!line[0].matches("-+")) {
+					} else if (!isComment(line[0])) {
 						// unknown keyword and not a comment line
 						unknownLines++;
 					}
@@ -893,7 +1271,6 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 		}
 
 		// build list of warnings
-		List<String> warnings = new ArrayList<String>();
 		if (matchLines == 0) {
 			warnings.add("   No MATCH line found - match initialised with defaults.");
 		}
@@ -919,119 +1296,230 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 			warnings.add("The file may be corrupt or from an old Score5al version.");
 			warnings.add("Please verify the match data is correct.");
 		}
+		return newMatch;
+	}
 
-		// all good, replace current match with the new one and notify observers
-		match = newMatch;
-		notifyObservers(match);
+	/**
+	 * Reads the next line from the passed save file reader, returning null at
+	 * the end of the file.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error occurs.
+	 */
+	private static String[] readLine(CSVReader reader) throws LogicException {
+		try {
+			return reader.readNext();
+		} catch (IOException error) {
+			throw new LogicException("Error: couldn't read from file: "
+					+ error.getMessage());
+		}
+	}
 
-		// if successful, then there are no unsaved changes
-		unsavedChanges = false;
+	/**
+	 * Returns true if the passed keyword marks a comment line in a save file,
+	 * i.e. consists only of dashes.
+	 */
+	private static boolean isComment(String keyword) {
+		for (int charIndex = 0; charIndex < keyword.length(); charIndex++) {
+			if (keyword.charAt(charIndex) != '-') {
+				return false;
+			}
+		}
+		return !keyword.isEmpty();
+	}
 
-		// return the list of warnings
+	/**
+	 * Returns true if the program didn't shut down properly last time, leaving
+	 * unsaved changes in the journal which can be recovered.
+	 */
+	public boolean isRecoveryAvailable() {
+		return journal.hasRecovery();
+	}
+
+	/**
+	 * Recovers the unsaved changes left in the journal by the last run of the
+	 * program, replaying them on top of the match as it was last saved (or a
+	 * new match, if it had never been saved). The recovered match replaces the
+	 * current one, and is left with unsaved changes.
+	 * 
+	 * @return A list of non-fatal warnings from loading the saved match.
+	 * @throws LogicException
+	 *             If the saved match can't be loaded or the journal doesn't
+	 *             match it (the journal is then kept in a backup file).
+	 */
+	public List<String> recoverMatch() throws LogicException {
+
+		// start from the match as it was last saved, and replay the journalled
+		// changes
+		String basePath = journal.getRecoveredBasePath();
+		List<String> warnings = new ArrayList<String>();
+		final Match recovered;
+		try {
+			recovered = basePath == null ? new Match() : readMatch(basePath,
+					warnings);
+			journal.replay(new MatchBuilder(recovered));
+		} catch (LogicException error) {
+			File backup = journal.keepRecovery();
+			if (backup == null) {
+				throw error;
+			}
+			throw new LogicException(error.getMessage()
+					+ "\nThe unsaved changes have been kept in " + backup
+					+ ".", error);
+		}
+
+		// replace the current match, journalling its full state as the saved
+		// match doesn't include the recovered changes
+		commands.run(new Runnable() {
+			public void run() {
+				match = recovered;
+				notifyObservers(match, ChangeType.MATCH_CHANGED);
+				unsavedChanges = true;
+				journal.reset(match.getSaveFilePath());
+				dirty.reset();
+				journal.writeMatch(match);
+				List<Team> teams = match.getTeams();
+				for (int teamIndex = 0; teamIndex < teams.size(); teamIndex++) {
+					journal.writeTeam(teamIndex, teams.get(teamIndex));
+				}
+				for (Heat heat : match.getHeats()) {
+					for (Jam jam : heat.getJams()) {
+						journal.writeJam(match, jam);
+					}
+				}
+				journal.release();
+			}
+		});
 		return warnings;
 	}
 
 	/**
-	 * Exports the match's details to a CSV file.
+	 * Discards the unsaved changes left in the journal by the last run of the
+	 * program.
+	 */
+	public void discardRecovery() {
+		journal.discardRecovery();
+	}
+
+	/**
+	 * Closes the journal when the program shuts down properly, deleting it as
+	 * there are no changes to recover.
+	 */
+	public void closeJournal() {
+		journal.close();
+	}
+
+	/**
+	 * Exports the current match's details to a file, writing each section as
+	 * it's produced.
 	 * 
-	 * @param csvPath
+	 * @param exportPath
 	 *            The path to the file to be saved to.
+	 * @param exporter
+	 *            Writes the export in the chosen format.
 	 * @param teamFormat
 	 *            The method to be used to format teams in the results.
+	 * @throws LogicException
+	 *             If no file path is passed or an I/O error occurs.
 	 */
-	public void exportMatch(String csvPath, ExportTeamFormat teamFormat)
-			throws LogicException {
+	public void exportMatch(String exportPath, MatchExporter exporter,
+			ExportTeamFormat teamFormat) throws LogicException {
 
 		// check we have a valid path
-		if (csvPath == null) {
-			throw new LogicException("Error: CSV file name undefined.");
+		if (exportPath == null) {
+			throw new LogicException("Error: export file name undefined.");
 		}
 
-		// build the export data
-		List<String[]> csvData = new ArrayList<String[]>();
-
-		// include time data at top of file
-		csvData.add(new String[] { "GENERATED AT: ", new Date().toString() });
-		csvData.add(new String[] {});
-
-		// match details
-		csvData.add(new String[] { "MATCH DETAILS" });
-		csvData.add(new String[] { "Name:", match.getName() });
-		csvData.add(new String[] { "Number of teams:",
-				String.valueOf(match.getTotalTeams()) });
-		csvData.add(new String[] { "Number of heats:",
-				String.valueOf(match.getTotalHeats()) });
-		csvData.add(new String[] { "Number of jams:",
-				String.valueOf(match.getTotalJams()) });
-		int jamDuration = match.getJamDuration();
-		csvData.add(new String[] { "Jam duration:",
-				String.format("%d:%02d", jamDuration / 60, jamDuration % 60) });
-		csvData.add(new String[] {});
-
-		// team details
-		csvData.add(new String[] { "TEAM DETAILS" });
-		csvData.add(new String[] { "Number", "Name", "Abbreviated Name",
-				"Background Colour (RGB/hex)", "Foreground Colour (RGB/hex)",
-				"Points Adjustment" });
-		for (Team team : match.getTeams()) {
-			String bg = String.format("%08x", team.getBgColour().getRGB())
-					.substring(2);
-			String fg = String.format("%08x", team.getFgColour().getRGB())
-					.substring(2);
-			csvData.add(new String[] { String.valueOf(team.getNumber()),
-					team.getName(), team.getAbbreviation(), "#" + bg, "#" + fg,
-					String.valueOf(team.getPointsAdjustment()) });
+		// export a consistent snapshot, in case the match is being updated,
+		// with rankings calculated from the same snapshot
+		MatchSnapshot snapshot = getSnapshot();
+		List<Ranking> rankings = RankingControl.calculateRankings(snapshot);
+		try {
+			Writer out = openExport(exportPath);
+			try {
+				exporter.begin(out, new Date());
+				exporter.exportMatch(out, snapshot, rankings, teamFormat);
+				exporter.end(out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException error) {
+			throw new LogicException("Couldn't save file - I/O error: " + error);
 		}
-		csvData.add(new String[] {});
+	}
 
-		// schedule/results
-		csvData.add(new String[] { "JAM SCHEDULE/RESULTS" });
-		int heatNum = 0;
-		for (Heat heat : match.getHeats()) {
-			heatNum++;
-			csvData.add(new String[] { "Heat " + heatNum });
-			for (Jam jam : heat.getJams()) {
-				String score = jam.isCompleted() ? jam.getScore1() + " - "
-						+ jam.getScore2() : "vs";
-				csvData.add(new String[] { teamFormat.format(jam.getTeam1()),
-						score, teamFormat.format(jam.getTeam2()) });
-			}
+	/**
+	 * Exports the details of each of the specified saved matches to one file,
+	 * in order. The matches are read and written one at a time, so any number
+	 * of matches can be exported in a fixed amount of memory. The current
+	 * match isn't affected.
+	 * 
+	 * @param matchPaths
+	 *            The paths to the files containing the matches' save data.
+	 * @param exportPath
+	 *            The path to the file to be saved to.
+	 * @param exporter
+	 *            Writes the export in the chosen format.
+	 * @param teamFormat
+	 *            The method to be used to format teams in the results.
+	 * @return A list of non-fatal warnings from reading the matches, each
+	 *         starting with the name of its file.
+	 * @throws LogicException
+	 *             If no file path is passed, a match can't be read (in which
+	 *             case the export is abandoned) or an I/O error occurs.
+	 */
+	public List<String> exportMatches(List<String> matchPaths,
+			String exportPath, MatchExporter exporter,
+			ExportTeamFormat teamFormat) throws LogicException {
+
+		// check we have a valid path
+		if (exportPath == null) {
+			throw new LogicException("Error: export file name undefined.");
 		}
-		csvData.add(new String[] {});
-
-		// rankings table
-		csvData.add(new String[] { "RANKINGS TABLE" });
-		csvData.add(new String[] { "Position", "Team", "Wins", "Draws",
-				"Losses", "Jams Led", "Points For", "Points Against",
-				"Points Difference", "Match Score" });
-		for (Ranking ranking : RankingControl.getInstance().getRankings()) {
-			csvData.add(new String[] { ranking.getRank(),
-					teamFormat.format(ranking.getTeam()),
-					String.valueOf(ranking.getWins()),
-					String.valueOf(ranking.getDraws()),
-					String.valueOf(ranking.getLosses()),
-					String.valueOf(ranking.getLedJams()),
-					String.valueOf(ranking.getPointsFor()),
-					String.valueOf(ranking.getPointsAgainst()),
-					String.valueOf(ranking.getPointsDifference()),
-					String.valueOf(ranking.getMatchScore()) });
-		}
-		csvData.add(new String[] {});
-
-		// CSV data complete, write to disk
+
+		List<String> warnings = new ArrayList<String>();
 		try {
-			CSVWriter writer = new CSVWriter(new FileWriter(csvPath));
-			writer.writeAll(csvData);
-			writer.close();
-
-			// check for IO errors
-			if (writer.checkError()) {
-				throw new LogicException(
-						"Couldn't save file - an I/O error occurred.");
+			Writer out = openExport(exportPath);
+			try {
+				exporter.begin(out, new Date());
+				for (String matchPath : matchPaths) {
+					String fileName = new File(matchPath).getName();
+
+					// read the match, noting which file any problems are in
+					List<String> matchWarnings = new ArrayList<String>();
+					Match exported;
+					try {
+						exported = readMatch(matchPath, matchWarnings);
+					} catch (LogicException error) {
+						throw new LogicException(fileName + ": "
+								+ error.getMessage());
+					}
+					for (String warning : matchWarnings) {
+						warnings.add(fileName + ": " + warning);
+					}
+
+					// rank and write it
+					MatchSnapshot snapshot = new MatchSnapshot(exported, 0);
+					exporter.exportMatch(out, snapshot,
+							RankingControl.calculateRankings(snapshot),
+							teamFormat);
+				}
+				exporter.end(out);
+			} finally {
+				out.close();
 			}
 		} catch (IOException error) {
 			throw new LogicException("Couldn't save file - I/O error: " + error);
 		}
+		return warnings;
+	}
+
+	/**
+	 * Opens the specified file for writing an export to, as UTF-8 text.
+	 */
+	private static Writer openExport(String exportPath) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				exportPath), "UTF-8"));
 	}
 
 	/**
@@ -1075,4 +1563,68 @@ public class MatchControl extends Observable<Match> implements Observer<Jam> {
 		/** The Singleton instance of this class. */
 		private static final MatchControl INSTANCE = new MatchControl();
 	}
+
+	/**
+	 * Applies the records read back from a file to a match, validating them
+	 * in the same way as changes made through the user interface.
+	 */
+	private static class MatchBuilder implements MatchRecordHandler {
+
+		/**
+		 * The match being built.
+		 */
+		private final Match builtMatch;
+
+		/**
+		 * Creates a builder which applies records to the passed match.
+		 */
+		public MatchBuilder(Match builtMatch) {
+			this.builtMatch = builtMatch;
+		}
+
+		public void updateMatch(String name, int numTeams, int numHeats,
+				int numJams, int jamDuration) throws LogicException {
+			MatchControl.updateMatch(builtMatch, name, numTeams,
+					numHeats, numJams, jamDuration);
+		}
+
+		public void updateTeam(int teamIndex, String name,
+				String abbreviation, Color fgColour, Color bgColour,
+				int pointsAdjustment) throws LogicException {
+			if (teamIndex < 0 || teamIndex >= builtMatch.getTotalTeams()) {
+				throw new LogicException("Error: invalid team index "
+						+ teamIndex + ".");
+			}
+			MatchControl.updateTeam(builtMatch.getTeams().get(teamIndex),
+					name, abbreviation, fgColour, bgColour, pointsAdjustment);
+		}
+
+		public void updateJam(int jamIndex, int team1Index, int team2Index,
+				int leadJammerIndex, int score1, int score2,
+				int timeRemaining) throws LogicException {
+			Jam jam = builtMatch.getJam(jamIndex);
+			if (jam == null) {
+				throw new LogicException("Error: invalid jam index "
+						+ jamIndex + ".");
+			}
+			MatchControl.updateJam(builtMatch, jam, getTeam(team1Index),
+					getTeam(team2Index), getTeam(leadJammerIndex), score1,
+					score2, timeRemaining);
+		}
+
+		/**
+		 * Returns the built match's team with the passed index (null for -1).
+		 * 
+		 * @throws LogicException
+		 *             If the index is invalid.
+		 */
+		private Team getTeam(int teamIndex) throws LogicException {
+			if (teamIndex < -1 || teamIndex >= builtMatch.getTotalTeams()) {
+				throw new LogicException("Error: invalid team index "
+						+ teamIndex + ".");
+			}
+			return teamIndex == -1 ? null : builtMatch.getTeams().get(
+					teamIndex);
+		}
+	}
 }
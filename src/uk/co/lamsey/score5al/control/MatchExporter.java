@@ -0,0 +1,51 @@
+package uk.co.lamsey.score5al.control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+import uk.co.lamsey.score5al.model.MatchSnapshot;
+import uk.co.lamsey.score5al.model.Ranking;
+import uk.co.lamsey.score5al.ui.ExportTeamFormat;
+
+/**
+ * Writes match reports in a particular format. Each section is written
+ * straight to the output as it's produced, so an export never holds more than
+ * one match in memory, and one export can include any number of matches.
+ * 
+ * An exporter is used for a single export: begin is called first, then
+ * exportMatch for each match, then end.
+ * 
+ * @see MatchControl#exportMatch(String, MatchExporter, ExportTeamFormat)
+ * @see MatchControl#exportMatches(List, String, MatchExporter,
+ *      ExportTeamFormat)
+ */
+public interface MatchExporter {
+
+	/**
+	 * Writes anything which comes before the first match.
+	 * 
+	 * @param generatedAt
+	 *            The time at which the export was made.
+	 */
+	public void begin(Writer out, Date generatedAt) throws IOException;
+
+	/**
+	 * Writes the passed match's details, teams, schedule/results and
+	 * rankings.
+	 * 
+	 * @param rankings
+	 *            The sorted rankings for the match's teams.
+	 * @param teamFormat
+	 *            The method to be used to format teams in the results.
+	 */
+	public void exportMatch(Writer out, MatchSnapshot match,
+			List<Ranking> rankings, ExportTeamFormat teamFormat)
+			throws IOException;
+
+	/**
+	 * Writes anything which comes after the last match.
+	 */
+	public void end(Writer out) throws IOException;
+}
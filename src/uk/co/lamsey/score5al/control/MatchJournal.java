@@ -0,0 +1,545 @@
+package uk.co.lamsey.score5al.control;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.Team;
+import uk.co.lamsey.score5al.ui.Icons;
+import uk.co.lamsey.score5al.ui.MainWindow;
+
+/**
+ * An append-only journal of the changes made to the match since it was last
+ * saved, so that they can be recovered if the program doesn't shut down
+ * properly. The journal starts with the path of the save file which the
+ * changes apply to, followed by one record for each change.
+ * 
+ * Appending a record just copies it into a memory buffer. The buffer is
+ * written to disk (and forced) on a separate thread shortly afterwards, so
+ * that several changes in quick succession are committed together.
+ */
+class MatchJournal {
+
+	/**
+	 * The number at the start of every journal file ("S5LJ").
+	 */
+	private static final int MAGIC = 0x53354C4A;
+
+	/**
+	 * The version of the journal format.
+	 */
+	private static final byte VERSION = 1;
+
+	/**
+	 * The type byte for a record of the match's details.
+	 */
+	private static final byte MATCH_RECORD = 1;
+
+	/**
+	 * The type byte for a record of a team's details.
+	 */
+	private static final byte TEAM_RECORD = 2;
+
+	/**
+	 * The type byte for a record of a jam's details.
+	 */
+	private static final byte JAM_RECORD = 3;
+
+	/**
+	 * How long to wait for further changes before committing (in
+	 * milliseconds).
+	 */
+	private static final long GROUP_COMMIT_MILLIS = 50;
+
+	/**
+	 * The character set used for strings.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The journal file.
+	 */
+	private final File file;
+
+	/**
+	 * The channel used to write the journal (null if journalling is disabled).
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The lock which stops other copies of the program using the journal.
+	 */
+	private FileLock lock;
+
+	/**
+	 * The executor which owns the thread writing to the journal file.
+	 */
+	private final ScheduledThreadPoolExecutor flusher;
+
+	/**
+	 * The records which haven't been written to disk yet.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * A spare buffer to swap with the full one when writing (null while it is
+	 * being written).
+	 */
+	private ByteBuffer spare;
+
+	/**
+	 * Whether or not the journal file must be emptied before the buffer is
+	 * written.
+	 */
+	private boolean truncatePending;
+
+	/**
+	 * Whether or not a write of the buffer has been scheduled.
+	 */
+	private boolean flushScheduled;
+
+	/**
+	 * An object used for synchronisation locking when using the buffers.
+	 */
+	private final Object bufferSync;
+
+	/**
+	 * The records left in the journal by the last run of the program,
+	 * positioned after the header (null if there are none).
+	 */
+	private ByteBuffer recovered;
+
+	/**
+	 * The save file path which the recovered records apply to (null if the
+	 * match had never been saved).
+	 */
+	private String recoveredBasePath;
+
+	/**
+	 * Whether or not writing is held back until the user has decided what to
+	 * do with the recovered records, so that they stay on disk until then.
+	 */
+	private boolean held;
+
+	/**
+	 * Opens the passed journal file, keeping any records left in it to be
+	 * recovered. If there are any, nothing is written to the file until they
+	 * have been recovered or discarded. Journalling is disabled if the file
+	 * can't be opened or is being used by another copy of the program.
+	 */
+	MatchJournal(File file) {
+		this.file = file;
+		bufferSync = new Object();
+		buffer = ByteBuffer.allocate(4096);
+		spare = ByteBuffer.allocate(4096);
+		flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Match journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			lock = channel.tryLock();
+			if (lock == null) {
+				channel.close();
+				channel = null;
+				return;
+			}
+			readRecovered();
+			held = hasRecovery();
+		} catch (IOException error) {
+			// carry on without a journal
+			disable();
+		}
+	}
+
+	/**
+	 * Reads the records left in the journal file, if the file has a valid
+	 * header.
+	 */
+	private void readRecovered() throws IOException {
+		long size = channel.size();
+		if (size == 0 || size > Integer.MAX_VALUE) {
+			return;
+		}
+		ByteBuffer data = ByteBuffer.allocate((int) size);
+		while (data.hasRemaining() && channel.read(data, data.position()) > 0) {
+			// keep reading until the buffer is full
+		}
+		data.flip();
+		try {
+			if (data.getInt() != MAGIC || data.get() != VERSION) {
+				return;
+			}
+			String basePath = getString(data);
+			recoveredBasePath = basePath.isEmpty() ? null : basePath;
+			recovered = data;
+		} catch (BufferUnderflowException error) {
+			// incomplete header - nothing to recover
+		}
+	}
+
+	/**
+	 * Returns true if the last run of the program left any changes in the
+	 * journal.
+	 */
+	boolean hasRecovery() {
+		return recovered != null && recovered.hasRemaining();
+	}
+
+	/**
+	 * Returns the save file path which the recovered changes apply to (null if
+	 * they apply to a new match).
+	 */
+	String getRecoveredBasePath() {
+		return recoveredBasePath;
+	}
+
+	/**
+	 * Passes each recovered record to the passed handler in turn, stopping at
+	 * the first incomplete record (which was being written when the program
+	 * stopped). The journal file isn't written until release is called, which
+	 * should be once the recovered match has been journalled.
+	 * 
+	 * @return The number of records replayed.
+	 * @throws LogicException
+	 *             If the handler throws one.
+	 */
+	int replay(MatchRecordHandler handler) throws LogicException {
+		if (recovered == null) {
+			return 0;
+		}
+		ByteBuffer data = recovered.duplicate();
+		int records = 0;
+		try {
+			while (data.hasRemaining()) {
+				byte type = data.get();
+				if (type == MATCH_RECORD) {
+					String name = getString(data);
+					int numTeams = data.getInt();
+					int numHeats = data.getInt();
+					int numJams = data.getInt();
+					int jamDuration = data.getInt();
+					handler.updateMatch(name, numTeams, numHeats, numJams,
+							jamDuration);
+				} else if (type == TEAM_RECORD) {
+					int teamIndex = data.getInt();
+					String name = getString(data);
+					String abbreviation = getString(data);
+					Color fgColour = new Color(data.getInt());
+					Color bgColour = new Color(data.getInt());
+					int pointsAdjustment = data.getInt();
+					handler.updateTeam(teamIndex, name, abbreviation, fgColour,
+							bgColour, pointsAdjustment);
+				} else if (type == JAM_RECORD) {
+					int jamIndex = data.getInt();
+					int team1Index = data.getInt();
+					int team2Index = data.getInt();
+					int leadJammerIndex = data.getInt();
+					int score1 = data.getInt();
+					int score2 = data.getInt();
+					int timeRemaining = data.getInt();
+					handler.updateJam(jamIndex, team1Index, team2Index,
+							leadJammerIndex, score1, score2, timeRemaining);
+				} else {
+					// not a record - the rest of the file wasn't written
+					break;
+				}
+				records++;
+			}
+		} catch (BufferUnderflowException error) {
+			// the last record wasn't completely written
+		}
+		return records;
+	}
+
+	/**
+	 * Discards any records left by the last run of the program.
+	 */
+	void discardRecovery() {
+		release();
+	}
+
+	/**
+	 * Copies the journal left by the last run of the program to a backup file
+	 * next to it, so the records aren't lost when they can't be recovered now,
+	 * then discards them.
+	 * 
+	 * @return The backup file, or null if there was nothing to back up or it
+	 *         couldn't be written.
+	 */
+	File keepRecovery() {
+		File backup = null;
+		if (recovered != null) {
+			ByteBuffer data = recovered.duplicate();
+			data.rewind();
+			backup = new File(file.getPath() + ".1");
+			try {
+				FileOutputStream out = new FileOutputStream(backup);
+				try {
+					out.getChannel().write(data);
+				} finally {
+					out.close();
+				}
+			} catch (IOException error) {
+				backup = null;
+			}
+		}
+		release();
+		return backup;
+	}
+
+	/**
+	 * Forgets the records left by the last run of the program, and starts
+	 * writing this run's records to the journal file in their place.
+	 */
+	void release() {
+		synchronized (bufferSync) {
+			recovered = null;
+			held = false;
+			if (channel != null) {
+				scheduleFlush();
+			}
+		}
+	}
+
+	/**
+	 * Empties the journal and starts a new one for changes to the passed save
+	 * file (null for a match which hasn't been saved).
+	 */
+	void reset(String basePath) {
+		synchronized (bufferSync) {
+			if (channel == null) {
+				return;
+			}
+			buffer.clear();
+			byte[] path = (basePath == null ? "" : basePath).getBytes(UTF8);
+			reserve(5 + 4 + path.length);
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.putInt(path.length);
+			buffer.put(path);
+			truncatePending = true;
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Appends a record of the passed match's details.
+	 */
+	void writeMatch(Match match) {
+		synchronized (bufferSync) {
+			if (channel == null) {
+				return;
+			}
+			byte[] name = match.getName().getBytes(UTF8);
+			reserve(1 + 4 + name.length + 16);
+			buffer.put(MATCH_RECORD);
+			buffer.putInt(name.length);
+			buffer.put(name);
+			buffer.putInt(match.getTotalTeams());
+			buffer.putInt(match.getTotalHeats());
+			buffer.putInt(match.getTotalJams());
+			buffer.putInt(match.getJamDuration());
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Appends a record of the passed team's details.
+	 */
+	void writeTeam(int teamIndex, Team team) {
+		synchronized (bufferSync) {
+			if (channel == null) {
+				return;
+			}
+			byte[] name = team.getName().getBytes(UTF8);
+			byte[] abbreviation = team.getAbbreviation().getBytes(UTF8);
+			reserve(1 + 4 + 4 + name.length + 4 + abbreviation.length + 12);
+			buffer.put(TEAM_RECORD);
+			buffer.putInt(teamIndex);
+			buffer.putInt(name.length);
+			buffer.put(name);
+			buffer.putInt(abbreviation.length);
+			buffer.put(abbreviation);
+			buffer.putInt(team.getFgColour().getRGB());
+			buffer.putInt(team.getBgColour().getRGB());
+			buffer.putInt(team.getPointsAdjustment());
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Appends a record of the passed jam's details.
+	 */
+	void writeJam(Match match, Jam jam) {
+		synchronized (bufferSync) {
+			if (channel == null) {
+				return;
+			}
+			reserve(1 + 28);
+			buffer.put(JAM_RECORD);
+			buffer.putInt(match.getJamIndex(jam));
+			buffer.putInt(match.getTeamIndex(jam.getTeam1()));
+			buffer.putInt(match.getTeamIndex(jam.getTeam2()));
+			buffer.putInt(match.getTeamIndex(jam.getLeadJammer()));
+			buffer.putInt(jam.getScore1());
+			buffer.putInt(jam.getScore2());
+			buffer.putInt(jam.getTimeRemaining());
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Writes any buffered records and deletes the journal file, as there is
+	 * nothing to recover once the program has shut down properly. Nothing more
+	 * is journalled afterwards.
+	 */
+	void close() {
+		Future<?> closed = flusher.submit(new Runnable() {
+			public void run() {
+				synchronized (bufferSync) {
+					if (channel == null || held) {
+						// leave any unrecovered records for next time
+						return;
+					}
+					try {
+						lock.release();
+						channel.close();
+					} catch (IOException error) {
+						// nothing more can be done - delete the file anyway
+					}
+					channel = null;
+				}
+				file.delete();
+			}
+		});
+		try {
+			closed.get();
+		} catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException error) {
+			// the journal is left behind, and will be offered for recovery
+		}
+	}
+
+	/**
+	 * Makes sure there is room in the buffer for a record of the passed
+	 * length, growing it if necessary. Must be called while holding the buffer
+	 * lock.
+	 */
+	private void reserve(int length) {
+		if (buffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(
+					buffer.capacity() * 2, buffer.position() + length));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+	}
+
+	/**
+	 * Schedules the buffer to be written, unless a write is already due. Must
+	 * be called while holding the buffer lock.
+	 */
+	private void scheduleFlush() {
+		if (!flushScheduled) {
+			flushScheduled = true;
+			flusher.schedule(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the journal file and forces them to disk,
+	 * swapping buffers so that new records can be appended meanwhile.
+	 */
+	private void flush() {
+		ByteBuffer data;
+		boolean truncate;
+		synchronized (bufferSync) {
+			flushScheduled = false;
+			if (channel == null || held) {
+				return;
+			}
+			data = buffer;
+			buffer = spare;
+			spare = null;
+			truncate = truncatePending;
+			truncatePending = false;
+		}
+
+		// only this thread writes to the channel, so no lock is needed
+		try {
+			data.flip();
+			if (truncate) {
+				channel.truncate(0);
+				channel.position(0);
+			}
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+			channel.force(false);
+		} catch (IOException error) {
+			synchronized (bufferSync) {
+				disable();
+			}
+			MainWindow.getInstance().updateStatusBar(Icons.WARNING,
+					"Unsaved changes can't be recovered after a crash - "
+							+ "couldn't write to " + file + ": "
+							+ error.getMessage(), true);
+		}
+
+		// the written buffer becomes the spare
+		data.clear();
+		synchronized (bufferSync) {
+			spare = data;
+		}
+	}
+
+	/**
+	 * Stops journalling after an error.
+	 */
+	private void disable() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException closeError) {
+			// already failed - nothing more to do
+		}
+		channel = null;
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string from the passed buffer.
+	 */
+	private static String getString(ByteBuffer data) {
+		int length = data.getInt();
+		if (length < 0 || length > data.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		data.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
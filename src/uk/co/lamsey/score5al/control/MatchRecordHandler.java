@@ -0,0 +1,33 @@
+package uk.co.lamsey.score5al.control;
+
+import java.awt.Color;
+
+/**
+ * Handles a match's details read back from a file one record at a time, such
+ * as the changes in a journal or the contents of a binary save file.
+ * 
+ * @see MatchJournal
+ * @see BinaryMatchFormat
+ */
+interface MatchRecordHandler {
+
+	/**
+	 * Handles a record of the match's details.
+	 */
+	void updateMatch(String name, int numTeams, int numHeats, int numJams,
+			int jamDuration) throws LogicException;
+
+	/**
+	 * Handles a record of a team's details.
+	 */
+	void updateTeam(int teamIndex, String name, String abbreviation,
+			Color fgColour, Color bgColour, int pointsAdjustment)
+			throws LogicException;
+
+	/**
+	 * Handles a record of a jam's details (team indexes are -1 for none).
+	 */
+	void updateJam(int jamIndex, int team1Index, int team2Index,
+			int leadJammerIndex, int score1, int score2, int timeRemaining)
+			throws LogicException;
+}
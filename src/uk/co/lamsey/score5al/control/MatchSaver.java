@@ -0,0 +1,271 @@
+package uk.co.lamsey.score5al.control;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes save files in the background, one at a time. Each file is written to
+ * a temporary file in the same folder, forced to disk and then renamed over
+ * the original, so the original is never left part-written.
+ * 
+ * A file can instead be patched: only the changed parts are overwritten in
+ * place, and forced to disk. This isn't atomic, so a patch should only be used
+ * where a part-written file can be recovered from (such as the journal).
+ * 
+ * If a file is saved again before an earlier save of it has started, the two
+ * saves are merged: a full save replaces everything queued for the file, a
+ * patch is applied after whatever is queued, and every listener is told the
+ * outcome. Once a write to a file fails, patches to it fail too until it has
+ * been saved in full again, as the file may not be as they expect.
+ */
+class MatchSaver {
+
+	/**
+	 * The contents of a save file, copied from the match so that they can be
+	 * written on another thread.
+	 */
+	interface SaveContent {
+
+		/**
+		 * Writes the contents to the passed stream.
+		 */
+		void write(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Changes to part of a save file, copied from the match so that they can
+	 * be written on another thread.
+	 */
+	interface SavePatch {
+
+		/**
+		 * Writes the changes to the file open in the passed channel.
+		 */
+		void write(FileChannel channel) throws IOException;
+	}
+
+	/**
+	 * A save which is waiting to be written.
+	 */
+	private static class SaveRequest {
+
+		/**
+		 * The contents to be written to the file (null if it's only to be
+		 * patched).
+		 */
+		private SaveContent content;
+
+		/**
+		 * The patches to be applied to the file afterwards, in order.
+		 */
+		private final List<SavePatch> patches;
+
+		/**
+		 * The listeners to be told the outcome.
+		 */
+		private final List<SaveListener> listeners;
+
+		/**
+		 * Creates an empty request.
+		 */
+		public SaveRequest() {
+			content = null;
+			patches = new ArrayList<SavePatch>();
+			listeners = new ArrayList<SaveListener>();
+		}
+	}
+
+	/**
+	 * The executor which owns the thread writing the files.
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * The saves waiting to be written, by file path.
+	 */
+	private final Map<String, SaveRequest> pending;
+
+	/**
+	 * The paths of files which haven't been saved in full since a write to
+	 * them failed. Only used on the saver's thread.
+	 */
+	private final Set<String> failedPaths;
+
+	/**
+	 * Creates the saver and starts its thread.
+	 */
+	MatchSaver() {
+		pending = new HashMap<String, SaveRequest>();
+		failedPaths = new HashSet<String>();
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Match saver");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues the passed contents to be written to the specified file,
+	 * replacing any save of the same file which hasn't started yet.
+	 */
+	synchronized void save(String saveFilePath, SaveContent content,
+			SaveListener listener) {
+		SaveRequest request = getRequest(saveFilePath);
+		request.content = content;
+		request.patches.clear();
+		request.listeners.add(listener);
+	}
+
+	/**
+	 * Queues the passed patch to be applied to the specified file, after
+	 * anything already queued for it.
+	 */
+	synchronized void patch(String saveFilePath, SavePatch patch,
+			SaveListener listener) {
+		SaveRequest request = getRequest(saveFilePath);
+		request.patches.add(patch);
+		request.listeners.add(listener);
+	}
+
+	/**
+	 * Returns the request waiting to write the specified file, queueing a new
+	 * one if there isn't one. Must be called while synchronised.
+	 */
+	private SaveRequest getRequest(final String saveFilePath) {
+		SaveRequest request = pending.get(saveFilePath);
+		if (request == null) {
+			request = new SaveRequest();
+			pending.put(saveFilePath, request);
+			writer.execute(new Runnable() {
+				public void run() {
+					write(saveFilePath);
+				}
+			});
+		}
+		return request;
+	}
+
+	/**
+	 * Writes the latest data queued for the specified file, and tells the
+	 * listeners the outcome.
+	 */
+	private void write(String saveFilePath) {
+		SaveRequest request;
+		synchronized (this) {
+			request = pending.remove(saveFilePath);
+		}
+		try {
+			if (request.content != null) {
+				writeAtomically(new File(saveFilePath), request.content);
+				failedPaths.remove(saveFilePath);
+			}
+			if (!request.patches.isEmpty()) {
+				if (failedPaths.contains(saveFilePath)) {
+					throw new LogicException("Couldn't save file - it must be "
+							+ "saved in full after an earlier failed save.");
+				}
+				applyPatches(new File(saveFilePath), request.patches);
+			}
+		} catch (LogicException error) {
+			failedPaths.add(saveFilePath);
+			for (SaveListener listener : request.listeners) {
+				listener.saveFailed(saveFilePath, error);
+			}
+			return;
+		}
+		for (SaveListener listener : request.listeners) {
+			listener.saveCompleted(saveFilePath);
+		}
+	}
+
+	/**
+	 * Writes the passed contents to a temporary file, forces it to disk, then
+	 * renames it over the passed file.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error occurs.
+	 */
+	static void writeAtomically(File file, SaveContent content)
+			throws LogicException {
+		File temp = null;
+		try {
+			File folder = file.getAbsoluteFile().getParentFile();
+			temp = File.createTempFile(file.getName(), ".tmp", folder);
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				content.write(out);
+				out.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+
+			// replace the file in one step where the file system allows it
+			replace(temp, file);
+		} catch (IOException error) {
+			throw new LogicException("Couldn't save file - I/O error: " + error);
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Applies the passed patches to the passed file in order, then forces the
+	 * changes to disk.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error occurs.
+	 */
+	private static void applyPatches(File file, List<SavePatch> patches)
+			throws LogicException {
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				for (SavePatch patch : patches) {
+					patch.write(channel);
+				}
+				channel.force(false);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException error) {
+			throw new LogicException("Couldn't save file - I/O error: " + error);
+		}
+	}
+
+	/**
+	 * Renames the passed temporary file over the passed file, in one step
+	 * where the file system allows it.
+	 */
+	private static void replace(File temp, File file) throws IOException {
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException error) {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -1,11 +1,26 @@
 package uk.co.lamsey.score5al.control;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple thread-safe generic Observable class, with the ability to pass the
- * updated object to interested observers.
+ * updated object to interested observers. Observers may subscribe to all
+ * changes or only to particular types of change.
+ * 
+ * The list of observers is copied on write, so notifications iterate over a
+ * snapshot without holding a lock. Observers may therefore be added or removed
+ * during a notification (taking effect from the next one), and a slow observer
+ * on one thread doesn't block notifications from another.
+ * 
+ * Notifications can also be batched: between beginBatch() and endBatch(),
+ * notifications made on the batching thread are held back, and each updated
+ * object is then passed on once with all of its types of change combined.
  * 
  * @see "http://en.wikipedia.org/wiki/Observer_pattern"
  */
@@ -13,42 +28,239 @@ public abstract class Observable<T> {
 
 	/**
 	 * The list of observers which should be notified of updates to this
-	 * Observable object.
+	 * Observable object, along with the types of change they are interested
+	 * in.
+	 */
+	private List<Subscription<T>> observers;
+
+	/**
+	 * The thread on which the current batch of notifications is being held
+	 * back (null if not batching).
+	 */
+	private volatile Thread batchThread;
+
+	/**
+	 * The number of nested batches which haven't yet ended. Only used by the
+	 * batching thread.
+	 */
+	private int batchDepth;
+
+	/**
+	 * The objects updated during the current batch, in the order in which
+	 * they were first updated. Only used by the batching thread.
+	 */
+	private List<T> batchObjects;
+
+	/**
+	 * The types of change made to each object in the current batch (null if
+	 * the type of change wasn't specified). Only used by the batching thread.
 	 */
-	private List<Observer<T>> observers;
+	private List<Set<ChangeType>> batchTypes;
 
 	/**
 	 * Initialises the list of observers for this object (initially empty).
 	 */
 	protected Observable() {
-		observers = new ArrayList<Observer<T>>();
+		observers = new CopyOnWriteArrayList<Subscription<T>>();
+		batchThread = null;
+		batchDepth = 0;
+		batchObjects = new ArrayList<T>();
+		batchTypes = new ArrayList<Set<ChangeType>>();
 	}
 
 	/**
-	 * Adds the specified observer to the list of observers of this object.
+	 * Adds the specified observer to the list of observers of this object. The
+	 * observer will be notified of all types of change.
 	 */
 	public void addObserver(Observer<T> observer) {
-		synchronized (observers) {
-			observers.add(observer);
-		}
+		addObserver(observer, EnumSet.allOf(ChangeType.class));
+	}
+
+	/**
+	 * Adds the specified observer to the list of observers of this object. The
+	 * observer will only be notified of the specified types of change (and of
+	 * any changes whose type isn't specified).
+	 */
+	public void addObserver(Observer<T> observer, ChangeType type,
+			ChangeType... moreTypes) {
+		addObserver(observer, EnumSet.of(type, moreTypes));
+	}
+
+	/**
+	 * Adds the specified observer with the specified set of change types.
+	 */
+	private void addObserver(Observer<T> observer, Set<ChangeType> types) {
+		observers.add(new Subscription<T>(observer, types));
 	}
 
 	/**
 	 * Removes the specified observer from the list of observers of this object.
 	 */
 	public void removeObserver(Observer<T> observer) {
-		synchronized (observers) {
-			observers.remove(observer);
+		for (Subscription<T> subscription : observers) {
+			if (subscription.observer == observer) {
+				observers.remove(subscription);
+				return;
+			}
 		}
 	}
 
 	/**
-	 * Notifies all observers that the passed object has been updated.
+	 * Notifies all observers that the passed object has been updated, without
+	 * specifying the type of change.
 	 */
 	protected void notifyObservers(T updatedObject) {
-		synchronized (observers) {
-			for (Observer<T> observer : observers) {
-				observer.update(updatedObject);
+		notifyObservers(updatedObject, null);
+	}
+
+	/**
+	 * Notifies all observers interested in the specified type of change that
+	 * the passed object has been updated. If the type is null, all observers
+	 * are notified.
+	 */
+	protected void notifyObservers(T updatedObject, ChangeType type) {
+		if (batchThread == Thread.currentThread()) {
+			holdBack(updatedObject, type);
+		} else {
+			dispatch(updatedObject,
+					type == null ? null : EnumSet.of(type));
+		}
+	}
+
+	/**
+	 * Notifies all observers interested in any of the specified types of
+	 * change that the passed object has been updated (each observer is only
+	 * notified once). If the set of types is null, all observers are notified.
+	 */
+	protected void dispatch(T updatedObject, Set<ChangeType> types) {
+		for (Subscription<T> subscription : observers) {
+			if (types == null
+					|| !Collections.disjoint(subscription.types, types)) {
+				long startTime = System.nanoTime();
+				subscription.observer.update(updatedObject);
+				subscription.recordDispatch(System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	/**
+	 * Starts holding back notifications made on the current thread until the
+	 * matching call to endBatch(). Batches may be nested, in which case the
+	 * notifications are passed on when the outermost batch ends.
+	 * 
+	 * @throws IllegalStateException
+	 *             If another thread is already batching notifications.
+	 */
+	protected void beginBatch() {
+		if (batchThread == null) {
+			batchThread = Thread.currentThread();
+		} else if (batchThread != Thread.currentThread()) {
+			throw new IllegalStateException("Notifications are already being "
+					+ "batched on another thread.");
+		}
+		batchDepth++;
+	}
+
+	/**
+	 * Ends a batch started by beginBatch(). If this is the outermost batch,
+	 * each object updated during the batch is passed on to observers once.
+	 */
+	protected void endBatch() {
+		if (batchThread != Thread.currentThread()) {
+			throw new IllegalStateException("No batch to end on this thread.");
+		}
+		if (--batchDepth > 0) {
+			return;
+		}
+		List<T> objects = batchObjects;
+		List<Set<ChangeType>> types = batchTypes;
+		batchObjects = new ArrayList<T>();
+		batchTypes = new ArrayList<Set<ChangeType>>();
+		batchThread = null;
+		for (int x = 0; x < objects.size(); x++) {
+			dispatch(objects.get(x), types.get(x));
+		}
+	}
+
+	/**
+	 * Holds back a notification until the end of the current batch, combining
+	 * it with any earlier notification for the same object.
+	 */
+	private void holdBack(T updatedObject, ChangeType type) {
+		int index = -1;
+		for (int x = 0; x < batchObjects.size(); x++) {
+			if (batchObjects.get(x) == updatedObject) {
+				index = x;
+				break;
+			}
+		}
+		if (index == -1) {
+			batchObjects.add(updatedObject);
+			batchTypes.add(type == null ? null : EnumSet.of(type));
+		} else if (type == null) {
+			batchTypes.set(index, null);
+		} else if (batchTypes.get(index) != null) {
+			batchTypes.get(index).add(type);
+		}
+	}
+
+	/**
+	 * Returns a summary of how long each observer has taken to process its
+	 * notifications (count, mean and maximum), for finding slow observers.
+	 */
+	public List<String> getDispatchStats() {
+		List<String> stats = new ArrayList<String>();
+		for (Subscription<T> subscription : observers) {
+			long count = subscription.dispatchCount.get();
+			long meanMicros = count == 0 ? 0
+					: subscription.totalNanos.get() / count / 1000;
+			stats.add(String.format("%s: %d updates, mean %dus, max %dus",
+					subscription.observer.getClass().getName(), count,
+					meanMicros, subscription.maxNanos.get() / 1000));
+		}
+		return stats;
+	}
+
+	/**
+	 * An observer along with the types of change it should be notified of.
+	 */
+	private static class Subscription<T> {
+
+		/** The observer to be notified. */
+		private final Observer<T> observer;
+
+		/** The types of change the observer is interested in. */
+		private final Set<ChangeType> types;
+
+		/** The number of notifications dispatched to the observer. */
+		private final AtomicLong dispatchCount;
+
+		/** The total time the observer has spent handling notifications. */
+		private final AtomicLong totalNanos;
+
+		/** The longest time the observer has spent handling a notification. */
+		private final AtomicLong maxNanos;
+
+		/**
+		 * Creates a new subscription for the passed observer and change types.
+		 */
+		private Subscription(Observer<T> observer, Set<ChangeType> types) {
+			this.observer = observer;
+			this.types = types;
+			dispatchCount = new AtomicLong();
+			totalNanos = new AtomicLong();
+			maxNanos = new AtomicLong();
+		}
+
+		/**
+		 * Records the time taken to dispatch one notification to the observer.
+		 */
+		private void recordDispatch(long nanos) {
+			dispatchCount.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
 			}
 		}
 	}
@@ -2,18 +2,24 @@ package uk.co.lamsey.score5al.control;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import uk.co.lamsey.score5al.model.Heat;
 import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.JamSnapshot;
+import uk.co.lamsey.score5al.model.JamStore;
 import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
 import uk.co.lamsey.score5al.model.Ranking;
 import uk.co.lamsey.score5al.model.Team;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
 
 /**
- * Handles ranking recalculations and updates.
+ * Handles ranking recalculations and updates. A full recalculation is only
+ * performed when the match changes; changes to a single jam are applied as a
+ * delta, by withdrawing the jam's previous result and applying its new one.
  */
 public class RankingControl extends Observable<List<Ranking>> {
 
@@ -22,6 +28,23 @@ public class RankingControl extends Observable<List<Ranking>> {
 	 */
 	private List<Ranking> rankings;
 
+	/**
+	 * The row of each team's ranking in the sorted list, kept up to date as
+	 * rankings are moved.
+	 */
+	private Map<Team, Integer> rows;
+
+	/**
+	 * The result which has most recently been applied to the rankings for each
+	 * completed jam in the match.
+	 */
+	private Map<Jam, JamResult> appliedResults;
+
+	/**
+	 * The match for which the rankings were last calculated in full.
+	 */
+	private Match rankedMatch;
+
 	/**
 	 * Initialises the ranking data and sets up listeners to process updates.
 	 */
@@ -34,46 +57,263 @@ public class RankingControl extends Observable<List<Ranking>> {
 
 		// register listeners for updates
 		matchControl.addObserver(matchObserver);
-		JamControl.getInstance().addObserver(new JamObserver());
+		JamControl.getInstance().addObserver(new JamObserver(),
+				ChangeType.SCORE_CHANGED, ChangeType.LEAD_JAMMER_CHANGED,
+				ChangeType.JAM_COMPLETED);
 	}
 
 	/**
-	 * Recalculates the rankings for the passed teams and notifies observers of
-	 * the change.
+	 * Recalculates the rankings for all teams in the passed match from scratch
+	 * and notifies observers of the change. Must be called on the writer
+	 * thread, where the jam store is consistent.
 	 */
-	private void recalculate(Set<Team> teamsToUpdate) {
+	private synchronized void recalculate(Match match) {
+		rankedMatch = match;
 
-		// reset scores for all teams
-		for (Team team : teamsToUpdate) {
+		// reinitialise the list of rankings, there may be more teams
+		List<Team> teams = match.getTeams();
+		rankings = new ArrayList<Ranking>();
+		for (Team team : teams) {
 			team.getRanking().reset();
+			rankings.add(team.getRanking());
+		}
+
+		// scan the jam store's columns and process the completed jams
+		Ranking[] teamRankings = rankings.toArray(new Ranking[rankings.size()]);
+		JamStore store = match.getJamStore();
+		appliedResults = new HashMap<Jam, JamResult>();
+		for (int row = 0; row < store.getSize(); row++) {
+			if (!store.isCompleted(row)) {
+				continue;
+			}
+			int team1 = store.getTeam1Index(row);
+			int team2 = store.getTeam2Index(row);
+			int leadJammer = store.getLeadJammerIndex(row);
+			int score1 = store.getScore1(row);
+			int score2 = store.getScore2(row);
+			if (team1 != JamStore.NO_TEAM) {
+				teamRankings[team1].processJamScore(score1, score2,
+						leadJammer == team1);
+			}
+			if (team2 != JamStore.NO_TEAM) {
+				teamRankings[team2].processJamScore(score2, score1,
+						leadJammer == team2);
+			}
+
+			// record the result so later changes can be applied as a delta
+			appliedResults.put(match.getJam(row), new JamResult(
+					getTeam(teams, team1), getTeam(teams, team2),
+					getTeam(teams, leadJammer), score1, score2));
 		}
 
-		// go through all relevant jams and reprocess scores
-		for (Heat heat : MatchControl.getInstance().getMatch().getHeats()) {
-			for (Jam jam : heat.getJams()) {
+		// sort the rankings and update team ranks
+		sortRankings();
+		updateRanks(rankings);
 
-				// only process this jam if it's been completed
-				if (jam.isCompleted()) {
+		// update listeners
+		notifyObservers(rankings);
+	}
 
-					// if team 1 is in the update list, process their score
-					Team team1 = jam.getTeam1();
-					if (teamsToUpdate.contains(team1)) {
-						team1.getRanking().processJamScore(jam.getScore1(),
-								jam.getScore2(), jam.getLeadJammer() == team1);
-					}
+	/**
+	 * Returns the team with the passed index in the passed list, or null for
+	 * JamStore.NO_TEAM.
+	 */
+	private static Team getTeam(List<Team> teams, int teamIndex) {
+		return teamIndex == JamStore.NO_TEAM ? null : teams.get(teamIndex);
+	}
 
-					// if team 2 is in the update list, process their score
-					Team team2 = jam.getTeam2();
-					if (teamsToUpdate.contains(team2)) {
-						team2.getRanking().processJamScore(jam.getScore2(),
-								jam.getScore1(), jam.getLeadJammer() == team2);
-					}
+	/**
+	 * Calculates and returns a sorted list of rankings for the teams in the
+	 * passed snapshot of a match (such as one being exported). New rankings
+	 * of the snapshot's copies of the teams are created, so the teams' own
+	 * rankings aren't changed and the result matches the snapshot exactly,
+	 * even for the current match.
+	 */
+	public static List<Ranking> calculateRankings(MatchSnapshot snapshot) {
+		List<Ranking> rankings = new ArrayList<Ranking>();
+		Ranking[] teamRankings = new Ranking[snapshot.getTotalTeams()];
+		for (TeamSnapshot team : snapshot.getTeams()) {
+			Ranking ranking = new Ranking(team);
+			rankings.add(ranking);
+			teamRankings[team.getIndex()] = ranking;
+		}
+		for (int heat = 0; heat < snapshot.getTotalHeats(); heat++) {
+			for (JamSnapshot jam : snapshot.getJams(heat)) {
+				if (!jam.isCompleted()) {
+					continue;
+				}
+				Ranking ranking1 = getRanking(teamRankings, jam.getTeam1());
+				Ranking ranking2 = getRanking(teamRankings, jam.getTeam2());
+				if (ranking1 != null) {
+					ranking1.processJamScore(jam.getScore1(), jam.getScore2(),
+							jam.getLeadJammer() == jam.getTeam1());
+				}
+				if (ranking2 != null) {
+					ranking2.processJamScore(jam.getScore2(), jam.getScore1(),
+							jam.getLeadJammer() == jam.getTeam2());
 				}
 			}
 		}
+		Collections.sort(rankings);
+		updateRanks(rankings);
+		return rankings;
+	}
 
-		// sort the rankings and update team ranks
+	/**
+	 * Returns the ranking for the passed copy of a team from the passed array
+	 * of rankings by team index, or null if the team is null.
+	 */
+	private static Ranking getRanking(Ranking[] teamRankings,
+			TeamSnapshot team) {
+		return team == null ? null : teamRankings[team.getIndex()];
+	}
+
+	/**
+	 * Updates the rankings to reflect the passed change to the match. Only the
+	 * changed jams are reapplied, unless the whole match may have changed.
+	 */
+	private synchronized void recalculate(Match match, MatchChange change) {
+		if (change == null || change.isMatchChanged() || match != rankedMatch) {
+			recalculate(match);
+			return;
+		}
+
+		// swap the results of the changed jams, then re-sort in case any
+		// teams' points adjustments were edited
+		for (Jam jam : change.getJams()) {
+			applyJam(jam);
+		}
+		sortRankings();
+		updateRanks(rankings);
+
+		// update listeners
+		notifyObservers(rankings);
+	}
+
+	/**
+	 * Updates the rankings to reflect the current state of the passed jam,
+	 * withdrawing any result previously applied for it, and notifies observers
+	 * if anything changed.
+	 */
+	private synchronized void recalculate(Jam jam) {
+		if (applyJam(jam)) {
+			updateRanks(rankings);
+
+			// update listeners
+			notifyObservers(rankings);
+		}
+	}
+
+	/**
+	 * Swaps any result previously applied for the passed jam for its current
+	 * result, moving the affected teams to their new positions.
+	 * 
+	 * @return Whether or not the jam's result had changed.
+	 */
+	private boolean applyJam(Jam jam) {
+
+		// find the jam's published state (ignoring jams no longer in the match)
+		Match match = MatchControl.getInstance().getMatch();
+		int heatIndex = match.getHeatIndex(jam);
+		if (heatIndex == -1) {
+			return false;
+		}
+		JamSnapshot jamSnapshot = MatchControl.getInstance().getSnapshot()
+				.getJam(heatIndex, match.getJamIndexInHeat(jam));
+
+		// check if the jam's result has actually changed
+		JamResult oldResult = appliedResults.get(jam);
+		JamResult newResult = JamResult.of(jamSnapshot, match.getTeams());
+		if (oldResult == null ? newResult == null : oldResult.equals(newResult)) {
+			return false;
+		}
+
+		// swap the old result for the new one
+		if (oldResult != null) {
+			oldResult.remove();
+			appliedResults.remove(jam);
+		}
+		if (newResult != null) {
+			newResult.apply();
+			appliedResults.put(jam, newResult);
+		}
+
+		// move the affected teams to their new positions, until none of them
+		// moves (a team can be held up by another which hasn't moved yet)
+		boolean moved;
+		do {
+			moved = false;
+			if (oldResult != null) {
+				moved |= reposition(oldResult.team1);
+				moved |= reposition(oldResult.team2);
+			}
+			if (newResult != null) {
+				moved |= reposition(newResult.team1);
+				moved |= reposition(newResult.team2);
+			}
+		} while (moved);
+		return true;
+	}
+
+	/**
+	 * Sorts the rankings and records the row of each team's ranking.
+	 */
+	private void sortRankings() {
 		Collections.sort(rankings);
+		rows = new IdentityHashMap<Team, Integer>(rankings.size());
+		for (int row = 0; row < rankings.size(); row++) {
+			rows.put(rankings.get(row).getTeam(), row);
+		}
+	}
+
+	/**
+	 * Moves the passed team's ranking up or down the sorted list until it is
+	 * back in order with its neighbours, updating the rows of the rankings it
+	 * passes. Tied rankings are never passed, so the ordering matches that of
+	 * a stable sort.
+	 * 
+	 * @return Whether or not the ranking moved.
+	 */
+	private boolean reposition(Team team) {
+		Integer currentRow = rows.get(team);
+		if (currentRow == null) {
+			return false;
+		}
+		int row = currentRow;
+		Ranking ranking = rankings.get(row);
+
+		// move up past any rankings which are now lower
+		while (row > 0 && ranking.compareTo(rankings.get(row - 1)) < 0) {
+			moveRanking(row - 1, row);
+			row--;
+		}
+
+		// move down past any rankings which are now higher
+		while (row < rankings.size() - 1
+				&& ranking.compareTo(rankings.get(row + 1)) > 0) {
+			moveRanking(row + 1, row);
+			row++;
+		}
+		rankings.set(row, ranking);
+		rows.put(team, row);
+		return row != currentRow;
+	}
+
+	/**
+	 * Moves the ranking in the first passed row of the sorted list to the
+	 * second, recording its new row.
+	 */
+	private void moveRanking(int fromRow, int toRow) {
+		Ranking moved = rankings.get(fromRow);
+		rankings.set(toRow, moved);
+		rows.put(moved.getTeam(), toRow);
+	}
+
+	/**
+	 * Updates each team's rank according to its position in the passed sorted
+	 * list.
+	 */
+	private static void updateRanks(List<Ranking> rankings) {
 		for (int row = 0; row < rankings.size(); row++) {
 			// rank is equal to position in list
 			int rank = row;
@@ -91,9 +331,6 @@ public class RankingControl extends Observable<List<Ranking>> {
 			}
 			rankings.get(row).setRank(realRank);
 		}
-
-		// update listeners
-		notifyObservers(rankings);
 	}
 
 	/**
@@ -122,17 +359,125 @@ public class RankingControl extends Observable<List<Ranking>> {
 		private static final RankingControl INSTANCE = new RankingControl();
 	}
 
+	/**
+	 * A record of the result of a completed jam, as applied to the rankings of
+	 * the teams involved.
+	 */
+	private static class JamResult {
+
+		/** The first team in the jam (may be null). */
+		private final Team team1;
+
+		/** The second team in the jam (may be null). */
+		private final Team team2;
+
+		/** The team with lead jammer status (may be null). */
+		private final Team leadJammer;
+
+		/** Team 1's score in the jam. */
+		private final int score1;
+
+		/** Team 2's score in the jam. */
+		private final int score2;
+
+		/**
+		 * Creates a record of the passed result.
+		 */
+		private JamResult(Team team1, Team team2, Team leadJammer, int score1,
+				int score2) {
+			this.team1 = team1;
+			this.team2 = team2;
+			this.leadJammer = leadJammer;
+			this.score1 = score1;
+			this.score2 = score2;
+		}
+
+		/**
+		 * Returns a record of the passed jam's result for the passed teams
+		 * (which the jam's copies of the teams refer to by index), or null if
+		 * the jam hadn't been completed (or is null).
+		 */
+		private static JamResult of(JamSnapshot jam, List<Team> teams) {
+			if (jam == null || !jam.isCompleted()) {
+				return null;
+			}
+			return new JamResult(getTeam(teams, jam.getTeam1()), getTeam(
+					teams, jam.getTeam2()), getTeam(teams,
+					jam.getLeadJammer()), jam.getScore1(), jam.getScore2());
+		}
+
+		/**
+		 * Returns the team in the passed list which the passed copy of a team
+		 * was made from, or null if the copy is null.
+		 */
+		private static Team getTeam(List<Team> teams, TeamSnapshot team) {
+			return team == null ? null : teams.get(team.getIndex());
+		}
+
+		/**
+		 * Adds this result to the rankings of the teams involved.
+		 */
+		private void apply() {
+			if (team1 != null) {
+				team1.getRanking().processJamScore(score1, score2,
+						leadJammer == team1);
+			}
+			if (team2 != null) {
+				team2.getRanking().processJamScore(score2, score1,
+						leadJammer == team2);
+			}
+		}
+
+		/**
+		 * Withdraws this result from the rankings of the teams involved.
+		 */
+		private void remove() {
+			if (team1 != null) {
+				team1.getRanking().removeJamScore(score1, score2,
+						leadJammer == team1);
+			}
+			if (team2 != null) {
+				team2.getRanking().removeJamScore(score2, score1,
+						leadJammer == team2);
+			}
+		}
+
+		/**
+		 * Returns true if the passed object records an identical result.
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof JamResult)) {
+				return false;
+			}
+			JamResult other = (JamResult) object;
+			return team1 == other.team1 && team2 == other.team2
+					&& leadJammer == other.leadJammer
+					&& score1 == other.score1 && score2 == other.score2;
+		}
+
+		/**
+		 * Returns a hash code consistent with equals.
+		 */
+		@Override
+		public int hashCode() {
+			return (score1 * 31) + score2;
+		}
+	}
+
 	/**
 	 * Listens for changes in the overall match and updates accordingly.
 	 */
 	private class MatchObserver implements Observer<Match> {
-		public void update(Match match) {
-			// reinitialise the list of rankings, there may be more teams
-			rankings = new ArrayList<Ranking>();
-			for (Team team : match.getTeams()) {
-				rankings.add(team.getRanking());
-			}
-			recalculate(new HashSet<Team>(match.getTeams()));
+		public void update(final Match match) {
+
+			// the jam store is only consistent on the writer thread
+			CommandQueue.getInstance().run(new Runnable() {
+				public void run() {
+					recalculate(match, MatchControl.getInstance()
+							.getLastChange());
+				}
+			});
 		}
 	}
 
@@ -142,16 +487,7 @@ public class RankingControl extends Observable<List<Ranking>> {
 	 */
 	private class JamObserver implements Observer<Jam> {
 		public void update(Jam jam) {
-			Set<Team> teams = new HashSet<Team>();
-			if (jam.getTeam1() != null) {
-				teams.add(jam.getTeam1());
-			}
-			if (jam.getTeam2() != null) {
-				teams.add(jam.getTeam2());
-			}
-			if (!teams.isEmpty()) {
-				recalculate(teams);
-			}
+			recalculate(jam);
 		}
 	}
 }
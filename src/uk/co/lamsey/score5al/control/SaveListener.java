@@ -0,0 +1,21 @@
+package uk.co.lamsey.score5al.control;
+
+/**
+ * Receives the outcome of a match save which is running in the background.
+ * Methods are called from the thread writing the file.
+ * 
+ * @see MatchControl#saveMatch(String, SaveListener)
+ */
+public interface SaveListener {
+
+	/**
+	 * Signals that the match has been saved to the specified file.
+	 */
+	public void saveCompleted(String saveFilePath);
+
+	/**
+	 * Signals that the match couldn't be saved to the specified file (which
+	 * has been left as it was).
+	 */
+	public void saveFailed(String saveFilePath, LogicException error);
+}
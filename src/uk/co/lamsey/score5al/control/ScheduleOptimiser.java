@@ -0,0 +1,459 @@
+package uk.co.lamsey.score5al.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import uk.co.lamsey.score5al.model.Heat;
+import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.Team;
+
+/**
+ * Improves an existing schedule using simulated annealing. Starting from the
+ * teams currently assigned to the match's jams, the optimiser repeatedly
+ * either swaps two jams or replaces one of the teams in a jam, keeping changes
+ * which improve the schedule and (with a probability which falls over time)
+ * some which don't, so that it can escape from local minima.
+ * 
+ * The schedule is scored on several terms, where lower is better:
+ * <ul>
+ * <li>the spread of the number of times each pair of teams plays each other,</li>
+ * <li>how far short each gap between a team's jams falls of a minimum rest,</li>
+ * <li>the number of back-to-back jams played by a team,</li>
+ * <li>how evenly the teams are spread across the heats, and</li>
+ * <li>how many more teams a heat has than the most in any heat originally.</li>
+ * </ul>
+ * 
+ * Completed jams are never changed. The optimiser works on its own copy of
+ * the schedule, so the match is unaffected until the result is applied.
+ * Observers are notified each time a better schedule is found.
+ */
+public class ScheduleOptimiser extends Observable<ScheduleOptimiser> {
+
+	/**
+	 * The weight of the spread of pairing counts.
+	 */
+	private static final double SPREAD_WEIGHT = 10;
+
+	/**
+	 * The weight of each jam of rest short of the minimum.
+	 */
+	private static final double REST_WEIGHT = 1;
+
+	/**
+	 * The weight of each back-to-back jam.
+	 */
+	private static final double BACK_TO_BACK_WEIGHT = 20;
+
+	/**
+	 * The weight of the spread of heat appearances.
+	 */
+	private static final double HEAT_WEIGHT = 5;
+
+	/**
+	 * The weight of each team a heat has over the limit.
+	 */
+	private static final double HEAT_LIMIT_WEIGHT = 100;
+
+	/**
+	 * The temperature at the start of the optimisation.
+	 */
+	private static final double START_TEMPERATURE = 20;
+
+	/**
+	 * The temperature at the end of the optimisation.
+	 */
+	private static final double END_TEMPERATURE = 0.01;
+
+	/**
+	 * The number of moves between checks of the time and cancellation.
+	 */
+	private static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * The teams in the match.
+	 */
+	private final List<Team> teams;
+
+	/**
+	 * The heat number of each jam.
+	 */
+	private final int[] jamHeats;
+
+	/**
+	 * Whether or not each jam has been completed (and so can't be changed).
+	 */
+	private final boolean[] frozen;
+
+	/**
+	 * The indexes of the jams which may be changed.
+	 */
+	private final int[] openJams;
+
+	/**
+	 * The number of heats in the match.
+	 */
+	private final int totalHeats;
+
+	/**
+	 * The most teams in any one heat of the original schedule.
+	 */
+	private final int heatLimit;
+
+	/**
+	 * The minimum number of jams each team should rest between jams.
+	 */
+	private final int minimumRest;
+
+	/**
+	 * The average number of times each pair of teams plays each other.
+	 */
+	private final double meanPairCount;
+
+	/**
+	 * The average number of heats in which each team plays.
+	 */
+	private double meanHeatCount;
+
+	/**
+	 * The team indexes for each jam in the schedule being optimised.
+	 */
+	private final int[][] schedule;
+
+	/**
+	 * The team indexes for each jam in the best schedule found so far.
+	 */
+	private final int[][] bestSchedule;
+
+	/**
+	 * The score of the original schedule.
+	 */
+	private final double initialScore;
+
+	/**
+	 * The score of the best schedule found so far.
+	 */
+	private volatile double bestScore;
+
+	/**
+	 * Whether or not the optimisation has been cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * The number of times each pair of teams plays (used when scoring).
+	 */
+	private final int[][] pairCount;
+
+	/**
+	 * The last jam played by each team (used when scoring).
+	 */
+	private final int[] lastJam;
+
+	/**
+	 * The number of heats in which each team plays (used when scoring).
+	 */
+	private final int[] heatCount;
+
+	/**
+	 * The last heat in which each team played (used when scoring).
+	 */
+	private final int[] lastHeat;
+
+	/**
+	 * The number of teams in each heat (used when scoring).
+	 */
+	private final int[] teamsInHeat;
+
+	/**
+	 * Creates a new optimiser for the schedule currently in the passed match.
+	 * 
+	 * @throws LogicException
+	 *             If any jam doesn't have two teams assigned.
+	 */
+	public ScheduleOptimiser(Match match) throws LogicException {
+		teams = new ArrayList<Team>(match.getTeams());
+		int totalTeams = teams.size();
+		int totalJams = match.getTotalJams();
+		List<Heat> heats = match.getHeats();
+		totalHeats = heats.size();
+
+		// take a copy of the schedule
+		jamHeats = new int[totalJams];
+		frozen = new boolean[totalJams];
+		schedule = new int[totalJams][2];
+		int jamNo = 0;
+		int openCount = 0;
+		for (int heat = 0; heat < totalHeats; heat++) {
+			for (Jam jam : heats.get(heat).getJams()) {
+				if (jam.getTeam1() == null || jam.getTeam2() == null) {
+					throw new LogicException("All jams must have two teams "
+							+ "assigned before the schedule can be optimised.");
+				}
+				jamHeats[jamNo] = heat;
+				frozen[jamNo] = jam.isCompleted();
+				schedule[jamNo][0] = match.getTeamIndex(jam.getTeam1());
+				schedule[jamNo][1] = match.getTeamIndex(jam.getTeam2());
+				if (!frozen[jamNo]) {
+					openCount++;
+				}
+				jamNo++;
+			}
+		}
+		openJams = new int[openCount];
+		openCount = 0;
+		for (jamNo = 0; jamNo < totalJams; jamNo++) {
+			if (!frozen[jamNo]) {
+				openJams[openCount++] = jamNo;
+			}
+		}
+
+		// set up the working arrays
+		pairCount = new int[totalTeams][totalTeams];
+		lastJam = new int[totalTeams];
+		heatCount = new int[totalTeams];
+		lastHeat = new int[totalTeams];
+		teamsInHeat = new int[totalHeats];
+
+		// work out the targets from the original schedule
+		minimumRest = Math.max(1, totalTeams / 2 - 1);
+		meanPairCount = (double) totalJams
+				/ (totalTeams * (totalTeams - 1) / 2);
+		heatLimit = countHeatTeams();
+		initialScore = score();
+		bestScore = initialScore;
+		bestSchedule = new int[totalJams][2];
+		copy(schedule, bestSchedule);
+	}
+
+	/**
+	 * Optimises the schedule until the time limit is reached or the
+	 * optimisation is cancelled.
+	 * 
+	 * @param timeLimitMillis
+	 *            The maximum time to run for.
+	 * @return The teams for each jam in the best schedule found, in match
+	 *         order (element 0 is team 1, element 1 is team 2).
+	 */
+	public Team[][] optimise(long timeLimitMillis) {
+		Random random = new Random();
+		long startTime = System.nanoTime();
+		long timeLimit = timeLimitMillis * 1000000;
+		double temperature = START_TEMPERATURE;
+		double currentScore = score();
+		int totalTeams = teams.size();
+
+		// nothing to do if there aren't enough jams or teams to change
+		if (openJams.length < 2 || totalTeams < 3) {
+			return toTeams(bestSchedule);
+		}
+
+		for (long move = 0; !cancelled; move++) {
+
+			// periodically check the time and cool down
+			if (move % CHECK_INTERVAL == 0) {
+				double progress = (double) (System.nanoTime() - startTime)
+						/ timeLimit;
+				if (progress >= 1) {
+					break;
+				}
+				temperature = START_TEMPERATURE
+						* Math.pow(END_TEMPERATURE / START_TEMPERATURE,
+								progress);
+			}
+
+			// make a random change, remembering how to undo it
+			int jam1 = openJams[random.nextInt(openJams.length)];
+			int jam2 = -1;
+			int side = 0;
+			int oldTeam = 0;
+			if (random.nextBoolean()) {
+				jam2 = openJams[random.nextInt(openJams.length)];
+				if (jam1 == jam2) {
+					continue;
+				}
+				swap(jam1, jam2);
+			} else {
+				side = random.nextInt(2);
+				oldTeam = schedule[jam1][side];
+				int newTeam = random.nextInt(totalTeams);
+				if (newTeam == schedule[jam1][0]
+						|| newTeam == schedule[jam1][1]) {
+					continue;
+				}
+				schedule[jam1][side] = newTeam;
+			}
+
+			// keep the change if it's better, or sometimes if it's worse
+			double newScore = score();
+			double delta = newScore - currentScore;
+			if (delta <= 0
+					|| random.nextDouble() < Math.exp(-delta / temperature)) {
+				currentScore = newScore;
+				if (currentScore < bestScore) {
+					copy(schedule, bestSchedule);
+					bestScore = currentScore;
+					notifyObservers(this);
+				}
+			} else if (jam2 != -1) {
+				swap(jam1, jam2);
+			} else {
+				schedule[jam1][side] = oldTeam;
+			}
+		}
+		return toTeams(bestSchedule);
+	}
+
+	/**
+	 * Stops the optimisation as soon as possible.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns the score of the original schedule (lower is better).
+	 */
+	public double getInitialScore() {
+		return initialScore;
+	}
+
+	/**
+	 * Returns the score of the best schedule found so far (lower is better).
+	 */
+	public double getBestScore() {
+		return bestScore;
+	}
+
+	/**
+	 * Scores the current schedule (lower is better).
+	 */
+	private double score() {
+		int totalTeams = teams.size();
+		for (int team = 0; team < totalTeams; team++) {
+			Arrays.fill(pairCount[team], 0);
+		}
+		Arrays.fill(lastJam, -1);
+		Arrays.fill(heatCount, 0);
+		Arrays.fill(lastHeat, -1);
+		Arrays.fill(teamsInHeat, 0);
+
+		// count the pairings, rests and heat appearances
+		double rest = 0;
+		int backToBack = 0;
+		for (int jamNo = 0; jamNo < schedule.length; jamNo++) {
+			int heat = jamHeats[jamNo];
+			for (int side = 0; side < 2; side++) {
+				int team = schedule[jamNo][side];
+				if (lastJam[team] != -1) {
+					int gap = jamNo - lastJam[team] - 1;
+					if (gap == 0) {
+						backToBack++;
+					}
+					if (gap < minimumRest) {
+						rest += (minimumRest - gap) * (minimumRest - gap);
+					}
+				}
+				lastJam[team] = jamNo;
+				if (lastHeat[team] != heat) {
+					lastHeat[team] = heat;
+					heatCount[team]++;
+					teamsInHeat[heat]++;
+				}
+			}
+			pairCount[schedule[jamNo][0]][schedule[jamNo][1]]++;
+			pairCount[schedule[jamNo][1]][schedule[jamNo][0]]++;
+		}
+
+		// the spread of pairings
+		double spread = 0;
+		for (int team = 0; team < totalTeams; team++) {
+			for (int opponent = team + 1; opponent < totalTeams; opponent++) {
+				double difference = pairCount[team][opponent] - meanPairCount;
+				spread += difference * difference;
+			}
+		}
+
+		// the spread of heat appearances
+		double heatSpread = 0;
+		for (int team = 0; team < totalTeams; team++) {
+			double difference = heatCount[team] - meanHeatCount;
+			heatSpread += difference * difference;
+		}
+
+		// any heats over the limit
+		int overLimit = 0;
+		for (int heat = 0; heat < totalHeats; heat++) {
+			if (teamsInHeat[heat] > heatLimit) {
+				overLimit += teamsInHeat[heat] - heatLimit;
+			}
+		}
+
+		return SPREAD_WEIGHT * spread + REST_WEIGHT * rest
+				+ BACK_TO_BACK_WEIGHT * backToBack + HEAT_WEIGHT * heatSpread
+				+ HEAT_LIMIT_WEIGHT * overLimit;
+	}
+
+	/**
+	 * Counts the teams in each heat of the original schedule, setting the
+	 * average number of heats per team.
+	 * 
+	 * @return The most teams in any one heat.
+	 */
+	private int countHeatTeams() {
+		int[] heatStamp = new int[teams.size()];
+		int mostTeams = 0;
+		int totalAppearances = 0;
+		int jamNo = 0;
+		for (int heat = 0; heat < totalHeats; heat++) {
+			int count = 0;
+			while (jamNo < schedule.length && jamHeats[jamNo] == heat) {
+				for (int side = 0; side < 2; side++) {
+					int team = schedule[jamNo][side];
+					if (heatStamp[team] != heat + 1) {
+						heatStamp[team] = heat + 1;
+						count++;
+					}
+				}
+				jamNo++;
+			}
+			mostTeams = Math.max(mostTeams, count);
+			totalAppearances += count;
+		}
+		meanHeatCount = (double) totalAppearances / teams.size();
+		return mostTeams;
+	}
+
+	/**
+	 * Swaps the teams in the two passed jams.
+	 */
+	private void swap(int jam1, int jam2) {
+		int[] teams1 = schedule[jam1];
+		schedule[jam1] = schedule[jam2];
+		schedule[jam2] = teams1;
+	}
+
+	/**
+	 * Copies the team indexes from one schedule to another.
+	 */
+	private static void copy(int[][] from, int[][] to) {
+		for (int jamNo = 0; jamNo < from.length; jamNo++) {
+			to[jamNo][0] = from[jamNo][0];
+			to[jamNo][1] = from[jamNo][1];
+		}
+	}
+
+	/**
+	 * Converts the passed schedule from team indexes to teams.
+	 */
+	private Team[][] toTeams(int[][] indexes) {
+		Team[][] teamSchedule = new Team[indexes.length][];
+		for (int jamNo = 0; jamNo < indexes.length; jamNo++) {
+			teamSchedule[jamNo] = new Team[] { teams.get(indexes[jamNo][0]),
+					teams.get(indexes[jamNo][1]) };
+		}
+		return teamSchedule;
+	}
+}
@@ -0,0 +1,921 @@
+package uk.co.lamsey.score5al.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.co.lamsey.score5al.model.Heat;
+import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.Team;
+
+/**
+ * Searches for a distribution of teams to jams in which every team plays every
+ * other team as evenly as possible. Each attempt builds a schedule at random,
+ * guided by how often and how recently each team has played; attempts are
+ * repeated until one is perfect (the most and least frequent pairings differ by
+ * no more than one).
+ * 
+ * The search is spread across all available processors, each with its own
+ * random number generator, and the first perfect schedule found cancels the
+ * rest of the search.
+ * 
+ * For many combinations of teams and heats a perfect schedule can instead be
+ * constructed directly (see construct()), which should be tried first.
+ * 
+ * A search can also replan the rest of a match which is under way, keeping
+ * the jams which have already been played and leaving out teams which have
+ * withdrawn. A perfect distribution usually isn't possible then, so the most
+ * even schedule found in time is used instead (see searchBest()).
+ */
+public class ScheduleSearch {
+
+	/**
+	 * The match being searched, so that a result can be checked against it
+	 * before being applied.
+	 */
+	private final Match match;
+
+	/**
+	 * The teams to be assigned to jams.
+	 */
+	private final List<Team> teams;
+
+	/**
+	 * The number of jams in each heat.
+	 */
+	private final int[] heatSizes;
+
+	/**
+	 * The number of teams to be assigned to each heat.
+	 */
+	private final int teamsPerHeat;
+
+	/**
+	 * Whether or not each team is still taking part in the match.
+	 */
+	private final boolean[] active;
+
+	/**
+	 * The first heat to be scheduled (earlier heats are kept).
+	 */
+	private final int firstHeat;
+
+	/**
+	 * The team indexes for each of the jams which are kept, before the first
+	 * heat to be scheduled.
+	 */
+	private final int[][] keptSchedule;
+
+	/**
+	 * The number of times each team has played each other team in the kept
+	 * jams.
+	 */
+	private final int[][] keptVsCount;
+
+	/**
+	 * The number of jams each team has played in the kept jams.
+	 */
+	private final int[] keptJamCount;
+
+	/**
+	 * The number of the last kept jam each team played (-1 if none).
+	 */
+	private final int[] keptLastJam;
+
+	/**
+	 * The total number of attempts made so far, across all workers.
+	 */
+	private final AtomicLong attempts;
+
+	/**
+	 * The most even schedule found so far, or null if no attempt has been
+	 * completed.
+	 */
+	private Team[][] bestSchedule;
+
+	/**
+	 * The difference between the most and least frequent pairings in the best
+	 * schedule found so far.
+	 */
+	private volatile int bestSpread;
+
+	/**
+	 * Creates a new search for the teams and heats in the passed match.
+	 */
+	public ScheduleSearch(Match match, int teamsPerHeat) {
+		this(match, teamsPerHeat, 0, new ArrayList<Team>());
+	}
+
+	/**
+	 * Creates a new search to replan the heats of the passed match which
+	 * haven't been played yet. Every heat up to the last one with a completed
+	 * jam is kept as it is, except that any jams in them which haven't been
+	 * played and involve a withdrawn team are given new teams from those still
+	 * taking part.
+	 * 
+	 * @param withdrawnTeams
+	 *            The teams which are no longer taking part in the match.
+	 */
+	public ScheduleSearch(Match match, int teamsPerHeat,
+			Collection<Team> withdrawnTeams) {
+		this(match, teamsPerHeat, getFirstUnplayedHeat(match), withdrawnTeams);
+	}
+
+	/**
+	 * Creates a new search which keeps the heats before the passed heat.
+	 */
+	private ScheduleSearch(Match match, int teamsPerHeat, int firstHeat,
+			Collection<Team> withdrawnTeams) {
+		this.match = match;
+		this.teams = new ArrayList<Team>(match.getTeams());
+		this.teamsPerHeat = teamsPerHeat;
+		this.firstHeat = firstHeat;
+		List<Heat> heats = match.getHeats();
+		heatSizes = new int[heats.size()];
+		for (int heat = 0; heat < heatSizes.length; heat++) {
+			heatSizes[heat] = heats.get(heat).getTotalJams();
+		}
+		int totalTeams = teams.size();
+		active = new boolean[totalTeams];
+		for (int team = 0; team < totalTeams; team++) {
+			active[team] = !withdrawnTeams.contains(teams.get(team));
+		}
+
+		// count the pairings in the kept jams
+		keptVsCount = new int[totalTeams][totalTeams];
+		keptJamCount = new int[totalTeams];
+		keptLastJam = new int[totalTeams];
+		Arrays.fill(keptLastJam, -1);
+		int keptJams = 0;
+		for (int heat = 0; heat < firstHeat; heat++) {
+			keptJams += heatSizes[heat];
+		}
+		keptSchedule = new int[keptJams][];
+		int jamNo = 0;
+		for (int heat = 0; heat < firstHeat; heat++) {
+			for (Jam jam : heats.get(heat).getJams()) {
+				int team1 = match.getTeamIndex(jam.getTeam1());
+				int team2 = match.getTeamIndex(jam.getTeam2());
+
+				// replace any withdrawn teams in jams which haven't been played
+				// (jams with no teams assigned are left as they are)
+				if (!jam.isCompleted()
+						&& (isWithdrawn(team1) || isWithdrawn(team2))) {
+					int[] pair = getReplacementPair(match, heats.get(heat));
+					team1 = pair[0];
+					team2 = pair[1];
+				}
+				keptSchedule[jamNo] = new int[] { team1, team2 };
+				if (team1 != -1 && team2 != -1) {
+					keptVsCount[team1][team2]++;
+					keptVsCount[team2][team1]++;
+				}
+				if (team1 != -1) {
+					keptJamCount[team1]++;
+					keptLastJam[team1] = jamNo;
+				}
+				if (team2 != -1) {
+					keptJamCount[team2]++;
+					keptLastJam[team2] = jamNo;
+				}
+				jamNo++;
+			}
+		}
+		attempts = new AtomicLong();
+		bestSpread = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns true if the passed match is the one searched and still has the
+	 * same teams and the same number of jams in each heat, so that a schedule
+	 * found by this search can still be applied to it. Must be called on the
+	 * writer thread.
+	 */
+	public boolean fits(Match current) {
+		if (current != match || !current.getTeams().equals(teams)
+				|| current.getTotalHeats() != heatSizes.length) {
+			return false;
+		}
+		List<Heat> heats = current.getHeats();
+		for (int heat = 0; heat < heatSizes.length; heat++) {
+			if (heats.get(heat).getTotalJams() != heatSizes[heat]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether or not the passed team index is that of a withdrawn team
+	 * (false for -1, meaning no team).
+	 */
+	private boolean isWithdrawn(int team) {
+		return team != -1 && !active[team];
+	}
+
+	/**
+	 * Returns the index of the first heat after the last one with a completed
+	 * jam.
+	 */
+	private static int getFirstUnplayedHeat(Match match) {
+		List<Heat> heats = match.getHeats();
+		for (int heat = heats.size() - 1; heat >= 0; heat--) {
+			for (Jam jam : heats.get(heat).getJams()) {
+				if (jam.isCompleted()) {
+					return heat + 1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Chooses a new pair of teams for an unplayed jam in a kept heat, from the
+	 * active teams already playing in the heat if there are enough of them, or
+	 * from all active teams if not. The pair which has played least is chosen,
+	 * breaking ties by how recently they played.
+	 */
+	private int[] getReplacementPair(Match match, Heat heat) {
+
+		// find the active teams in the heat
+		boolean[] candidates = new boolean[teams.size()];
+		int count = 0;
+		for (Jam jam : heat.getJams()) {
+			for (Team team : new Team[] { jam.getTeam1(), jam.getTeam2() }) {
+				int index = match.getTeamIndex(team);
+				if (index != -1 && active[index] && !candidates[index]) {
+					candidates[index] = true;
+					count++;
+				}
+			}
+		}
+		if (count < 2) {
+			candidates = active;
+		}
+
+		// choose the pair which has played least
+		int team1 = -1;
+		int team2 = -1;
+		for (int a = 0; a < candidates.length; a++) {
+			for (int b = a + 1; b < candidates.length; b++) {
+				if (!candidates[a] || !candidates[b]) {
+					continue;
+				}
+				if (team1 == -1
+						|| keptVsCount[a][b] < keptVsCount[team1][team2]
+						|| (keptVsCount[a][b] == keptVsCount[team1][team2] && Math
+								.max(keptLastJam[a], keptLastJam[b]) < Math
+								.max(keptLastJam[team1], keptLastJam[team2]))) {
+					team1 = a;
+					team2 = b;
+				}
+			}
+		}
+		return new int[] { team1, team2 };
+	}
+
+	/**
+	 * Searches for a perfect schedule using one worker per processor.
+	 * 
+	 * @param timeoutMillis
+	 *            The maximum time to search for.
+	 * @return The teams for each jam in the match, in match order (element 0
+	 *         is team 1, element 1 is team 2), or null if no perfect schedule
+	 *         was found in time.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	public Team[][] search(long timeoutMillis) throws InterruptedException {
+		int workers = Runtime.getRuntime().availableProcessors();
+		return search(timeoutMillis, workers);
+	}
+
+	/**
+	 * Searches for a perfect schedule using the passed number of workers (one
+	 * worker searches in the same way as a sequential loop).
+	 * 
+	 * @param timeoutMillis
+	 *            The maximum time to search for.
+	 * @param workers
+	 *            The number of workers to search with, each on its own thread.
+	 * @return The teams for each jam in the match, in match order, or null if
+	 *         no perfect schedule was found in time.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	public Team[][] search(long timeoutMillis, int workers)
+			throws InterruptedException {
+
+		// each worker has a differently-seeded RNG
+		long seed = System.nanoTime();
+		List<Callable<Team[][]>> tasks = new ArrayList<Callable<Team[][]>>();
+		for (int worker = 0; worker < workers; worker++) {
+			tasks.add(new Worker(new Random(seed + worker)));
+		}
+
+		// the first worker to succeed cancels the others (the threads are
+		// daemons, so a search never stops the program exiting)
+		ExecutorService executor = Executors.newFixedThreadPool(workers,
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "Schedule search");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			return executor.invokeAny(tasks, timeoutMillis,
+					TimeUnit.MILLISECONDS);
+		} catch (ExecutionException error) {
+			return null;
+		} catch (TimeoutException error) {
+			return null;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Searches for a perfect schedule in the same way as search(), but if none
+	 * is found in time returns the most even schedule found instead.
+	 * 
+	 * @param timeoutMillis
+	 *            The maximum time to search for.
+	 * @return The teams for each jam in the match, in match order, or null if
+	 *         no attempt could be completed in time.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	public Team[][] searchBest(long timeoutMillis) throws InterruptedException {
+		Team[][] schedule = search(timeoutMillis);
+		if (schedule != null) {
+			return schedule;
+		}
+		synchronized (this) {
+			return bestSchedule;
+		}
+	}
+
+	/**
+	 * Records the passed schedule as the best so far if it's more even than
+	 * the current best.
+	 */
+	private synchronized void offer(int[][] schedule, int spread) {
+		if (spread < bestSpread) {
+			bestSpread = spread;
+			bestSchedule = toTeams(schedule);
+		}
+	}
+
+	/**
+	 * Returns the total number of attempts made so far, across all workers.
+	 */
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	/**
+	 * Builds a perfect schedule directly, without searching. The teams are
+	 * paired off using the round-robin circle method, which works when every
+	 * team plays in every heat or when each heat has exactly two teams;
+	 * otherwise heats and jams are chosen greedily in a fixed order.
+	 * 
+	 * @return The teams for each jam in the match, in match order, or null if
+	 *         none of the constructions produce a perfect distribution for
+	 *         this match.
+	 */
+	public Team[][] construct() {
+
+		// only whole matches with every team taking part can be constructed
+		int totalTeams = teams.size();
+		if (firstHeat > 0) {
+			return null;
+		}
+		for (boolean isActive : active) {
+			if (!isActive) {
+				return null;
+			}
+		}
+		if (teamsPerHeat == totalTeams) {
+			int[][] schedule = constructRoundRobin();
+			if (getSpread(countPairs(schedule), active) <= 1) {
+				return toTeams(schedule);
+			}
+		} else if (teamsPerHeat == 2) {
+			int[][] schedule = constructPairedHeats();
+			if (getSpread(countPairs(schedule), active) <= 1) {
+				return toTeams(schedule);
+			}
+		}
+		for (boolean recentFirst : new boolean[] { true, false }) {
+			int[][] schedule = constructGreedy(recentFirst);
+			if (getSpread(countPairs(schedule), active) <= 1) {
+				return toTeams(schedule);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Plays every pairing in round-robin order, one per jam, repeating the
+	 * rounds for as many jams as there are. Used when every team plays in
+	 * every heat.
+	 */
+	private int[][] constructRoundRobin() {
+		int[][] pairs = getRoundRobinPairs(teams.size());
+		int[][] schedule = new int[getTotalJams()][];
+		for (int jamNo = 0; jamNo < schedule.length; jamNo++) {
+			schedule[jamNo] = pairs[jamNo % pairs.length];
+		}
+		return schedule;
+	}
+
+	/**
+	 * Gives each heat the next pairing in round-robin order, with every jam in
+	 * the heat played between that pair. Used when there are two teams per
+	 * heat.
+	 */
+	private int[][] constructPairedHeats() {
+		int[][] pairs = getRoundRobinPairs(teams.size());
+		int[][] schedule = new int[getTotalJams()][];
+		int jamNo = 0;
+		for (int heat = 0; heat < heatSizes.length; heat++) {
+			int[] pair = pairs[heat % pairs.length];
+			for (int jam = 0; jam < heatSizes[heat]; jam++) {
+				schedule[jamNo++] = pair;
+			}
+		}
+		return schedule;
+	}
+
+	/**
+	 * Builds a schedule one heat at a time, always choosing the teams and
+	 * pairings which have played least, and breaking ties by how recently and
+	 * how often the teams have played and then by team index.
+	 * 
+	 * @param recentFirst
+	 *            Whether ties between teams are broken by how recently they
+	 *            played before how often, or the other way round.
+	 */
+	private int[][] constructGreedy(boolean recentFirst) {
+		int totalTeams = teams.size();
+		int[][] vsCount = new int[totalTeams][totalTeams];
+		int[] jamCount = new int[totalTeams];
+		int[] lastJam = new int[totalTeams];
+		Arrays.fill(lastJam, -1);
+		boolean[] inHeat = new boolean[totalTeams];
+		int[] heatTeams = new int[teamsPerHeat];
+		int[][] schedule = new int[getTotalJams()][];
+		int jamNo = 0;
+		for (int heatSize : heatSizes) {
+
+			// add the teams which have played the heat's teams least
+			Arrays.fill(inHeat, false);
+			for (int heatTeamCount = 0; heatTeamCount < teamsPerHeat;
+					heatTeamCount++) {
+				int bestTeam = -1;
+				int bestPlayed = 0;
+				for (int team = 0; team < totalTeams; team++) {
+					if (inHeat[team]) {
+						continue;
+					}
+					int played = 0;
+					for (int i = 0; i < heatTeamCount; i++) {
+						played += vsCount[team][heatTeams[i]];
+					}
+					if (bestTeam == -1 || played < bestPlayed
+							|| (played == bestPlayed && compareRest(team,
+									bestTeam, jamCount, lastJam,
+									recentFirst) < 0)) {
+						bestTeam = team;
+						bestPlayed = played;
+					}
+				}
+				heatTeams[heatTeamCount] = bestTeam;
+				inHeat[bestTeam] = true;
+			}
+
+			// play the pairings within the heat which have played least
+			for (int jam = 0; jam < heatSize; jam++) {
+				int team1 = -1;
+				int team2 = -1;
+				for (int i = 0; i < teamsPerHeat; i++) {
+					for (int j = i + 1; j < teamsPerHeat; j++) {
+						int a = heatTeams[i];
+						int b = heatTeams[j];
+						if (team1 == -1
+								|| vsCount[a][b] < vsCount[team1][team2]
+								|| (vsCount[a][b] == vsCount[team1][team2] && Math
+										.max(lastJam[a], lastJam[b]) < Math
+										.max(lastJam[team1], lastJam[team2]))) {
+							team1 = a;
+							team2 = b;
+						}
+					}
+				}
+				schedule[jamNo] = new int[] { team1, team2 };
+				vsCount[team1][team2]++;
+				vsCount[team2][team1]++;
+				jamCount[team1]++;
+				jamCount[team2]++;
+				lastJam[team1] = jamNo;
+				lastJam[team2] = jamNo;
+				jamNo++;
+			}
+		}
+		return schedule;
+	}
+
+	/**
+	 * Compares how rested the two passed teams are: a negative result means
+	 * the first team should be preferred.
+	 */
+	private static int compareRest(int team1, int team2, int[] jamCount,
+			int[] lastJam, boolean recentFirst) {
+		int byRecent = lastJam[team1] - lastJam[team2];
+		int byCount = jamCount[team1] - jamCount[team2];
+		if (recentFirst) {
+			return byRecent != 0 ? byRecent : byCount;
+		}
+		return byCount != 0 ? byCount : byRecent;
+	}
+
+	/**
+	 * Returns every pairing of the passed number of teams, ordered into rounds
+	 * using the circle method: one team is fixed and the others rotate around
+	 * it, so that no team plays twice within a round. With an odd number of
+	 * teams, one team sits out each round.
+	 */
+	private static int[][] getRoundRobinPairs(int totalTeams) {
+
+		// with an odd number of teams, add a dummy team to sit out against
+		int size = totalTeams % 2 == 0 ? totalTeams : totalTeams + 1;
+		int rotating = size - 1;
+		int[][] pairs = new int[totalTeams * (totalTeams - 1) / 2][];
+		int pairNo = 0;
+		for (int round = 0; round < rotating; round++) {
+
+			// the fixed team plays the team at the head of the circle
+			if (size - 1 < totalTeams) {
+				pairs[pairNo++] = new int[] { round, size - 1 };
+			}
+
+			// the other teams pair off across the circle
+			for (int offset = 1; offset < size / 2; offset++) {
+				int team1 = (round + offset) % rotating;
+				int team2 = (round - offset + rotating) % rotating;
+				pairs[pairNo++] = new int[] { team1, team2 };
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Counts the number of times each team plays each other team in the
+	 * passed schedule.
+	 */
+	private int[][] countPairs(int[][] schedule) {
+		int totalTeams = teams.size();
+		int[][] vsCount = new int[totalTeams][totalTeams];
+		for (int[] jam : schedule) {
+			vsCount[jam[0]][jam[1]]++;
+			vsCount[jam[1]][jam[0]]++;
+		}
+		return vsCount;
+	}
+
+	/**
+	 * Returns the difference between the most and least frequent pairings of
+	 * the active teams in the passed pairing counts. A difference of no more
+	 * than one is as even as possible.
+	 */
+	private static int getSpread(int[][] vsCount, boolean[] active) {
+		int highCount = 0;
+		int lowCount = Integer.MAX_VALUE;
+		for (int team = 0; team < vsCount.length; team++) {
+			for (int opponent = 0; opponent < vsCount.length; opponent++) {
+				if (opponent != team && active[team] && active[opponent]) {
+					int count = vsCount[team][opponent];
+					if (count > highCount) {
+						highCount = count;
+					}
+					if (count < lowCount) {
+						lowCount = count;
+					}
+				}
+			}
+		}
+		return highCount - lowCount;
+	}
+
+	/**
+	 * Converts the passed schedule from team indexes to teams.
+	 */
+	private Team[][] toTeams(int[][] schedule) {
+		Team[][] teamSchedule = new Team[schedule.length][];
+		for (int jamNo = 0; jamNo < schedule.length; jamNo++) {
+			teamSchedule[jamNo] = new Team[] { getTeam(schedule[jamNo][0]),
+					getTeam(schedule[jamNo][1]) };
+		}
+		return teamSchedule;
+	}
+
+	/**
+	 * Returns the team with the passed index, or null if the index is -1.
+	 */
+	private Team getTeam(int team) {
+		return team == -1 ? null : teams.get(team);
+	}
+
+	/**
+	 * Returns the total number of jams in the match.
+	 */
+	private int getTotalJams() {
+		int totalJams = 0;
+		for (int heatSize : heatSizes) {
+			totalJams += heatSize;
+		}
+		return totalJams;
+	}
+
+	/**
+	 * Removes all but the candidates with the lowest value from the start of
+	 * the passed array.
+	 * 
+	 * @param candidates
+	 *            The indexes of the candidate teams, which are rearranged so
+	 *            that those with the lowest value come first.
+	 * @param count
+	 *            The number of candidates at the start of the array.
+	 * @param values
+	 *            The value for each team, by team index.
+	 * @return The number of candidates with the lowest value.
+	 */
+	private static int keepLowest(int[] candidates, int count, int[] values) {
+
+		// find the lowest value among the candidates
+		int lowestValue = Integer.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			int value = values[candidates[i]];
+			if (value < lowestValue) {
+				lowestValue = value;
+			}
+		}
+
+		// move the candidates with the lowest value to the front
+		int lowestCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (values[candidates[i]] == lowestValue) {
+				candidates[lowestCount++] = candidates[i];
+			}
+		}
+		return lowestCount;
+	}
+
+	/**
+	 * Repeatedly attempts to build a perfect schedule until one is found or
+	 * the worker is cancelled. All of the working data is allocated once, up
+	 * front, and reused by each attempt; teams are referred to by their index
+	 * in the match's list of teams.
+	 */
+	private class Worker implements Callable<Team[][]> {
+
+		/**
+		 * This worker's random number generator.
+		 */
+		private final Random random;
+
+		/**
+		 * The number of times each team has played each other team.
+		 */
+		private final int[][] vsCount;
+
+		/**
+		 * The number of jams each team has played.
+		 */
+		private final int[] jamCount;
+
+		/**
+		 * The number of the last jam each team played (-1 if none).
+		 */
+		private final int[] lastJam;
+
+		/**
+		 * The number of times each team has played the teams in the current
+		 * heat.
+		 */
+		private final int[] heatVsCount;
+
+		/**
+		 * Whether or not each team is in the current heat.
+		 */
+		private final boolean[] inHeat;
+
+		/**
+		 * The teams in the current heat.
+		 */
+		private final int[] heatTeams;
+
+		/**
+		 * The teams still being considered for the next selection.
+		 */
+		private final int[] candidates;
+
+		/**
+		 * The indexes of the teams in each jam, in match order.
+		 */
+		private final int[][] schedule;
+
+		/**
+		 * Creates a new worker using the passed random number generator.
+		 */
+		public Worker(Random random) {
+			this.random = random;
+			int totalTeams = teams.size();
+			vsCount = new int[totalTeams][totalTeams];
+			jamCount = new int[totalTeams];
+			lastJam = new int[totalTeams];
+			heatVsCount = new int[totalTeams];
+			inHeat = new boolean[totalTeams];
+			heatTeams = new int[teamsPerHeat];
+			candidates = new int[totalTeams];
+			schedule = new int[getTotalJams()][];
+			for (int jamNo = 0; jamNo < schedule.length; jamNo++) {
+				schedule[jamNo] = jamNo < keptSchedule.length ? keptSchedule[jamNo]
+						: new int[2];
+			}
+		}
+
+		@Override
+		public Team[][] call() throws InterruptedException {
+			while (!Thread.currentThread().isInterrupted()) {
+				int spread = attempt();
+				attempts.incrementAndGet();
+				if (spread <= 1) {
+					return toTeams(schedule);
+				} else if (spread < bestSpread) {
+					offer(schedule, spread);
+				}
+			}
+			throw new InterruptedException();
+		}
+
+		/**
+		 * Makes one attempt at building a schedule.
+		 * 
+		 * @return The difference between the most and least frequent pairings
+		 *         of active teams (a perfect distribution has no more than
+		 *         one).
+		 */
+		private int attempt() {
+
+			// reset the counters to those of the kept jams
+			int totalTeams = teams.size();
+			for (int team = 0; team < totalTeams; team++) {
+				System.arraycopy(keptVsCount[team], 0, vsCount[team], 0,
+						totalTeams);
+			}
+			System.arraycopy(keptJamCount, 0, jamCount, 0, totalTeams);
+			System.arraycopy(keptLastJam, 0, lastJam, 0, totalTeams);
+
+			// iterate over each remaining heat and assign teams
+			int jamNo = keptSchedule.length;
+			for (int heat = firstHeat; heat < heatSizes.length; heat++) {
+				int heatSize = heatSizes[heat];
+
+				// find the active teams which have played least recently
+				int count = activeTeams();
+				count = keepLowest(candidates, count, lastJam);
+
+				// of those, find the teams who have played the least jams
+				count = keepLowest(candidates, count, jamCount);
+
+				// select the first team at random
+				Arrays.fill(inHeat, false);
+				int heatTeamCount = 0;
+				int team = candidates[random.nextInt(count)];
+				heatTeams[heatTeamCount++] = team;
+				inHeat[team] = true;
+
+				// add the remaining teams to the heat
+				while (heatTeamCount < teamsPerHeat) {
+
+					// count how often each other team has played the heat teams
+					count = 0;
+					for (team = 0; team < totalTeams; team++) {
+						if (active[team] && !inHeat[team]) {
+							candidates[count++] = team;
+							int playedHeatTeamsCount = 0;
+							for (int i = 0; i < heatTeamCount; i++) {
+								playedHeatTeamsCount += vsCount[team][heatTeams[i]];
+							}
+							heatVsCount[team] = playedHeatTeamsCount;
+						}
+					}
+
+					// find the teams which have played the heat teams least
+					count = keepLowest(candidates, count, heatVsCount);
+
+					// of those, find the teams which have played least recently
+					count = keepLowest(candidates, count, lastJam);
+
+					// of those, find the teams which have played the least jams
+					count = keepLowest(candidates, count, jamCount);
+
+					// add a random team to the heat
+					team = candidates[random.nextInt(count)];
+					heatTeams[heatTeamCount++] = team;
+					inHeat[team] = true;
+				}
+
+				// count how often the teams in the heat have played each other
+				for (int i = 0; i < heatTeamCount; i++) {
+					team = heatTeams[i];
+					heatVsCount[team] = 0;
+					for (int j = 0; j < heatTeamCount; j++) {
+						heatVsCount[team] += vsCount[team][heatTeams[j]];
+					}
+				}
+
+				// iterate over each jam in this heat and assign teams
+				for (int jam = 0; jam < heatSize; jam++) {
+
+					// find the teams which have played the others least
+					System.arraycopy(heatTeams, 0, candidates, 0, heatTeamCount);
+					count = keepLowest(candidates, heatTeamCount, heatVsCount);
+
+					// of those, find the teams which have played least recently
+					count = keepLowest(candidates, count, lastJam);
+
+					// of those, find the teams which have played the least jams
+					count = keepLowest(candidates, count, jamCount);
+
+					// take a random one from the list and use it as team 1
+					int team1 = candidates[random.nextInt(count)];
+
+					// now find team 2 from the other teams in the heat
+					count = 0;
+					for (int i = 0; i < heatTeamCount; i++) {
+						if (heatTeams[i] != team1) {
+							candidates[count++] = heatTeams[i];
+						}
+					}
+
+					// find the teams which team 1 has played the fewest times
+					count = keepLowest(candidates, count, vsCount[team1]);
+
+					// of those, find the teams which have played least recently
+					count = keepLowest(candidates, count, lastJam);
+
+					// of those, find the teams which have played the least jams
+					count = keepLowest(candidates, count, jamCount);
+
+					// take a random one from the list and use it as team 2
+					int team2 = candidates[random.nextInt(count)];
+
+					// record the jam and update the counters for both teams
+					schedule[jamNo][0] = team1;
+					schedule[jamNo][1] = team2;
+					vsCount[team1][team2]++;
+					vsCount[team2][team1]++;
+					jamCount[team1]++;
+					jamCount[team2]++;
+					lastJam[team1] = jamNo;
+					lastJam[team2] = jamNo;
+					heatVsCount[team1]++;
+					heatVsCount[team2]++;
+					jamNo++;
+				}
+			}
+
+			// check how close we are to a perfect distribution
+			return getSpread(vsCount, active);
+		}
+
+		/**
+		 * Fills the candidate array with every active team.
+		 * 
+		 * @return The number of candidates.
+		 */
+		private int activeTeams() {
+			int count = 0;
+			for (int team = 0; team < candidates.length; team++) {
+				if (active[team]) {
+					candidates[count++] = team;
+				}
+			}
+			return count;
+		}
+	}
+}
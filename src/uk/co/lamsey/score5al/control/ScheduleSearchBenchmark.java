@@ -0,0 +1,152 @@
+package uk.co.lamsey.score5al.control;
+
+import java.util.Arrays;
+
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.Team;
+
+/**
+ * Measures how long ScheduleSearch takes to find a perfect schedule with a
+ * single worker (as the old sequential loop did) and with one worker per
+ * processor, so the wall-clock speedup of the parallel search can be seen.
+ * 
+ * Run from the command line with the number of teams, heats, jams and teams
+ * per heat, and optionally the number of runs of each kind and the time limit
+ * for each run in seconds. With no arguments, a few match sizes of 15 or more
+ * teams are measured.
+ * 
+ * With -check as the first argument, the benchmark also checks that the
+ * parallel search is faster: it exits with status 1 if, over all the sizes
+ * measured, the total of the parallel medians isn't lower than the total of
+ * the single worker medians. The check is skipped (and passes) when only one
+ * processor is available, as there's no parallelism to measure.
+ */
+public class ScheduleSearchBenchmark {
+
+	/**
+	 * The match sizes measured by default: teams, heats, jams and teams per
+	 * heat. None of them can be constructed directly, so they all need a
+	 * search.
+	 */
+	private static final int[][] DEFAULT_SIZES = { { 15, 15, 105, 6 },
+			{ 16, 15, 120, 7 }, { 18, 17, 153, 8 } };
+
+	/**
+	 * The number of runs of each kind by default.
+	 */
+	private static final int DEFAULT_RUNS = 5;
+
+	/**
+	 * The time limit for each run by default (in seconds).
+	 */
+	private static final int DEFAULT_LIMIT = 60;
+
+	/**
+	 * The argument which turns on the speedup check.
+	 */
+	private static final String CHECK = "-check";
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            Optionally -check, then the number of teams, heats, jams and
+	 *            teams per heat, and optionally the number of runs and time
+	 *            limit in seconds.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		boolean check = args.length > 0 && args[0].equals(CHECK);
+		if (check) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		int[][] sizes = DEFAULT_SIZES;
+		int runs = DEFAULT_RUNS;
+		int limit = DEFAULT_LIMIT;
+		if (args.length >= 4) {
+			sizes = new int[][] { { Integer.parseInt(args[0]),
+					Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+					Integer.parseInt(args[3]) } };
+		}
+		if (args.length >= 5) {
+			runs = Integer.parseInt(args[4]);
+		}
+		if (args.length >= 6) {
+			limit = Integer.parseInt(args[5]);
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println("Processors: " + processors + ", runs: " + runs
+				+ ", limit: " + limit + "s");
+		if (check && processors < 2) {
+			System.out.println("Speedup check skipped: only one processor is "
+					+ "available.");
+			return;
+		}
+		long sequentialTotal = 0;
+		long parallelTotal = 0;
+		for (int[] size : sizes) {
+			Match match = new Match();
+			match.setNumTeams(size[0]);
+			match.setNumJams(size[2]);
+			match.setNumHeats(size[1]);
+			int teamsPerHeat = size[3];
+			if (new ScheduleSearch(match, teamsPerHeat).construct() != null) {
+				System.out.println(describe(size) + ": constructed directly, "
+						+ "no search needed");
+				continue;
+			}
+			long sequential = measure(match, teamsPerHeat, 1, runs, limit);
+			long parallel = measure(match, teamsPerHeat, processors, runs,
+					limit);
+			System.out.println(String.format(
+					"%s: 1 worker %d ms, %d workers %d ms, speedup %.2fx",
+					describe(size), sequential, processors, parallel,
+					(double) sequential / Math.max(parallel, 1)));
+			sequentialTotal += sequential;
+			parallelTotal += parallel;
+		}
+
+		// check that the parallel search was faster overall
+		if (check && sequentialTotal > 0) {
+			boolean passed = parallelTotal < sequentialTotal;
+			System.out.println(String.format(
+					"Speedup check %s: 1 worker %d ms, %d workers %d ms"
+							+ " in total", passed ? "passed" : "FAILED",
+					sequentialTotal, processors, parallelTotal));
+			if (!passed) {
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Searches the passed match the passed number of times with the passed
+	 * number of workers, and returns the median time taken to find a perfect
+	 * schedule (in milliseconds). Runs which time out count as the time limit.
+	 */
+	private static long measure(Match match, int teamsPerHeat, int workers,
+			int runs, int limit) throws InterruptedException {
+		long[] times = new long[runs];
+		for (int run = 0; run < runs; run++) {
+			ScheduleSearch search = new ScheduleSearch(match, teamsPerHeat);
+			long start = System.nanoTime();
+			Team[][] schedule = search.search(limit * 1000L, workers);
+			times[run] = (System.nanoTime() - start) / 1000000;
+			if (schedule == null) {
+				System.out.println("  (" + workers + " worker run " + (run + 1)
+						+ " timed out after " + search.getAttempts()
+						+ " attempts)");
+			}
+		}
+		Arrays.sort(times);
+		return times[runs / 2];
+	}
+
+	/**
+	 * Describes the passed match size.
+	 */
+	private static String describe(int[] size) {
+		return size[0] + " teams, " + size[1] + " heats, " + size[2]
+				+ " jams, " + size[3] + " per heat";
+	}
+}
@@ -0,0 +1,323 @@
+package uk.co.lamsey.score5al.control;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.lamsey.score5al.model.Match;
+import uk.co.lamsey.score5al.model.MatchSnapshot;
+import uk.co.lamsey.score5al.model.Ranking;
+import uk.co.lamsey.score5al.model.Season;
+import uk.co.lamsey.score5al.model.SeasonStanding;
+
+/**
+ * Imports a season's worth of saved matches at once, without the user
+ * interface. The files are read and ranked in parallel on a fixed number of
+ * threads, using the same parsing as opening a match, but the current match
+ * isn't affected. The results are merged into a Season in file order.
+ * 
+ * Can be run from the command line, with the folder of match files and
+ * (optionally) the number of threads as arguments, to print the season
+ * standings.
+ */
+public class SeasonImporter {
+
+	/**
+	 * The result of a season import.
+	 */
+	public static class ImportReport {
+
+		/**
+		 * The season built from the matches which were read.
+		 */
+		private final Season season;
+
+		/**
+		 * The non-fatal warnings for each file which had any, by file name.
+		 */
+		private final Map<String, List<String>> warnings;
+
+		/**
+		 * The error for each file which couldn't be read, by file name.
+		 */
+		private final Map<String, String> failures;
+
+		/**
+		 * The number of files imported (or attempted).
+		 */
+		private final int files;
+
+		/**
+		 * The time the import took, in milliseconds.
+		 */
+		private final long elapsedMillis;
+
+		/**
+		 * Creates a report of an import.
+		 */
+		private ImportReport(Season season, Map<String, List<String>> warnings,
+				Map<String, String> failures, int files, long elapsedMillis) {
+			this.season = season;
+			this.warnings = warnings;
+			this.failures = failures;
+			this.files = files;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/**
+		 * Returns the season built from the matches which were read.
+		 */
+		public Season getSeason() {
+			return season;
+		}
+
+		/**
+		 * Returns the non-fatal warnings for each file which had any, by file
+		 * name, in file order.
+		 */
+		public Map<String, List<String>> getWarnings() {
+			return warnings;
+		}
+
+		/**
+		 * Returns the error for each file which couldn't be read (and so isn't
+		 * in the season), by file name, in file order.
+		 */
+		public Map<String, String> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Returns the number of files imported (or attempted).
+		 */
+		public int getFiles() {
+			return files;
+		}
+
+		/**
+		 * Returns the time the import took, in milliseconds.
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Returns the number of files imported per second.
+		 */
+		public double getFilesPerSecond() {
+			return files * 1000.0 / Math.max(elapsedMillis, 1);
+		}
+	}
+
+	/**
+	 * The result of reading a single match file.
+	 */
+	private static class MatchResult {
+
+		/**
+		 * The final rankings of the match's teams.
+		 */
+		private final List<Ranking> rankings;
+
+		/**
+		 * Any non-fatal warnings from reading the file.
+		 */
+		private final List<String> warnings;
+
+		/**
+		 * Creates the result of reading a file.
+		 */
+		private MatchResult(List<Ranking> rankings, List<String> warnings) {
+			this.rankings = rankings;
+			this.warnings = warnings;
+		}
+	}
+
+	/**
+	 * The number of files to be read at once.
+	 */
+	private final int threads;
+
+	/**
+	 * Creates an importer which reads the passed number of files at once.
+	 */
+	public SeasonImporter(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Imports every saved match file (.s5l or .s5b) in the passed folder, in
+	 * order of file name.
+	 * 
+	 * @throws LogicException
+	 *             If the folder can't be read or the import is interrupted.
+	 */
+	public ImportReport importFolder(File folder) throws LogicException {
+		File[] files = folder.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				String name = file.getName().toLowerCase();
+				return file.isFile()
+						&& (name.endsWith(".s5l") || name
+								.endsWith(BinaryMatchFormat.EXTENSION));
+			}
+		});
+		if (files == null) {
+			throw new LogicException("Error: couldn't read folder: " + folder);
+		}
+		Arrays.sort(files);
+		return importFiles(Arrays.asList(files));
+	}
+
+	/**
+	 * Imports the passed saved match files, merging them into a season in the
+	 * order passed. Files which can't be read are reported and left out.
+	 * 
+	 * @throws LogicException
+	 *             If the import is interrupted.
+	 */
+	public ImportReport importFiles(List<File> files) throws LogicException {
+		long start = System.nanoTime();
+
+		// read and rank the files in parallel
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "Season importer "
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		List<Future<MatchResult>> results;
+		results = new ArrayList<Future<MatchResult>>();
+		for (final File file : files) {
+			results.add(pool.submit(new Callable<MatchResult>() {
+				public MatchResult call() throws LogicException {
+					return readFile(file);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		// merge the results in file order as they become available
+		Season season = new Season();
+		Map<String, List<String>> warnings;
+		warnings = new LinkedHashMap<String, List<String>>();
+		Map<String, String> failures = new LinkedHashMap<String, String>();
+		try {
+			for (int index = 0; index < files.size(); index++) {
+				String fileName = files.get(index).getName();
+				try {
+					MatchResult result = results.get(index).get();
+					season.addMatch(fileName, result.rankings);
+					if (!result.warnings.isEmpty()) {
+						warnings.put(fileName, result.warnings);
+					}
+				} catch (ExecutionException error) {
+					failures.put(fileName, error.getCause().getMessage());
+				}
+			}
+		} catch (InterruptedException error) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new LogicException("Error: the import was interrupted.");
+		}
+
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		return new ImportReport(season, warnings, failures, files.size(),
+				elapsedMillis);
+	}
+
+	/**
+	 * Reads and ranks the passed match file. Only the rankings are kept, so
+	 * the match itself can be discarded straight away.
+	 * 
+	 * @throws LogicException
+	 *             If an I/O error or fatal parsing error occurs.
+	 */
+	private static MatchResult readFile(File file) throws LogicException {
+		List<String> warnings = new ArrayList<String>();
+		Match match = MatchControl.readMatch(file.getPath(), warnings);
+		List<Ranking> rankings = RankingControl
+				.calculateRankings(new MatchSnapshot(match, 0));
+		return new MatchResult(rankings, warnings);
+	}
+
+	/**
+	 * Imports the saved matches in a folder and prints the season standings,
+	 * the import's throughput, and any warnings or failures.
+	 * 
+	 * @param args
+	 *            The folder to import, and optionally the number of threads
+	 *            to use (the number of processors by default).
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: SeasonImporter <folder> [threads]");
+			System.exit(2);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+
+		// import the folder
+		ImportReport report;
+		try {
+			report = new SeasonImporter(threads).importFolder(new File(
+					args[0]));
+		} catch (LogicException error) {
+			System.err.println(error.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		// standings
+		Season season = report.getSeason();
+		System.out.println("SEASON STANDINGS (" + season.getMatchNames().size()
+				+ " matches)");
+		System.out.println(String.format("%-4s %-30s %7s %5s %5s %5s %5s %7s",
+				"Pos", "Team", "Matches", "Best", "Wins", "Draws", "Lost",
+				"Score"));
+		List<SeasonStanding> standings = season.getStandings();
+		for (int row = 0; row < standings.size(); row++) {
+			SeasonStanding standing = standings.get(row);
+			System.out.println(String.format(
+					"%-4d %-30s %7d %5d %5d %5d %5d %7d", row + 1,
+					standing.getTeamName(), standing.getMatches(),
+					standing.getBestRank(), standing.getWins(),
+					standing.getDraws(), standing.getLosses(),
+					standing.getMatchScore()));
+		}
+
+		// throughput, warnings and failures
+		System.out.println();
+		System.out.println(String.format(
+				"Imported %d files in %d ms (%.1f files/s) on %d threads.",
+				report.getFiles(), report.getElapsedMillis(),
+				report.getFilesPerSecond(), threads));
+		for (Map.Entry<String, List<String>> entry : report.getWarnings()
+				.entrySet()) {
+			System.out.println("Warnings in " + entry.getKey() + ":");
+			for (String warning : entry.getValue()) {
+				System.out.println("  " + warning);
+			}
+		}
+		for (Map.Entry<String, String> entry : report.getFailures()
+				.entrySet()) {
+			System.out.println("Couldn't import " + entry.getKey() + ": "
+					+ entry.getValue());
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package uk.co.lamsey.score5al.model;
 
-
 /**
  * A container for statistics on the distribution of teams in a match.
  */
@@ -26,19 +25,20 @@ public class DistributionStats {
 			sb.append("---");
 		}
 
-		// one row per team showing number of completed jams in each heat
+		// one row per team showing number of completed jams in each heat,
+		// counted from the match's index of the team's jams
+		int totalHeats = match.getTotalHeats();
 		for (Team team : match.getTeams()) {
+			int[] heatJams = new int[totalHeats];
+			for (Jam jam : match.getJams(team)) {
+				heatJams[match.getHeatIndex(jam)]++;
+			}
 			sb.append(String.format("\nTeam %2d |", team.getNumber()));
 			int count = 0;
-			for (Heat heat : match.getHeats()) {
-				boolean inJam = false;
-				for (Jam jam : heat.getJams()) {
-					if (jam.getTeam1() == team || jam.getTeam2() == team) {
-						count++;
-						inJam = true;
-					}
-				}
-				sb.append(inJam ? String.format(" %2d", count) : "   ");
+			for (int heat = 0; heat < totalHeats; heat++) {
+				count += heatJams[heat];
+				sb.append(heatJams[heat] > 0 ? String.format(" %2d", count)
+						: "   ");
 			}
 		}
 		distributionGraph = sb.toString();
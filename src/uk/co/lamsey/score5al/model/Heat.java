@@ -1,6 +1,7 @@
 package uk.co.lamsey.score5al.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -22,10 +23,26 @@ public class Heat {
 	}
 
 	/**
-	 * Returns the ordered list of the jams in this heat.
+	 * Returns the ordered list of the jams in this heat. The list can't be
+	 * modified - jams are added and removed by the match, which keeps an index
+	 * of them.
 	 */
 	public List<Jam> getJams() {
-		return jams;
+		return Collections.unmodifiableList(jams);
+	}
+
+	/**
+	 * Adds a jam to the end of this heat.
+	 */
+	void addJam(Jam jam) {
+		jams.add(jam);
+	}
+
+	/**
+	 * Removes the last jam from this heat.
+	 */
+	void removeLastJam() {
+		jams.remove(jams.size() - 1);
 	}
 
 	/**
@@ -3,79 +3,58 @@ package uk.co.lamsey.score5al.model;
 /**
  * A jam is a two-minute game between two teams. Each team is awarded one or
  * more points during the jam, and one team may be awarded 'lead jammer' status.
+ * 
+ * A Jam is a view of one row of its match's JamStore, which holds the details
+ * of every jam in the match as columns of ints.
  */
 public class Jam {
 
 	/**
-	 * The first team in the jam.
+	 * The store which holds this jam's details.
 	 */
-	private Team team1;
+	JamStore store;
 
 	/**
-	 * The second team in the jam.
+	 * The row of the store which holds this jam's details.
 	 */
-	private Team team2;
+	int row;
 
 	/**
-	 * The team which got lead jammer status (null if neither team has lead
-	 * jammer status).
+	 * Creates a new view of the specified row of the passed store.
 	 */
-	private Team leadJammer;
-
-	/**
-	 * Team 1's score in this jam.
-	 */
-	private int score1;
-
-	/**
-	 * Team 2's score in this jam.
-	 */
-	private int score2;
-
-	/**
-	 * The time remaining for this jam in seconds.
-	 */
-	private int timeRemaining;
-
-	/**
-	 * Creates a new Jam with no teams set and the specified duration in
-	 * seconds.
-	 */
-	public Jam(int duration) {
-		team1 = null;
-		team2 = null;
-		leadJammer = null;
-		score1 = 0;
-		score2 = 0;
-		timeRemaining = duration;
+	Jam(JamStore store, int row) {
+		this.store = store;
+		this.row = row;
 	}
 
 	/**
 	 * Returns the first team in the jam.
 	 */
 	public Team getTeam1() {
-		return team1;
+		return store.getTeam(store.getTeam1Index(row));
 	}
 
 	/**
-	 * Updates the first team in the jam.
+	 * Updates the first team in the jam. Only called by Match.setTeams(),
+	 * which also updates the match's index of each team's jams.
 	 */
-	public void setTeam1(Team team1) {
-		this.team1 = team1;
+	void setTeam1(Team team1) {
+		store.setTeam1(row, team1);
 	}
 
 	/**
 	 * Returns the second team in the jam.
 	 */
 	public Team getTeam2() {
-		return team2;
+		return store.getTeam(store.getTeam2Index(row));
 	}
 
 	/**
-	 * Updates the second team in the jam.
+	 * Updates the second team in the jam. Only called by Match.setTeams(),
+	 * which also updates the match's index of each team's jams.
 	 */
-	public void setTeam2(Team team2) {
-		this.team2 = team2;
+	void setTeam2(Team team2) {
+		store.setTeam2(row, team2);
 	}
 
 	/**
@@ -83,7 +62,7 @@ public class Jam {
 	 * lead jammer status).
 	 */
 	public Team getLeadJammer() {
-		return leadJammer;
+		return store.getTeam(store.getLeadJammerIndex(row));
 	}
 
 	/**
@@ -91,55 +70,55 @@ public class Jam {
 	 * lead jammer status).
 	 */
 	public void setLeadJammer(Team leadJammer) {
-		this.leadJammer = leadJammer;
+		store.setLeadJammer(row, leadJammer);
 	}
 
 	/**
 	 * Returns Team 1's score in this jam.
 	 */
 	public int getScore1() {
-		return score1;
+		return store.getScore1(row);
 	}
 
 	/**
 	 * Updates Team 1's score in this jam.
 	 */
 	public void setScore1(int points) {
-		score1 = points;
+		store.setScore1(row, points);
 	}
 
 	/**
 	 * Returns Team 2's score in this jam.
 	 */
 	public int getScore2() {
-		return score2;
+		return store.getScore2(row);
 	}
 
 	/**
 	 * Updates Team 2's score in this jam.
 	 */
 	public void setScore2(int points) {
-		score2 = points;
+		store.setScore2(row, points);
 	}
 
 	/**
 	 * Returns the time remaining for this jam in seconds.
 	 */
 	public int getTimeRemaining() {
-		return timeRemaining;
+		return store.getTimeRemaining(row);
 	}
 
 	/**
 	 * Updates the time remaining for this jam in seconds.
 	 */
 	public void setTimeRemaining(int timeRemaining) {
-		this.timeRemaining = timeRemaining;
+		store.setTimeRemaining(row, timeRemaining);
 	}
 
 	/**
 	 * Returns whether or not this jam has been completed.
 	 */
 	public boolean isCompleted() {
-		return timeRemaining == 0;
+		return store.isCompleted(row);
 	}
 }
@@ -0,0 +1,134 @@
+package uk.co.lamsey.score5al.model;
+
+import java.util.List;
+
+/**
+ * An immutable copy of a jam's details at one moment, as published in a
+ * MatchSnapshot. Its teams are the snapshot's own copies of the teams.
+ */
+public final class JamSnapshot {
+
+	/**
+	 * The first team in the jam (may be null).
+	 */
+	private final TeamSnapshot team1;
+
+	/**
+	 * The second team in the jam (may be null).
+	 */
+	private final TeamSnapshot team2;
+
+	/**
+	 * The team which got lead jammer status (may be null).
+	 */
+	private final TeamSnapshot leadJammer;
+
+	/**
+	 * Team 1's score in the jam.
+	 */
+	private final int score1;
+
+	/**
+	 * Team 2's score in the jam.
+	 */
+	private final int score2;
+
+	/**
+	 * The time remaining for the jam in seconds.
+	 */
+	private final int timeRemaining;
+
+	/**
+	 * Creates a copy of the passed jam's current details, referring to the
+	 * passed copies of the match's teams.
+	 */
+	JamSnapshot(Jam jam, Match match, List<TeamSnapshot> teams) {
+		team1 = getTeam(teams, match.getTeamIndex(jam.getTeam1()));
+		team2 = getTeam(teams, match.getTeamIndex(jam.getTeam2()));
+		leadJammer = getTeam(teams, match.getTeamIndex(jam.getLeadJammer()));
+		score1 = jam.getScore1();
+		score2 = jam.getScore2();
+		timeRemaining = jam.getTimeRemaining();
+	}
+
+	/**
+	 * Returns the copy of the team with the passed index in the passed list, or
+	 * null if there isn't one.
+	 */
+	private static TeamSnapshot getTeam(List<TeamSnapshot> teams, int index) {
+		return index < 0 || index >= teams.size() ? null : teams.get(index);
+	}
+
+	/**
+	 * Returns the first team in the jam.
+	 */
+	public TeamSnapshot getTeam1() {
+		return team1;
+	}
+
+	/**
+	 * Returns the second team in the jam.
+	 */
+	public TeamSnapshot getTeam2() {
+		return team2;
+	}
+
+	/**
+	 * Returns the team which got lead jammer status (null if neither team has
+	 * lead jammer status).
+	 */
+	public TeamSnapshot getLeadJammer() {
+		return leadJammer;
+	}
+
+	/**
+	 * Returns Team 1's score in the jam.
+	 */
+	public int getScore1() {
+		return score1;
+	}
+
+	/**
+	 * Returns Team 2's score in the jam.
+	 */
+	public int getScore2() {
+		return score2;
+	}
+
+	/**
+	 * Returns the time remaining for the jam in seconds.
+	 */
+	public int getTimeRemaining() {
+		return timeRemaining;
+	}
+
+	/**
+	 * Returns whether or not the jam had been completed.
+	 */
+	public boolean isCompleted() {
+		return timeRemaining == 0;
+	}
+
+	/**
+	 * Returns true if the passed object holds identical details.
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof JamSnapshot)) {
+			return false;
+		}
+		JamSnapshot other = (JamSnapshot) object;
+		return team1 == other.team1 && team2 == other.team2
+				&& leadJammer == other.leadJammer && score1 == other.score1
+				&& score2 == other.score2
+				&& timeRemaining == other.timeRemaining;
+	}
+
+	/**
+	 * Returns a hash code consistent with equals.
+	 */
+	@Override
+	public int hashCode() {
+		return (((score1 * 31) + score2) * 31) + timeRemaining;
+	}
+}
@@ -0,0 +1,295 @@
+package uk.co.lamsey.score5al.model;
+
+import java.util.Arrays;
+
+/**
+ * Stores the details of every jam in a match as columns of ints, one row per
+ * jam in match order (so a jam's row is its match-wide jam index). Teams are
+ * stored as their index in the match's list of teams, or -1 for none.
+ * 
+ * Jam objects are lightweight views onto a row of the store, so the existing
+ * Jam API still works, but scans over many jams (rankings, stats, simulations)
+ * can read the columns directly without visiting each Jam object.
+ */
+public class JamStore {
+
+	/**
+	 * The value stored in a team column when no team is set.
+	 */
+	public static final int NO_TEAM = -1;
+
+	/**
+	 * The match whose teams are referenced by the team columns.
+	 */
+	private final Match match;
+
+	/**
+	 * The Jam object viewing each row.
+	 */
+	private Jam[] jams;
+
+	/**
+	 * The index of the first team in each jam.
+	 */
+	private int[] team1;
+
+	/**
+	 * The index of the second team in each jam.
+	 */
+	private int[] team2;
+
+	/**
+	 * The index of the team with lead jammer status in each jam.
+	 */
+	private int[] leadJammer;
+
+	/**
+	 * Team 1's score in each jam.
+	 */
+	private int[] score1;
+
+	/**
+	 * Team 2's score in each jam.
+	 */
+	private int[] score2;
+
+	/**
+	 * The time remaining for each jam in seconds.
+	 */
+	private int[] timeRemaining;
+
+	/**
+	 * The number of rows in use.
+	 */
+	private int size;
+
+	/**
+	 * Creates a new, empty store for jams in the passed match.
+	 */
+	JamStore(Match match, int capacity) {
+		this.match = match;
+		jams = new Jam[capacity];
+		team1 = new int[capacity];
+		team2 = new int[capacity];
+		leadJammer = new int[capacity];
+		score1 = new int[capacity];
+		score2 = new int[capacity];
+		timeRemaining = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Adds a row to the end of the store for a new jam with no teams set and
+	 * the specified duration in seconds, and returns a view of it. The jam
+	 * won't be in match order until the store is next reordered.
+	 */
+	Jam newJam(int duration) {
+		if (size == jams.length) {
+			int capacity = Math.max(16, size * 2);
+			jams = Arrays.copyOf(jams, capacity);
+			team1 = Arrays.copyOf(team1, capacity);
+			team2 = Arrays.copyOf(team2, capacity);
+			leadJammer = Arrays.copyOf(leadJammer, capacity);
+			score1 = Arrays.copyOf(score1, capacity);
+			score2 = Arrays.copyOf(score2, capacity);
+			timeRemaining = Arrays.copyOf(timeRemaining, capacity);
+		}
+		int row = size++;
+		team1[row] = NO_TEAM;
+		team2[row] = NO_TEAM;
+		leadJammer[row] = NO_TEAM;
+		score1[row] = 0;
+		score2[row] = 0;
+		timeRemaining[row] = duration;
+		jams[row] = new Jam(this, row);
+		return jams[row];
+	}
+
+	/**
+	 * Rearranges the rows to match the passed order of jams, which must all be
+	 * views of this store. Any jams which aren't in the new order are detached
+	 * from the store, keeping their details in a store of their own.
+	 */
+	void reorder(Jam[] order) {
+		int capacity = Math.max(16, order.length);
+		int[] newTeam1 = new int[capacity];
+		int[] newTeam2 = new int[capacity];
+		int[] newLeadJammer = new int[capacity];
+		int[] newScore1 = new int[capacity];
+		int[] newScore2 = new int[capacity];
+		int[] newTimeRemaining = new int[capacity];
+		boolean[] kept = new boolean[size];
+		for (int row = 0; row < order.length; row++) {
+			int oldRow = order[row].row;
+			kept[oldRow] = true;
+			newTeam1[row] = team1[oldRow];
+			newTeam2[row] = team2[oldRow];
+			newLeadJammer[row] = leadJammer[oldRow];
+			newScore1[row] = score1[oldRow];
+			newScore2[row] = score2[oldRow];
+			newTimeRemaining[row] = timeRemaining[oldRow];
+		}
+
+		// detach any removed jams before their rows are discarded
+		for (int oldRow = 0; oldRow < size; oldRow++) {
+			if (!kept[oldRow]) {
+				detach(jams[oldRow]);
+			}
+		}
+
+		// switch to the new columns and update each view's row
+		jams = Arrays.copyOf(order, capacity);
+		team1 = newTeam1;
+		team2 = newTeam2;
+		leadJammer = newLeadJammer;
+		score1 = newScore1;
+		score2 = newScore2;
+		timeRemaining = newTimeRemaining;
+		size = order.length;
+		for (int row = 0; row < size; row++) {
+			jams[row].row = row;
+		}
+	}
+
+	/**
+	 * Moves the passed jam's details into a new store of its own.
+	 */
+	private void detach(Jam jam) {
+		int row = jam.row;
+		JamStore store = new JamStore(match, 1);
+		store.jams[0] = jam;
+		store.team1[0] = team1[row];
+		store.team2[0] = team2[row];
+		store.leadJammer[0] = leadJammer[row];
+		store.score1[0] = score1[row];
+		store.score2[0] = score2[row];
+		store.timeRemaining[0] = timeRemaining[row];
+		store.size = 1;
+		jam.store = store;
+		jam.row = 0;
+	}
+
+	/**
+	 * Returns the number of rows (jams) in the store.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the passed jam is a view of this store.
+	 */
+	boolean contains(Jam jam) {
+		return jam != null && jam.store == this;
+	}
+
+	/**
+	 * Returns the index of the first team in the specified row, or NO_TEAM.
+	 */
+	public int getTeam1Index(int row) {
+		return team1[row];
+	}
+
+	/**
+	 * Returns the index of the second team in the specified row, or NO_TEAM.
+	 */
+	public int getTeam2Index(int row) {
+		return team2[row];
+	}
+
+	/**
+	 * Returns the index of the team with lead jammer status in the specified
+	 * row, or NO_TEAM.
+	 */
+	public int getLeadJammerIndex(int row) {
+		return leadJammer[row];
+	}
+
+	/**
+	 * Returns Team 1's score in the specified row.
+	 */
+	public int getScore1(int row) {
+		return score1[row];
+	}
+
+	/**
+	 * Returns Team 2's score in the specified row.
+	 */
+	public int getScore2(int row) {
+		return score2[row];
+	}
+
+	/**
+	 * Returns the time remaining in seconds for the specified row.
+	 */
+	public int getTimeRemaining(int row) {
+		return timeRemaining[row];
+	}
+
+	/**
+	 * Returns whether or not the jam in the specified row has been completed.
+	 */
+	public boolean isCompleted(int row) {
+		return timeRemaining[row] == 0;
+	}
+
+	/**
+	 * Returns the team with the passed index in the match, or null if the
+	 * index doesn't refer to a team.
+	 */
+	Team getTeam(int teamIndex) {
+		if (teamIndex < 0 || teamIndex >= match.getTotalTeams()) {
+			return null;
+		}
+		return match.getTeams().get(teamIndex);
+	}
+
+	/**
+	 * Returns the index of the passed team in the match, or NO_TEAM.
+	 */
+	int getTeamIndex(Team team) {
+		return team == null ? NO_TEAM : match.getTeamIndex(team);
+	}
+
+	/**
+	 * Updates the first team in the specified row.
+	 */
+	void setTeam1(int row, Team team) {
+		team1[row] = getTeamIndex(team);
+	}
+
+	/**
+	 * Updates the second team in the specified row.
+	 */
+	void setTeam2(int row, Team team) {
+		team2[row] = getTeamIndex(team);
+	}
+
+	/**
+	 * Updates the team with lead jammer status in the specified row.
+	 */
+	void setLeadJammer(int row, Team team) {
+		leadJammer[row] = getTeamIndex(team);
+	}
+
+	/**
+	 * Updates Team 1's score in the specified row.
+	 */
+	void setScore1(int row, int points) {
+		score1[row] = points;
+	}
+
+	/**
+	 * Updates Team 2's score in the specified row.
+	 */
+	void setScore2(int row, int points) {
+		score2[row] = points;
+	}
+
+	/**
+	 * Updates the time remaining in seconds for the specified row.
+	 */
+	void setTimeRemaining(int row, int seconds) {
+		timeRemaining[row] = seconds;
+	}
+}
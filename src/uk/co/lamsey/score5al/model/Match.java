@@ -1,10 +1,10 @@
 package uk.co.lamsey.score5al.model;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Represents a match, which consists of a number of heats which in turn consist
@@ -22,11 +22,43 @@ public class Match {
 	 */
 	private List<Team> teams;
 
+	/**
+	 * The index of each team in the list of teams.
+	 */
+	private Map<Team, Integer> teamIndexes;
+
 	/**
 	 * An ordered list of the heats in this match.
 	 */
 	private List<Heat> heats;
 
+	/**
+	 * Every jam in the match, in order, indexed by match-wide jam index.
+	 */
+	private Jam[] allJams;
+
+	/**
+	 * The match-wide index of the first jam in each heat, plus the total
+	 * number of jams as a final element.
+	 */
+	private int[] heatStarts;
+
+	/**
+	 * The index of the heat containing each jam, by match-wide jam index.
+	 */
+	private int[] jamHeats;
+
+	/**
+	 * The details of every jam in the match, stored in columns by match-wide
+	 * jam index.
+	 */
+	private JamStore jamStore;
+
+	/**
+	 * The jams in which each team plays, in match order.
+	 */
+	private Map<Team, List<Jam>> teamJams;
+
 	/**
 	 * The number of seconds for which each jam lasts.
 	 */
@@ -43,7 +75,11 @@ public class Match {
 	public Match() {
 		name = "New match";
 		teams = new ArrayList<Team>(15);
+		teamJams = new IdentityHashMap<Team, List<Jam>>(15);
+		reindexTeams();
 		heats = new ArrayList<Heat>(15);
+		jamStore = new JamStore(this, 105);
+		reindexJams();
 		jamDuration = 120;
 		setNumTeams(15);
 		setNumHeats(15);
@@ -60,37 +96,112 @@ public class Match {
 		// if there are now more teams, add default teams
 		if (numTeams > currentTeams) {
 			for (int x = currentTeams + 1; x <= numTeams; x++) {
-				teams.add(new Team(x));
+				Team team = new Team(x);
+				teams.add(team);
+				teamJams.put(team, new ArrayList<Jam>());
 			}
+			reindexTeams();
 		}
 
 		// if there are now less teams, remove highest-numbered teams
 		if (numTeams < currentTeams) {
-			Set<Team> removedTeams = new HashSet<Team>();
 			for (int x = currentTeams; x > numTeams; x--) {
-				removedTeams.add(teams.remove(x - 1));
+				Team removedTeam = teams.get(x - 1);
+
+				// make sure there aren't any jams with this team (before it's
+				// removed, while its index still refers to it)
+				for (Jam jam : new ArrayList<Jam>(teamJams.get(removedTeam))) {
+					setTeams(jam, jam.getTeam1() == removedTeam ? null
+							: jam.getTeam1(), jam.getTeam2() == removedTeam ? null
+							: jam.getTeam2());
+					jam.setScore1(0);
+					jam.setScore2(0);
+					jam.setLeadJammer(null);
+					jam.setTimeRemaining(jamDuration);
+				}
+				teams.remove(x - 1);
+				teamJams.remove(removedTeam);
 			}
+			reindexTeams();
+		}
+	}
 
-			// make sure there aren't any jams with these teams
-			for (Heat heat : heats) {
-				for (Jam jam : heat.getJams()) {
-					if (removedTeams.contains(jam.getTeam1())) {
-						jam.setTeam1(null);
-						jam.setScore1(0);
-						jam.setScore2(0);
-						jam.setLeadJammer(null);
-						jam.setTimeRemaining(jamDuration);
-					}
-					if (removedTeams.contains(jam.getTeam2())) {
-						jam.setTeam2(null);
-						jam.setScore1(0);
-						jam.setScore2(0);
-						jam.setLeadJammer(null);
-						jam.setTimeRemaining(jamDuration);
-					}
-				}
+	/**
+	 * Updates the teams in the passed jam, keeping the index of each team's
+	 * jams up to date. All changes to a jam's teams should be made via this
+	 * method.
+	 */
+	public void setTeams(Jam jam, Team team1, Team team2) {
+		removeTeamJam(jam.getTeam1(), jam);
+		removeTeamJam(jam.getTeam2(), jam);
+		jam.setTeam1(team1);
+		jam.setTeam2(team2);
+		addTeamJam(team1, jam);
+		addTeamJam(team2, jam);
+	}
+
+	/**
+	 * Returns the jams in which the passed team plays, in match order. The
+	 * list can't be modified, and is empty if the team isn't in this match.
+	 */
+	public List<Jam> getJams(Team team) {
+		List<Jam> jams = teamJams.get(team);
+		if (jams == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(jams);
+	}
+
+	/**
+	 * Adds the passed jam to the passed team's list of jams, in match order
+	 * (does nothing if the team is null or the jam is already listed).
+	 */
+	private void addTeamJam(Team team, Jam jam) {
+		List<Jam> jams = teamJams.get(team);
+		if (jams != null) {
+			int position = findTeamJam(jams, jam);
+			if (position < 0) {
+				jams.add(-position - 1, jam);
+			}
+		}
+	}
+
+	/**
+	 * Removes the passed jam from the passed team's list of jams (does nothing
+	 * if the team is null or the jam isn't listed).
+	 */
+	private void removeTeamJam(Team team, Jam jam) {
+		List<Jam> jams = teamJams.get(team);
+		if (jams != null) {
+			int position = findTeamJam(jams, jam);
+			if (position >= 0) {
+				jams.remove(position);
+			}
+		}
+	}
+
+	/**
+	 * Finds the passed jam in the passed list of jams in match order.
+	 * 
+	 * @return The position of the jam, or (-(insertion point) - 1) if it isn't
+	 *         in the list, as for Collections.binarySearch().
+	 */
+	private int findTeamJam(List<Jam> jams, Jam jam) {
+		int jamIndex = getJamIndex(jam);
+		int low = 0;
+		int high = jams.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleIndex = getJamIndex(jams.get(middle));
+			if (middleIndex < jamIndex) {
+				low = middle + 1;
+			} else if (middleIndex > jamIndex) {
+				high = middle - 1;
+			} else {
+				return middle;
 			}
 		}
+		return -(low + 1);
 	}
 
 	/**
@@ -99,26 +210,22 @@ public class Match {
 	 */
 	public void setNumHeats(int numHeats) {
 
-		// build an ordered list of the current jams
-		List<Jam> allJams = new ArrayList<Jam>();
-		for (Heat heat : heats) {
-			allJams.addAll(heat.getJams());
-		}
-
 		// rebuild the list of heats
 		heats = new ArrayList<Heat>();
-		int jamsPerHeat = allJams.size() / numHeats;
-		int remainder = allJams.size() % numHeats;
+		int jamsPerHeat = allJams.length / numHeats;
+		int remainder = allJams.length % numHeats;
+		int jamIndex = 0;
 		for (int x = 0; x < numHeats; x++) {
 			Heat heat = new Heat();
 			heats.add(heat);
 			for (int y = 0; y < jamsPerHeat; y++) {
-				heat.getJams().add(allJams.get(0));
+				heat.addJam(allJams[jamIndex++]);
 			}
 			if (x < remainder) {
-				heat.getJams().add(allJams.get(0));
+				heat.addJam(allJams[jamIndex++]);
 			}
 		}
+		reindexJams();
 	}
 
 	/**
@@ -133,17 +240,63 @@ public class Match {
 		// check if jams need to be added
 		if (numJams > currentJams) {
 			for (int x = currentJams; x < numJams; x++) {
-				heats.get(x % currentHeats).getJams().add(new Jam(jamDuration));
+				heats.get(x % currentHeats).addJam(jamStore.newJam(jamDuration));
 			}
 		}
 
 		// check if jams need to be removed
 		if (numJams < currentJams) {
 			for (int x = currentJams; x > numJams; x--) {
-				List<Jam> heatJams = heats.get(x % currentHeats).getJams();
-				heatJams.remove(heatJams.size() - 1);
+				heats.get(x % currentHeats).removeLastJam();
+			}
+		}
+		reindexJams();
+	}
+
+	/**
+	 * Rebuilds the index of teams after any teams are added or removed.
+	 */
+	private void reindexTeams() {
+		teamIndexes = new IdentityHashMap<Team, Integer>(teams.size());
+		for (int teamIndex = 0; teamIndex < teams.size(); teamIndex++) {
+			teamIndexes.put(teams.get(teamIndex), teamIndex);
+		}
+	}
+
+	/**
+	 * Rebuilds the index of jams after any jams or heats are added or
+	 * removed.
+	 */
+	private void reindexJams() {
+		int totalJams = 0;
+		for (Heat heat : heats) {
+			totalJams += heat.getTotalJams();
+		}
+		allJams = new Jam[totalJams];
+		heatStarts = new int[heats.size() + 1];
+		jamHeats = new int[totalJams];
+		int jamIndex = 0;
+		for (int heatIndex = 0; heatIndex < heats.size(); heatIndex++) {
+			heatStarts[heatIndex] = jamIndex;
+			for (Jam jam : heats.get(heatIndex).getJams()) {
+				allJams[jamIndex] = jam;
+				jamHeats[jamIndex] = heatIndex;
+				jamIndex++;
 			}
 		}
+		heatStarts[heats.size()] = totalJams;
+
+		// put the jam store's rows into the same order
+		jamStore.reorder(allJams);
+
+		// rebuild the lists of each team's jams
+		for (Team team : teams) {
+			teamJams.put(team, new ArrayList<Jam>());
+		}
+		for (Jam jam : allJams) {
+			addTeamJam(jam.getTeam1(), jam);
+			addTeamJam(jam.getTeam2(), jam);
+		}
 	}
 
 	/**
@@ -197,6 +350,15 @@ public class Match {
 		return teams;
 	}
 
+	/**
+	 * Returns the index of the passed team in the list of teams, or -1 if the
+	 * team is null or isn't in this match.
+	 */
+	public int getTeamIndex(Team team) {
+		Integer teamIndex = teamIndexes.get(team);
+		return teamIndex == null ? -1 : teamIndex;
+	}
+
 	/**
 	 * Returns the number of teams in this match.
 	 */
@@ -215,11 +377,7 @@ public class Match {
 	 * Returns the number of jams in this match.
 	 */
 	public int getTotalJams() {
-		int count = 0;
-		for (Heat heat : heats) {
-			count += heat.getTotalJams();
-		}
-		return count;
+		return allJams.length;
 	}
 
 	/**
@@ -228,24 +386,11 @@ public class Match {
 	 * jam index is invalid.
 	 */
 	public Jam getJam(int jamIndex) {
-
-		// can't have a negative index
-		if (jamIndex < 0) {
+		if (jamIndex < 0 || jamIndex >= allJams.length) {
 			return null;
+		} else {
+			return allJams[jamIndex];
 		}
-
-		Iterator<Heat> iterator = heats.iterator();
-		while (iterator.hasNext()) {
-			List<Jam> jams = iterator.next().getJams();
-			if (jamIndex < jams.size()) {
-				return jams.get(jamIndex);
-			} else {
-				jamIndex -= jams.size();
-			}
-		}
-
-		// invalid index
-		return null;
 	}
 
 	/**
@@ -262,15 +407,49 @@ public class Match {
 		if (heatIndex < 0 || heatIndex >= heats.size()) {
 			return null;
 		} else {
-			List<Jam> jams = heats.get(heatIndex).getJams();
-			if (jamIndex < 0 || jamIndex >= jams.size()) {
+			int start = heatStarts[heatIndex];
+			if (jamIndex < 0 || jamIndex >= heatStarts[heatIndex + 1] - start) {
 				return null;
 			} else {
-				return jams.get(jamIndex);
+				return allJams[start + jamIndex];
 			}
 		}
 	}
 
+	/**
+	 * Returns the match-wide index of the passed jam, or -1 if it isn't in
+	 * this match.
+	 */
+	public int getJamIndex(Jam jam) {
+		return jamStore.contains(jam) ? jam.row : -1;
+	}
+
+	/**
+	 * Returns the store holding the details of every jam in the match, whose
+	 * rows are in match order (the row for each jam is its match-wide index).
+	 */
+	public JamStore getJamStore() {
+		return jamStore;
+	}
+
+	/**
+	 * Returns the index of the heat containing the passed jam, or -1 if it
+	 * isn't in this match.
+	 */
+	public int getHeatIndex(Jam jam) {
+		int jamIndex = getJamIndex(jam);
+		return jamIndex == -1 ? -1 : jamHeats[jamIndex];
+	}
+
+	/**
+	 * Returns the index of the passed jam within its heat, or -1 if it isn't
+	 * in this match.
+	 */
+	public int getJamIndexInHeat(Jam jam) {
+		int jamIndex = getJamIndex(jam);
+		return jamIndex == -1 ? -1 : jamIndex - heatStarts[jamHeats[jamIndex]];
+	}
+
 	/**
 	 * Returns the file name used to save/load this match's data.
 	 */
@@ -0,0 +1,187 @@
+package uk.co.lamsey.score5al.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of a match's details and jams at one moment, which can be
+ * read from any thread without locking. Each snapshot has a version number,
+ * which increases with every change published.
+ * 
+ * The teams are copied too, so later edits to a team aren't seen.
+ * 
+ * Snapshots share structure: updating one jam copies only that jam, the list
+ * of jams in its heat and the list of heats, and shares every other heat (and
+ * the teams) with the previous snapshot.
+ */
+public final class MatchSnapshot {
+
+	/**
+	 * The version number of this snapshot.
+	 */
+	private final long version;
+
+	/**
+	 * The match's official name.
+	 */
+	private final String name;
+
+	/**
+	 * The number of seconds for which each jam lasts.
+	 */
+	private final int jamDuration;
+
+	/**
+	 * An ordered list of copies of the teams in the match.
+	 */
+	private final List<TeamSnapshot> teams;
+
+	/**
+	 * The jams in each heat, in order. Neither the outer nor the inner lists
+	 * are modified once the snapshot is published.
+	 */
+	private final List<List<JamSnapshot>> heats;
+
+	/**
+	 * The total number of jams in the match.
+	 */
+	private final int totalJams;
+
+	/**
+	 * Creates a snapshot of the passed match's current state.
+	 */
+	public MatchSnapshot(Match match, long version) {
+		this.version = version;
+		name = match.getName();
+		jamDuration = match.getJamDuration();
+		TeamSnapshot[] teamList = new TeamSnapshot[match.getTotalTeams()];
+		for (int teamIndex = 0; teamIndex < teamList.length; teamIndex++) {
+			teamList[teamIndex] = new TeamSnapshot(match.getTeams().get(
+					teamIndex), teamIndex);
+		}
+		teams = Collections.unmodifiableList(Arrays.asList(teamList));
+		List<List<JamSnapshot>> heatList = new ArrayList<List<JamSnapshot>>(
+				match.getTotalHeats());
+		for (Heat heat : match.getHeats()) {
+			JamSnapshot[] jams = new JamSnapshot[heat.getTotalJams()];
+			for (int jamIndex = 0; jamIndex < jams.length; jamIndex++) {
+				jams[jamIndex] = new JamSnapshot(heat.getJams().get(jamIndex),
+						match, teams);
+			}
+			heatList.add(Collections.unmodifiableList(Arrays.asList(jams)));
+		}
+		heats = Collections.unmodifiableList(heatList);
+		totalJams = match.getTotalJams();
+	}
+
+	/**
+	 * Creates a copy of the passed snapshot with a new version number and one
+	 * heat's jams replaced.
+	 */
+	private MatchSnapshot(MatchSnapshot previous, long version, int heatIndex,
+			List<JamSnapshot> heatJams) {
+		this.version = version;
+		name = previous.name;
+		jamDuration = previous.jamDuration;
+		teams = previous.teams;
+		List<List<JamSnapshot>> heatList = new ArrayList<List<JamSnapshot>>(
+				previous.heats);
+		heatList.set(heatIndex, heatJams);
+		heats = Collections.unmodifiableList(heatList);
+		totalJams = previous.totalJams;
+	}
+
+	/**
+	 * Returns a new snapshot with the specified jam replaced by the passed
+	 * one, sharing every other heat with this snapshot.
+	 */
+	public MatchSnapshot withJam(int heatIndex, int jamIndex, JamSnapshot jam,
+			long newVersion) {
+		JamSnapshot[] jams = heats.get(heatIndex).toArray(
+				new JamSnapshot[0]);
+		jams[jamIndex] = jam;
+		return new MatchSnapshot(this, newVersion, heatIndex,
+				Collections.unmodifiableList(Arrays.asList(jams)));
+	}
+
+	/**
+	 * Returns a copy of the passed jam's current details, referring to this
+	 * snapshot's copies of the teams, to be passed to withJam.
+	 */
+	public JamSnapshot copyJam(Match match, Jam jam) {
+		return new JamSnapshot(jam, match, teams);
+	}
+
+	/**
+	 * Returns the version number of this snapshot.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the match's official name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of seconds for which each jam lasts.
+	 */
+	public int getJamDuration() {
+		return jamDuration;
+	}
+
+	/**
+	 * Returns the ordered list of copies of the teams in the match.
+	 */
+	public List<TeamSnapshot> getTeams() {
+		return teams;
+	}
+
+	/**
+	 * Returns the number of teams in the match.
+	 */
+	public int getTotalTeams() {
+		return teams.size();
+	}
+
+	/**
+	 * Returns the number of heats in the match.
+	 */
+	public int getTotalHeats() {
+		return heats.size();
+	}
+
+	/**
+	 * Returns the number of jams in the match.
+	 */
+	public int getTotalJams() {
+		return totalJams;
+	}
+
+	/**
+	 * Returns the ordered list of jams in the specified heat.
+	 */
+	public List<JamSnapshot> getJams(int heatIndex) {
+		return heats.get(heatIndex);
+	}
+
+	/**
+	 * Returns the jam with the specified heat and jam indexes. Returns null if
+	 * either index is invalid.
+	 */
+	public JamSnapshot getJam(int heatIndex, int jamIndex) {
+		if (heatIndex < 0 || heatIndex >= heats.size()) {
+			return null;
+		}
+		List<JamSnapshot> jams = heats.get(heatIndex);
+		if (jamIndex < 0 || jamIndex >= jams.size()) {
+			return null;
+		}
+		return jams.get(jamIndex);
+	}
+}
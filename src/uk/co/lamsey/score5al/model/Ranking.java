@@ -21,10 +21,17 @@ public class Ranking implements Comparable<Ranking> {
 	public static final int LJ_POINTS = 1;
 
 	/**
-	 * The team to whom this ranking relates.
+	 * The team to whom this ranking relates (null for a ranking of a copy of a
+	 * team).
 	 */
 	private Team team;
 
+	/**
+	 * The copy of the team to whom this ranking relates, such as one in a
+	 * match snapshot (null for a ranking of the team itself).
+	 */
+	private TeamSnapshot teamSnapshot;
+
 	/**
 	 * The team's current rank in the match.
 	 */
@@ -68,6 +75,15 @@ public class Ranking implements Comparable<Ranking> {
 		reset();
 	}
 
+	/**
+	 * Creates a new Ranking for the passed copy of a team with no score. The
+	 * copy's points adjustment is used for the match score.
+	 */
+	public Ranking(TeamSnapshot teamSnapshot) {
+		this.teamSnapshot = teamSnapshot;
+		reset();
+	}
+
 	/**
 	 * Adjusts this team's ranking data according to the passed jam scores.
 	 * 
@@ -100,6 +116,39 @@ public class Ranking implements Comparable<Ranking> {
 		}
 	}
 
+	/**
+	 * Reverses a previous call to processJamScore with the same arguments, so
+	 * that a jam's old result can be withdrawn before its new one is applied.
+	 * 
+	 * @param pointsScored
+	 *            The points scored by this team in this jam.
+	 * @param pointsLost
+	 *            The points scored against this team in this jam.
+	 * @param isLeadJammer
+	 *            Whether or not the team had lead jammer status in this jam.
+	 */
+	public void removeJamScore(int pointsScored, int pointsLost,
+			boolean isLeadJammer) {
+
+		// adjust points totals
+		pointsFor -= pointsScored;
+		pointsAgainst -= pointsLost;
+
+		// remove win/loss/draw
+		if (pointsScored > pointsLost) {
+			wins--;
+		} else if (pointsScored < pointsLost) {
+			losses--;
+		} else {
+			draws--;
+		}
+
+		// remove LJ
+		if (isLeadJammer) {
+			leadJams--;
+		}
+	}
+
 	/**
 	 * Resets this team's scores.
 	 */
@@ -154,18 +203,36 @@ public class Ranking implements Comparable<Ranking> {
 	 */
 	public int getMatchScore() {
 		return (wins * WIN_POINTS) + (draws * DRAW_POINTS)
-				+ (leadJams * LJ_POINTS) + team.getPointsAdjustment();
+				+ (leadJams * LJ_POINTS) + getPointsAdjustment();
+	}
+
+	/**
+	 * Returns the number of points by which the team's match score should be
+	 * altered.
+	 */
+	private int getPointsAdjustment() {
+		return team != null ? team.getPointsAdjustment() : teamSnapshot
+				.getPointsAdjustment();
 	}
 
 	// simple getters/setters below this point
 
 	/**
-	 * Returns the team to whom this ranking relates.
+	 * Returns the team to whom this ranking relates (null for a ranking of a
+	 * copy of a team).
 	 */
 	public Team getTeam() {
 		return team;
 	}
 
+	/**
+	 * Returns the copy of the team to whom this ranking relates (null for a
+	 * ranking of the team itself).
+	 */
+	public TeamSnapshot getTeamSnapshot() {
+		return teamSnapshot;
+	}
+
 	/**
 	 * Returns the team's current rank in the match.
 	 */
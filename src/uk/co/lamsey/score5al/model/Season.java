@@ -0,0 +1,74 @@
+package uk.co.lamsey.score5al.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A season is a series of matches whose results are combined into standings
+ * for every team which played in any of them. Teams in different matches are
+ * taken to be the same team if they have the same name (ignoring case and
+ * surrounding spaces).
+ */
+public class Season {
+
+	/**
+	 * The name of each match merged into the season, in order.
+	 */
+	private List<String> matchNames;
+
+	/**
+	 * The standing of each team, by its name in lower case, in the order in
+	 * which the teams first appeared (so that ties stay in that order).
+	 */
+	private Map<String, SeasonStanding> standings;
+
+	/**
+	 * Creates a new Season with no matches.
+	 */
+	public Season() {
+		matchNames = new ArrayList<String>();
+		standings = new LinkedHashMap<String, SeasonStanding>();
+	}
+
+	/**
+	 * Merges a match's final rankings into the season standings.
+	 * 
+	 * @param matchName
+	 *            The name by which the match should be known in the season.
+	 * @param rankings
+	 *            The rankings of every team in the match.
+	 */
+	public void addMatch(String matchName, List<Ranking> rankings) {
+		matchNames.add(matchName);
+		for (Ranking ranking : rankings) {
+			String teamName = ranking.getTeamSnapshot().getName().trim();
+			String key = teamName.toLowerCase();
+			SeasonStanding standing = standings.get(key);
+			if (standing == null) {
+				standing = new SeasonStanding(teamName);
+				standings.put(key, standing);
+			}
+			standing.addMatch(ranking);
+		}
+	}
+
+	/**
+	 * Returns the name of each match merged into the season, in order.
+	 */
+	public List<String> getMatchNames() {
+		return Collections.unmodifiableList(matchNames);
+	}
+
+	/**
+	 * Returns a sorted list of the standings of every team in the season.
+	 */
+	public List<SeasonStanding> getStandings() {
+		List<SeasonStanding> sorted = new ArrayList<SeasonStanding>(
+				standings.values());
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,208 @@
+package uk.co.lamsey.score5al.model;
+
+/**
+ * Represents a team's combined results over all of the matches in a season,
+ * to be displayed in the season standings.
+ */
+public class SeasonStanding implements Comparable<SeasonStanding> {
+
+	/**
+	 * The team's name, as it appeared in the first match it played.
+	 */
+	private String teamName;
+
+	/**
+	 * The number of matches this team has played.
+	 */
+	private int matches;
+
+	/**
+	 * The best rank this team has finished a match in (Integer.MAX_VALUE if it
+	 * hasn't played one).
+	 */
+	private int bestRank;
+
+	/**
+	 * The number of jams this team has won.
+	 */
+	private int wins;
+
+	/**
+	 * The number of jams this team has drawn.
+	 */
+	private int draws;
+
+	/**
+	 * The number of jams this team has lost.
+	 */
+	private int losses;
+
+	/**
+	 * The number of jams in which this team has had lead jammer status.
+	 */
+	private int leadJams;
+
+	/**
+	 * The total number of jam points scored by this team.
+	 */
+	private int pointsFor;
+
+	/**
+	 * The total number of jam points scored against this team.
+	 */
+	private int pointsAgainst;
+
+	/**
+	 * The total of this team's match scores.
+	 */
+	private int matchScore;
+
+	/**
+	 * Creates a new SeasonStanding for the named team, with no matches.
+	 */
+	public SeasonStanding(String teamName) {
+		this.teamName = teamName;
+		matches = 0;
+		bestRank = Integer.MAX_VALUE;
+		wins = 0;
+		draws = 0;
+		losses = 0;
+		leadJams = 0;
+		pointsFor = 0;
+		pointsAgainst = 0;
+		matchScore = 0;
+	}
+
+	/**
+	 * Adds the team's final ranking in a match to its season totals.
+	 */
+	public void addMatch(Ranking ranking) {
+		matches++;
+		wins += ranking.getWins();
+		draws += ranking.getDraws();
+		losses += ranking.getLosses();
+		leadJams += ranking.getLedJams();
+		pointsFor += ranking.getPointsFor();
+		pointsAgainst += ranking.getPointsAgainst();
+		matchScore += ranking.getMatchScore();
+
+		// ranks are numbers, with an '=' added for ties
+		try {
+			int rank = Integer.parseInt(ranking.getRank().replace("=", ""));
+			bestRank = Math.min(bestRank, rank);
+		} catch (NumberFormatException error) {
+			// not ranked - leave the best rank as it was
+		}
+	}
+
+	/**
+	 * Compares first by total match score, then by points difference, then by
+	 * games won, then by number of jams lead, in the same way as Ranking.
+	 * Natural ordering is reversed so that teams with more points appear
+	 * before teams with less points.
+	 */
+	public int compareTo(SeasonStanding other) {
+
+		// match score
+		int difference = other.getMatchScore() - getMatchScore();
+		if (difference != 0) {
+			return difference;
+		}
+
+		// points difference
+		difference = other.getPointsDifference() - getPointsDifference();
+		if (difference != 0) {
+			return difference;
+		}
+
+		// games won
+		difference = other.getWins() - getWins();
+		if (difference != 0) {
+			return difference;
+		}
+
+		// jams led
+		return other.getLedJams() - getLedJams();
+	}
+
+	/**
+	 * Returns the difference between points for and against this team.
+	 */
+	public int getPointsDifference() {
+		return pointsFor - pointsAgainst;
+	}
+
+	// simple getters below this point
+
+	/**
+	 * Returns the team's name, as it appeared in the first match it played.
+	 */
+	public String getTeamName() {
+		return teamName;
+	}
+
+	/**
+	 * Returns the number of matches this team has played.
+	 */
+	public int getMatches() {
+		return matches;
+	}
+
+	/**
+	 * Returns the best rank this team has finished a match in
+	 * (Integer.MAX_VALUE if it hasn't played one).
+	 */
+	public int getBestRank() {
+		return bestRank;
+	}
+
+	/**
+	 * Returns the number of jams this team has won.
+	 */
+	public int getWins() {
+		return wins;
+	}
+
+	/**
+	 * Returns the number of jams this team has drawn.
+	 */
+	public int getDraws() {
+		return draws;
+	}
+
+	/**
+	 * Returns the number of jams this team has lost.
+	 */
+	public int getLosses() {
+		return losses;
+	}
+
+	/**
+	 * Returns the number of jams in which this team has had lead jammer
+	 * status.
+	 */
+	public int getLedJams() {
+		return leadJams;
+	}
+
+	/**
+	 * Returns the total number of jam points scored by this team.
+	 */
+	public int getPointsFor() {
+		return pointsFor;
+	}
+
+	/**
+	 * Returns the total number of jam points scored against this team.
+	 */
+	public int getPointsAgainst() {
+		return pointsAgainst;
+	}
+
+	/**
+	 * Returns the total of this team's match scores.
+	 */
+	public int getMatchScore() {
+		return matchScore;
+	}
+}
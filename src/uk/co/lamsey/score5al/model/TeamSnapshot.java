@@ -0,0 +1,112 @@
+package uk.co.lamsey.score5al.model;
+
+import java.awt.Color;
+
+/**
+ * An immutable copy of a team's details at one moment, as published in a
+ * MatchSnapshot. Later edits to the team aren't seen, so a snapshot's teams
+ * always agree with its jams.
+ */
+public final class TeamSnapshot {
+
+	/**
+	 * The team's position in the match's list of teams.
+	 */
+	private final int index;
+
+	/**
+	 * The team's number.
+	 */
+	private final int number;
+
+	/**
+	 * The team's name.
+	 */
+	private final String name;
+
+	/**
+	 * The team's abbreviated name (may be empty).
+	 */
+	private final String abbreviation;
+
+	/**
+	 * The foreground colour used for the team.
+	 */
+	private final Color fgColour;
+
+	/**
+	 * The background colour used for the team.
+	 */
+	private final Color bgColour;
+
+	/**
+	 * The number of points by which the team's match score is altered.
+	 */
+	private final int pointsAdjustment;
+
+	/**
+	 * Creates a copy of the passed team's current details.
+	 * 
+	 * @param index
+	 *            The team's position in the match's list of teams.
+	 */
+	public TeamSnapshot(Team team, int index) {
+		this.index = index;
+		number = team.getNumber();
+		name = team.getName();
+		abbreviation = team.getAbbreviation();
+		fgColour = team.getFgColour();
+		bgColour = team.getBgColour();
+		pointsAdjustment = team.getPointsAdjustment();
+	}
+
+	/**
+	 * Returns the team's position in the match's list of teams.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the team's number.
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * Returns the team's name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the team's abbreviated name (may be empty).
+	 */
+	public String getAbbreviation() {
+		return abbreviation;
+	}
+
+	/**
+	 * Returns the foreground colour used for the team.
+	 */
+	public Color getFgColour() {
+		return fgColour;
+	}
+
+	/**
+	 * Returns the background colour used for the team.
+	 */
+	public Color getBgColour() {
+		return bgColour;
+	}
+
+	/**
+	 * Returns the number of points by which the team's match score is
+	 * altered.
+	 */
+	public int getPointsAdjustment() {
+		return pointsAdjustment;
+	}
+}
@@ -12,6 +12,7 @@ import javax.swing.JTextArea;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
 import uk.co.lamsey.score5al.model.DistributionStats;
@@ -65,7 +66,8 @@ public class DistributionDialog {
 		dialog.pack();
 
 		// add an observer to update the distribution stats
-		MatchControl.getInstance().addObserver(new TextAreaUpdater());
+		MatchControl.getInstance().addObserver(new TextAreaUpdater(),
+				ChangeType.MATCH_CHANGED, ChangeType.SCHEDULE_CHANGED);
 	}
 
 	/**
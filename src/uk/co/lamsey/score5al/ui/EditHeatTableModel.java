@@ -38,7 +38,8 @@ public class EditHeatTableModel extends AbstractTableModel {
 	 */
 	public EditHeatTableModel() {
 		showHeat(0);
-		MatchControl.getInstance().addObserver(new MatchListener());
+		MatchControl.getInstance().addObserver(
+				new FrameObserver<Match>(new MatchListener()));
 	}
 
 	/**
@@ -5,6 +5,9 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 import javax.swing.DefaultCellEditor;
@@ -30,9 +33,11 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.table.TableCellRenderer;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.LogicException;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
+import uk.co.lamsey.score5al.control.ScheduleOptimiser;
 import uk.co.lamsey.score5al.model.Match;
 import uk.co.lamsey.score5al.model.Team;
 
@@ -81,6 +86,36 @@ public class EditHeatsPanel {
      */
     private JSpinner autoSpinner;
 
+    /**
+     * The teams which have withdrawn from the match being edited.
+     */
+    private Set<Team> withdrawnTeams;
+
+    /**
+     * The match from which the withdrawn teams have withdrawn.
+     */
+    private Match withdrawnFrom;
+
+    /**
+     * The time for which the schedule optimiser runs (unless stopped).
+     */
+    private static final long OPTIMISE_MILLIS = 10000;
+
+    /**
+     * The label showing the progress of the schedule optimiser.
+     */
+    private JLabel optimiseLabel;
+
+    /**
+     * The button used to start/stop the schedule optimiser.
+     */
+    private JButton optimiseButton;
+
+    /**
+     * The schedule optimiser currently running, or null if none is.
+     */
+    private ScheduleOptimiser optimiser;
+
     /**
      * Initialises the GUI panel so it is ready to be added to the UI.
      */
@@ -189,6 +224,22 @@ public class EditHeatsPanel {
         autoButton.addMouseListener(new HoverStatus("Attempts to evenly "
                 + "distribute the allocation of teams to heats/jams."));
 
+        // controls for replanning after a team withdraws
+        JLabel replanLabel = new JLabel(
+                "Replan unplayed heats after a team withdraws:");
+        JButton replanButton = new JButton("Replan", Icons.TEAM);
+        replanButton.addActionListener(new Replanner());
+        replanButton.addMouseListener(new HoverStatus("Reallocates the "
+                + "teams in unplayed heats, keeping all completed jams."));
+        withdrawnTeams = new HashSet<Team>();
+
+        // controls for optimising the current schedule
+        optimiseLabel = new JLabel("Optimise the current allocation of teams:");
+        optimiseButton = new JButton("Optimise", Icons.STATS);
+        optimiseButton.addActionListener(new Optimiser());
+        optimiseButton.addMouseListener(new HoverStatus("Improves the spread "
+                + "of opponents and rest between jams in unplayed jams."));
+
         // lay the panel out
         layout.setHorizontalGroup(layout
                 .createParallelGroup(Alignment.TRAILING)
@@ -225,7 +276,23 @@ public class EditHeatsPanel {
                                 .addPreferredGap(ComponentPlacement.UNRELATED,
                                         GroupLayout.DEFAULT_SIZE,
                                         Short.MAX_VALUE)
-                                .addComponent(autoButton)));
+                                .addComponent(autoButton))
+                .addGroup(
+                        layout.createSequentialGroup()
+                                .addComponent(replanLabel)
+                                // gap between label and button
+                                .addPreferredGap(ComponentPlacement.UNRELATED,
+                                        GroupLayout.DEFAULT_SIZE,
+                                        Short.MAX_VALUE)
+                                .addComponent(replanButton))
+                .addGroup(
+                        layout.createSequentialGroup()
+                                .addComponent(optimiseLabel)
+                                // gap between label and button
+                                .addPreferredGap(ComponentPlacement.UNRELATED,
+                                        GroupLayout.DEFAULT_SIZE,
+                                        Short.MAX_VALUE)
+                                .addComponent(optimiseButton)));
         layout.setVerticalGroup(layout
                 .createSequentialGroup()
                 .addGroup(
@@ -247,11 +314,22 @@ public class EditHeatsPanel {
                                 .addComponent(autoLabelPre)
                                 .addComponent(autoSpinner)
                                 .addComponent(autoLabelPost)
-                                .addComponent(autoButton)));
-        layout.linkSize(SwingConstants.HORIZONTAL, updateButton, autoButton);
+                                .addComponent(autoButton))
+                .addGroup(
+                        layout.createParallelGroup(Alignment.BASELINE)
+                                .addComponent(replanLabel)
+                                .addComponent(replanButton))
+                .addGroup(
+                        layout.createParallelGroup(Alignment.BASELINE)
+                                .addComponent(optimiseLabel)
+                                .addComponent(optimiseButton)));
+        layout.linkSize(SwingConstants.HORIZONTAL, updateButton, autoButton,
+                replanButton, optimiseButton);
 
         // make sure the match controls get updated to reflect match changes
-        MatchControl.getInstance().addObserver(new HeatControlUpdater());
+        MatchControl.getInstance().addObserver(
+                new FrameObserver<Match>(new HeatControlUpdater()),
+                ChangeType.MATCH_CHANGED);
     }
 
     /**
@@ -421,6 +499,176 @@ public class EditHeatsPanel {
         }
     }
 
+    /**
+     * Replans the unplayed heats in the match after a team withdraws.
+     */
+    private class Replanner implements ActionListener {
+
+        /**
+         * Asks the user which team has withdrawn, then replans the unplayed
+         * heats amongst the remaining teams and displays an appropriate
+         * message.
+         */
+        @Override
+        public void actionPerformed(ActionEvent event) {
+
+            // forget any withdrawals from a different match
+            Match match = MatchControl.getInstance().getMatch();
+            if (match != withdrawnFrom) {
+                withdrawnTeams.clear();
+                withdrawnFrom = match;
+            }
+
+            // ask the user which team has withdrawn
+            List<Team> teams = match.getTeams();
+            String[] options = new String[teams.size() + 1];
+            options[0] = "None - just replan the remaining teams";
+            for (int x = 0; x < teams.size(); x++) {
+                Team team = teams.get(x);
+                options[x + 1] = "Team " + team.getNumber() + ": "
+                        + team.getName()
+                        + (withdrawnTeams.contains(team) ? " (withdrawn)" : "");
+            }
+            Object response = JOptionPane.showInputDialog(
+                    panel.getTopLevelAncestor(), new String[] {
+                            "Which team has withdrawn?",
+                            "All jams which have been played will be kept." },
+                    "Replan", JOptionPane.QUESTION_MESSAGE, null, options,
+                    options[0]);
+            if (response == null) {
+                MainWindow.getInstance().updateStatusBar(Icons.INFO,
+                        "Cancelled - no changes made", true);
+                return;
+            }
+            for (int x = 1; x < options.length; x++) {
+                if (options[x] == response) {
+                    withdrawnTeams.add(teams.get(x - 1));
+                }
+            }
+
+            // block user input
+            final DisabledGlassPane glassPane = new DisabledGlassPane();
+            SwingUtilities.getRootPane(panel).setGlassPane(glassPane);
+            glassPane.activate("Please wait...");
+
+            // run on background thread
+            final Integer teamsPerHeat = (Integer) autoSpinner.getValue();
+            final Set<Team> withdrawn = new HashSet<Team>(withdrawnTeams);
+            Executors.newSingleThreadExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        MatchControl mc = MatchControl.getInstance();
+                        if (mc.replan(teamsPerHeat, withdrawn)) {
+                            MainWindow.getInstance().updateStatusBar(
+                                    Icons.SUCCESS, "Update successful", true);
+                        } else {
+                            MainWindow.getInstance().updateStatusBar(
+                                    Icons.INFO, "No changes needed", true);
+                        }
+                    } catch (LogicException error) {
+                        MainWindow.getInstance().showError(error.getMessage());
+                    }
+
+                    // unblock main window
+                    glassPane.deactivate();
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts or stops the schedule optimiser.
+     */
+    private class Optimiser implements ActionListener {
+
+        /**
+         * Stops the optimiser if it's running, otherwise starts it on a
+         * background thread and applies the best schedule found when it
+         * finishes.
+         */
+        @Override
+        public void actionPerformed(ActionEvent event) {
+
+            // if the optimiser is already running, stop it early
+            if (optimiser != null) {
+                optimiser.cancel();
+                return;
+            }
+
+            // take a copy of the current schedule
+            final ScheduleOptimiser newOptimiser;
+            try {
+                newOptimiser = MatchControl.getInstance().createOptimiser();
+            } catch (LogicException error) {
+                MainWindow.getInstance().showError(error.getMessage());
+                return;
+            }
+            newOptimiser.addObserver(new FrameObserver<ScheduleOptimiser>(
+                    new OptimiserProgress()));
+            optimiser = newOptimiser;
+            optimiseButton.setText("Stop");
+            optimiseButton.setIcon(Icons.TIME_STOP);
+            optimiseLabel.setText(String.format("Optimising - score %.1f",
+                    newOptimiser.getInitialScore()));
+
+            // run on background thread
+            Executors.newSingleThreadExecutor().execute(new Runnable() {
+                public void run() {
+                    final Team[][] schedule = newOptimiser
+                            .optimise(OPTIMISE_MILLIS);
+
+                    // apply the result on the event dispatch thread
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            finish(newOptimiser, schedule);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Applies the optimised schedule and resets the optimiser controls.
+         */
+        private void finish(ScheduleOptimiser finished, Team[][] schedule) {
+            optimiser = null;
+            optimiseButton.setText("Optimise");
+            optimiseButton.setIcon(Icons.STATS);
+            optimiseLabel.setText(String.format(
+                    "Optimised - score %.1f (was %.1f)",
+                    finished.getBestScore(), finished.getInitialScore()));
+            try {
+                if (MatchControl.getInstance().applySchedule(schedule)) {
+                    MainWindow.getInstance().updateStatusBar(Icons.SUCCESS,
+                            "Update successful", true);
+                } else {
+                    MainWindow.getInstance().updateStatusBar(Icons.INFO,
+                            "No improvements found", true);
+                }
+            } catch (LogicException error) {
+                MainWindow.getInstance().showError(error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Shows the best score found so far by the schedule optimiser.
+     */
+    private class OptimiserProgress implements Observer<ScheduleOptimiser> {
+
+        /**
+         * Updates the optimiser label with the best score so far.
+         */
+        @Override
+        public void update(ScheduleOptimiser updated) {
+            if (updated == optimiser) {
+                optimiseLabel.setText(String.format(
+                        "Optimising - score %.1f (was %.1f)",
+                        updated.getBestScore(), updated.getInitialScore()));
+            }
+        }
+    }
+
     /**
      * A combo box to be used as a table editor for selecting teams.
      */
@@ -434,7 +682,8 @@ public class EditHeatsPanel {
             super();
             setRenderer(new TeamComboRenderer());
             MatchControl mc = MatchControl.getInstance();
-            mc.addObserver(this);
+            mc.addObserver(new FrameObserver<Match>(this),
+                    ChangeType.MATCH_CHANGED);
             update(mc.getMatch());
         }
 
@@ -482,7 +482,7 @@ public class EditJamsPanel {
 		// register for updates and force an initial update
 		PanelUpdater updater = new PanelUpdater();
 		updater.update(MatchControl.getInstance().getMatch().getJam(0));
-		jamControl.addObserver(updater);
+		jamControl.addObserver(new FrameObserver<Jam>(updater));
 	}
 
 	/**
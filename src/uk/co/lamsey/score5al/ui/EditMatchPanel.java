@@ -15,6 +15,7 @@ import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.LogicException;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
@@ -231,7 +232,7 @@ public class EditMatchPanel {
 			public void update(Match match) {
 				updateFields(match);
 			}
-		});
+		}, ChangeType.MATCH_CHANGED);
 		updateFields(mc.getMatch());
 	}
 
@@ -2,6 +2,7 @@ package uk.co.lamsey.score5al.ui;
 
 import javax.swing.table.AbstractTableModel;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
 import uk.co.lamsey.score5al.model.Match;
@@ -30,7 +31,9 @@ public class EditTeamTableModel extends AbstractTableModel {
 		MatchControl matchControl = MatchControl.getInstance();
 		match = matchControl.getMatch();
 		numTeams = match.getTotalTeams();
-		matchControl.addObserver(new MatchListener());
+		matchControl.addObserver(
+				new FrameObserver<Match>(new MatchListener()),
+				ChangeType.MATCH_CHANGED, ChangeType.TEAM_EDITED);
 	}
 
 	/**
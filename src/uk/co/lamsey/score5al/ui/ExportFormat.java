@@ -0,0 +1,95 @@
+package uk.co.lamsey.score5al.ui;
+
+import uk.co.lamsey.score5al.control.CsvMatchExporter;
+import uk.co.lamsey.score5al.control.HtmlMatchExporter;
+import uk.co.lamsey.score5al.control.JsonMatchExporter;
+import uk.co.lamsey.score5al.control.MatchExporter;
+
+/**
+ * Defines the file formats to which match data can be exported.
+ */
+public enum ExportFormat {
+
+	/**
+	 * Exports to CSV, for importing into a spreadsheet package.
+	 */
+	CSV("Comma-Separated Value (CSV) files", "csv") {
+		public MatchExporter createExporter() {
+			return new CsvMatchExporter();
+		}
+	},
+
+	/**
+	 * Exports to JSON, for use by other programs.
+	 */
+	JSON("JSON files", "json") {
+		public MatchExporter createExporter() {
+			return new JsonMatchExporter();
+		}
+	},
+
+	/**
+	 * Exports to an HTML results sheet, for printing or publishing.
+	 */
+	HTML("HTML results sheets", "html") {
+		public MatchExporter createExporter() {
+			return new HtmlMatchExporter();
+		}
+	};
+
+	/**
+	 * The description of this format's files, to be displayed in the UI.
+	 */
+	private String description;
+
+	/**
+	 * The extension of this format's files (without the dot).
+	 */
+	private String extension;
+
+	/**
+	 * @param description
+	 *            The description of this format's files, to be displayed in
+	 *            the UI.
+	 * @param extension
+	 *            The extension of this format's files (without the dot).
+	 */
+	private ExportFormat(String description, String extension) {
+		this.description = description;
+		this.extension = extension;
+	}
+
+	/**
+	 * Returns the description of this format's files, to be displayed in the
+	 * UI.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Returns the extension of this format's files (without the dot).
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Creates an exporter which writes this format, for a single export.
+	 */
+	public abstract MatchExporter createExporter();
+
+	/**
+	 * Returns the format whose extension the passed file name has, or null
+	 * if there isn't one.
+	 */
+	public static ExportFormat forFileName(String fileName) {
+		String lowerCase = fileName.toLowerCase();
+		for (ExportFormat format : values()) {
+			if (lowerCase.endsWith("." + format.extension)) {
+				return format;
+			}
+		}
+		return null;
+	}
+}
@@ -1,6 +1,6 @@
 package uk.co.lamsey.score5al.ui;
 
-import uk.co.lamsey.score5al.model.Team;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
 
 /**
  * Defines options for defining how the team name appears in the results during
@@ -13,7 +13,7 @@ public enum ExportTeamFormat {
 	 */
 	NAME_NUMBER("[# - name]",
 			"Identifies teams in the results using their number and name") {
-		public String format(Team team) {
+		public String format(TeamSnapshot team) {
 			return team == null ? "No team selected" : team.getNumber() + " - "
 					+ team.getName();
 		}
@@ -24,7 +24,7 @@ public enum ExportTeamFormat {
 	 */
 	ABBR_NUMBER("[# - abbr. name]",
 			"Identifies teams in the results using their number and abbreviated name") {
-		public String format(Team team) {
+		public String format(TeamSnapshot team) {
 			if (team == null) {
 				return "No team";
 			} else {
@@ -40,7 +40,7 @@ public enum ExportTeamFormat {
 	 * Formats teams by their number only.
 	 */
 	NUMBER("[#]", "Identifies teams in the results using their number only") {
-		public String format(Team team) {
+		public String format(TeamSnapshot team) {
 			return team == null ? "?" : String.valueOf(team.getNumber());
 		}
 	},
@@ -49,7 +49,7 @@ public enum ExportTeamFormat {
 	 * Formats teams by their name only.
 	 */
 	NAME("[name]", "Identifies teams in the results using their name only") {
-		public String format(Team team) {
+		public String format(TeamSnapshot team) {
 			return team == null ? "No team selected" : team.getName();
 		}
 	},
@@ -59,7 +59,7 @@ public enum ExportTeamFormat {
 	 */
 	ABBR("[abbr. name]",
 			"Identifies teams in the results using their abbreviated name only") {
-		public String format(Team team) {
+		public String format(TeamSnapshot team) {
 			if (team == null) {
 				return "No team";
 			} else {
@@ -105,7 +105,7 @@ public enum ExportTeamFormat {
 	}
 
 	/**
-	 * Formats the passed team as appropriate for this mode.
+	 * Formats the passed copy of a team as appropriate for this mode.
 	 */
-	public abstract String format(Team team);
+	public abstract String format(TeamSnapshot team);
 }
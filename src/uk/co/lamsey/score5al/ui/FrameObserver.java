@@ -0,0 +1,135 @@
+package uk.co.lamsey.score5al.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import uk.co.lamsey.score5al.control.Observer;
+
+/**
+ * An observer which passes updates on to another observer on the Swing event
+ * dispatch thread, merging bursts of updates so that the wrapped observer runs
+ * at most once per display frame. Each distinct object updated during a frame
+ * is passed on once, in the order in which it was last updated, so the final
+ * update of a frame is always passed on last.
+ * 
+ * This should be used to wrap any observer which updates Swing components, as
+ * notifications may arrive on the jam timer thread or a background thread.
+ */
+public class FrameObserver<T> implements Observer<T> {
+
+	/**
+	 * The minimum time between updates in milliseconds (one frame at 60 Hz).
+	 */
+	public static final int FRAME_MILLIS = 1000 / 60;
+
+	/**
+	 * The observer to which updates are passed.
+	 */
+	private final Observer<T> observer;
+
+	/**
+	 * The objects which have been updated since the last frame.
+	 */
+	private final List<T> pending;
+
+	/**
+	 * Whether or not an update has been scheduled for the next frame.
+	 */
+	private boolean scheduled;
+
+	/**
+	 * The System.nanoTime() at which updates were last passed on.
+	 */
+	private long lastFrameTime;
+
+	/**
+	 * The timer used to delay updates until the next frame is due.
+	 */
+	private final Timer frameTimer;
+
+	/**
+	 * The task which passes pending updates on to the observer.
+	 */
+	private final FrameUpdater frameUpdater;
+
+	/**
+	 * Creates a new FrameObserver which passes updates on to the passed
+	 * observer.
+	 */
+	public FrameObserver(Observer<T> observer) {
+		this.observer = observer;
+		pending = new ArrayList<T>();
+		scheduled = false;
+		lastFrameTime = System.nanoTime() - (FRAME_MILLIS * 1000000L);
+		frameUpdater = new FrameUpdater();
+		frameTimer = new Timer(FRAME_MILLIS, frameUpdater);
+		frameTimer.setRepeats(false);
+	}
+
+	/**
+	 * Queues the passed object to be passed on to the observer in the next
+	 * frame.
+	 */
+	@Override
+	public void update(T updatedObject) {
+		long delay;
+		synchronized (this) {
+
+			// only pass each object on once per frame, moving it to the end
+			// so that the latest update is passed on last
+			for (int index = 0; index < pending.size(); index++) {
+				if (pending.get(index) == updatedObject) {
+					pending.remove(index);
+					break;
+				}
+			}
+			pending.add(updatedObject);
+
+			// nothing more to do if the next frame has already been scheduled
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+			delay = FRAME_MILLIS - (System.nanoTime() - lastFrameTime)
+					/ 1000000;
+		}
+
+		// run now if a frame has already passed, otherwise wait for the next
+		if (delay <= 0) {
+			SwingUtilities.invokeLater(frameUpdater);
+		} else {
+			frameTimer.setInitialDelay((int) delay);
+			frameTimer.restart();
+		}
+	}
+
+	/**
+	 * Passes all pending updates on to the observer (called on the EDT).
+	 */
+	private class FrameUpdater implements Runnable, ActionListener {
+
+		@Override
+		public void run() {
+			List<T> objects;
+			synchronized (FrameObserver.this) {
+				objects = new ArrayList<T>(pending);
+				pending.clear();
+				scheduled = false;
+				lastFrameTime = System.nanoTime();
+			}
+			for (T object : objects) {
+				observer.update(object);
+			}
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent event) {
+			run();
+		}
+	}
+}
@@ -15,6 +15,7 @@ import javax.swing.SwingConstants;
 import javax.swing.plaf.basic.BasicLabelUI;
 
 import uk.co.lamsey.score5al.model.Team;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
 
 /**
  * A custom JLabel with a gradient background and optional text/border scaling.
@@ -101,18 +102,49 @@ public class GradientLabel extends JLabel {
 	 */
 	public void showTeam(Team team, boolean brighten, boolean darken) {
 		if (team != null) {
-			setGradient(team.getBgColour(), brighten, darken);
-			setForeground(team.getFgColour());
-			setAbbreviation(team.getName(), team.getAbbreviation());
-			setText(team.getNumber() + " - " + team.getName());
+			showTeam(team.getNumber(), team.getName(), team.getAbbreviation(),
+					team.getFgColour(), team.getBgColour(), brighten, darken);
 		} else {
-			setGradient(new Color(255, 96, 96), brighten, darken);
-			setForeground(Color.BLACK);
-			setAbbreviation("No team selected", "No team");
-			setText("No team selected");
+			showNoTeam(brighten, darken);
 		}
 	}
 
+	/**
+	 * Sets up this label to show the specified copy of a team's name and
+	 * number using its colours.
+	 * 
+	 * @see #showTeam(Team, boolean, boolean)
+	 */
+	public void showTeam(TeamSnapshot team, boolean brighten, boolean darken) {
+		if (team != null) {
+			showTeam(team.getNumber(), team.getName(), team.getAbbreviation(),
+					team.getFgColour(), team.getBgColour(), brighten, darken);
+		} else {
+			showNoTeam(brighten, darken);
+		}
+	}
+
+	/**
+	 * Sets up this label to show the passed team details.
+	 */
+	private void showTeam(int number, String name, String abbreviation,
+			Color fgColour, Color bgColour, boolean brighten, boolean darken) {
+		setGradient(bgColour, brighten, darken);
+		setForeground(fgColour);
+		setAbbreviation(name, abbreviation);
+		setText(number + " - " + name);
+	}
+
+	/**
+	 * Sets up this label to show that no team is selected.
+	 */
+	private void showNoTeam(boolean brighten, boolean darken) {
+		setGradient(new Color(255, 96, 96), brighten, darken);
+		setForeground(Color.BLACK);
+		setAbbreviation("No team selected", "No team");
+		setText("No team selected");
+	}
+
 	/**
 	 * Scales the label's font to the specified size.
 	 */
@@ -210,4 +242,4 @@ public class GradientLabel extends JLabel {
 			return replaced;
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
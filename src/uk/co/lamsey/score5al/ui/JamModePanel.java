@@ -16,6 +16,8 @@ import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 import javax.swing.border.Border;
 
+import uk.co.lamsey.score5al.control.ChangeType;
+import uk.co.lamsey.score5al.control.JamClock;
 import uk.co.lamsey.score5al.control.JamControl;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
@@ -147,9 +149,11 @@ public class JamModePanel {
 		// add listeners and force updates
 		MatchControl matchControl = MatchControl.getInstance();
 		MatchUpdater matchUpdater = new MatchUpdater();
-		matchControl.addObserver(matchUpdater);
+		matchControl.addObserver(new FrameObserver<Match>(matchUpdater),
+				ChangeType.MATCH_CHANGED);
 		JamUpdater jamUpdater = new JamUpdater();
-		JamControl.getInstance().addObserver(jamUpdater);
+		JamControl.getInstance().addObserver(
+				new FrameObserver<Jam>(jamUpdater));
 		Match match = matchControl.getMatch();
 		matchUpdater.update(match);
 		jamUpdater.update(match.getJam(0));
@@ -273,13 +277,21 @@ public class JamModePanel {
 			team1Score.setText(String.valueOf(jam.getScore1()));
 			team2Score.setText(String.valueOf(jam.getScore2()));
 
-			// update timer (turn it red as time runs out)
+			// update timer (turn it red and show tenths as time runs out) -
+			// the clock's millisecond count is only for the current jam
+			JamControl jc = JamControl.getInstance();
 			int secs = jam.getTimeRemaining();
-			timer.setText(String.format("%d:%02d", secs / 60, secs % 60));
+			long millis = jc.getJam() == jam ? jc.getTimeRemainingMillis()
+					: secs * 1000L;
+			if (millis > 0 && millis < JamClock.TENTHS_THRESHOLD) {
+				long tenths = (millis + 99) / 100;
+				timer.setText(String.format("%d.%d", tenths / 10, tenths % 10));
+			} else {
+				timer.setText(String.format("%d:%02d", secs / 60, secs % 60));
+			}
 			timer.setForeground(secs <= 10 ? Color.RED : Color.WHITE);
 
 			// update heat number
-			JamControl jc = JamControl.getInstance();
 			jamNumber.setText("Heat " + (jc.getHeatIndex() + 1) + " / Jam "
 					+ (jc.getJamIndex() + 1));
 		}
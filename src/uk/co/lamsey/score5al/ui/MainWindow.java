@@ -22,6 +22,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import uk.co.lamsey.score5al.control.JamControl;
 import uk.co.lamsey.score5al.control.LogicException;
 import uk.co.lamsey.score5al.control.MatchControl;
+import uk.co.lamsey.score5al.control.SaveListener;
 
 /**
  * Represents the main window of the Score5al UI, which contains the controls
@@ -48,6 +49,11 @@ public class MainWindow {
 	 */
 	private JFileChooser fileChooser;
 
+	/**
+	 * The file chooser filter for binary match files.
+	 */
+	private FileNameExtensionFilter binaryFilter;
+
 	/**
 	 * Whether or not the last status was sticky, meaning it shouldn't be
 	 * cleared until the next message is displayed.
@@ -106,8 +112,12 @@ public class MainWindow {
 		contentPane.add(tabPane, BorderLayout.CENTER);
 		contentPane.add(statusPanel, BorderLayout.SOUTH);
 
-		// set up the file chooser
+		// set up the file chooser (CSV files are the default)
 		fileChooser = new JFileChooser();
+		binaryFilter = new FileNameExtensionFilter(
+				"Score5al binary match files (quicker for large matches)",
+				"s5b");
+		fileChooser.addChoosableFileFilter(binaryFilter);
 		fileChooser.setFileFilter(new FileNameExtensionFilter(
 				"Score5al saved match files", "s5l"));
 	}
@@ -127,6 +137,41 @@ public class MainWindow {
 		EditMatchPanel.getInstance().getPanel().requestFocusInWindow();
 		// all done, show the GUI
 		window.setVisible(true);
+		// offer to recover any changes lost when the program last stopped
+		checkRecovery();
+	}
+
+	/**
+	 * Checks if the program didn't shut down properly last time, and if so
+	 * asks the user whether to recover the unsaved changes from then.
+	 */
+	private void checkRecovery() {
+		MatchControl matchControl = MatchControl.getInstance();
+		if (!matchControl.isRecoveryAvailable()) {
+			return;
+		}
+		int result = JOptionPane.showConfirmDialog(window,
+				"Score5al didn't shut down properly last time. Do you want to "
+						+ "recover the unsaved changes?",
+				"Recover unsaved changes", JOptionPane.YES_NO_OPTION,
+				JOptionPane.WARNING_MESSAGE);
+		if (result == JOptionPane.YES_OPTION) {
+			try {
+				List<String> warnings = matchControl.recoverMatch();
+				if (warnings.isEmpty()) {
+					updateStatusBar(Icons.SUCCESS,
+							"Recovered unsaved changes.", true);
+				} else {
+					showWarnings(warnings);
+					updateStatusBar(Icons.WARNING,
+							"Recovered unsaved changes (with warnings).", true);
+				}
+			} catch (LogicException error) {
+				showError(error.getMessage());
+			}
+		} else {
+			matchControl.discardRecovery();
+		}
 	}
 
 	/**
@@ -135,17 +180,18 @@ public class MainWindow {
 	 */
 	public void close() {
 
-		// check to see if there are unsaved changes
-		boolean exitConfirmed = checkSaveNeeded("exiting");
-
-		// if it's OK to quit, close down the UI
-		if (exitConfirmed) {
-			JamControl.getInstance().stopTimer();
-			ScoreboardWindow.getInstance().close();
-			window.setVisible(false);
-			window.dispose();
-			System.exit(0);
-		}
+		// check to see if there are unsaved changes, and once it's OK to quit,
+		// close down the UI
+		checkSaveNeeded("exiting", new Runnable() {
+			public void run() {
+				JamControl.getInstance().stopTimer();
+				MatchControl.getInstance().closeJournal();
+				ScoreboardWindow.getInstance().close();
+				window.setVisible(false);
+				window.dispose();
+				System.exit(0);
+			}
+		});
 	}
 
 	/**
@@ -178,10 +224,12 @@ public class MainWindow {
 	public void newMatch() {
 
 		// check if we need to save
-		if (checkSaveNeeded("creating a new match")) {
-			MatchControl.getInstance().newMatch();
-			updateStatusBar(Icons.SUCCESS, "New match created", true);
-		}
+		checkSaveNeeded("creating a new match", new Runnable() {
+			public void run() {
+				MatchControl.getInstance().newMatch();
+				updateStatusBar(Icons.SUCCESS, "New match created", true);
+			}
+		});
 	}
 
 	/**
@@ -191,77 +239,118 @@ public class MainWindow {
 	public void openMatch() {
 
 		// check if we need to save
-		if (checkSaveNeeded("opening a new match")) {
-
-			// get the file to open from the user
-			if (fileChooser.showOpenDialog(window) == JFileChooser.APPROVE_OPTION) {
-				String filename = fileChooser.getSelectedFile().getPath();
-				try {
-					List<String> warnings = MatchControl.getInstance()
-							.loadMatch(filename);
-					if (warnings.isEmpty()) {
-						updateStatusBar(Icons.SUCCESS,
-								"Loaded match successfully.", true);
-					} else {
-						showWarnings(warnings);
-						updateStatusBar(Icons.WARNING,
-								"Loaded match (with warnings).", true);
-					}
-				} catch (LogicException error) {
-					showError(error.getMessage());
+		checkSaveNeeded("opening a new match", new Runnable() {
+			public void run() {
+				loadMatch();
+			}
+		});
+	}
+
+	/**
+	 * Lets the user pick a match to load, and loads it.
+	 */
+	private void loadMatch() {
+
+		// get the file to open from the user
+		if (fileChooser.showOpenDialog(window) == JFileChooser.APPROVE_OPTION) {
+			String filename = fileChooser.getSelectedFile().getPath();
+			try {
+				List<String> warnings = MatchControl.getInstance().loadMatch(
+						filename);
+				if (warnings.isEmpty()) {
+					updateStatusBar(Icons.SUCCESS,
+							"Loaded match successfully.", true);
+				} else {
+					showWarnings(warnings);
+					updateStatusBar(Icons.WARNING,
+							"Loaded match (with warnings).", true);
 				}
+			} catch (LogicException error) {
+				showError(error.getMessage());
 			}
 		}
 	}
 
 	/**
-	 * Saves the current match and returns whether or not it was saved
-	 * successfully.
+	 * Saves the current match in the background. The outcome is shown in the
+	 * status bar.
 	 */
-	public boolean saveMatch() {
-		return saveMatchAs(MatchControl.getInstance().getMatch()
-				.getSaveFilePath());
+	public void saveMatch() {
+		saveMatchAs(MatchControl.getInstance().getMatch().getSaveFilePath());
 	}
 
 	/**
 	 * Saves the match to the specified file (null to have the user specify a
-	 * file), and returns whether or not the save succeeded.
+	 * file) in the background. The outcome is shown in the status bar.
+	 */
+	public void saveMatchAs(String filename) {
+		saveMatchAs(filename, null);
+	}
+
+	/**
+	 * Saves the match to the specified file (null to have the user specify a
+	 * file) in the background, then runs the passed operation on the event
+	 * dispatch thread if the save succeeds.
+	 * 
+	 * @param afterSave
+	 *            The operation to run once the match has been saved (may be
+	 *            null).
 	 */
-	public boolean saveMatchAs(String filename) {
+	private void saveMatchAs(String filename, final Runnable afterSave) {
 
 		// check if we know where to save to
 		if (filename == null) {
 			// not saved, ask for the filename
 			if (fileChooser.showSaveDialog(window) == JFileChooser.APPROVE_OPTION) {
 				filename = fileChooser.getSelectedFile().getPath();
-				if (!filename.endsWith(".s5l")) {
-					filename += ".s5l";
+				if (!filename.endsWith(".s5l") && !filename.endsWith(".s5b")) {
+					filename += fileChooser.getFileFilter() == binaryFilter
+							? ".s5b" : ".s5l";
 				}
 			}
 		}
 
 		// if there's a file to save to, save the file
 		if (filename != null) {
+			updateStatusBar(Icons.SAVE, "Saving...", true);
 			try {
-				MatchControl.getInstance().saveMatch(filename);
-				updateStatusBar(Icons.SUCCESS, "File saved successfully", true);
-				return true;
+				MatchControl.getInstance().saveMatch(filename,
+						new SaveListener() {
+							public void saveCompleted(String saveFilePath) {
+								updateStatusBar(Icons.SUCCESS,
+										"File saved successfully", true);
+								if (afterSave != null) {
+									SwingUtilities.invokeLater(afterSave);
+								}
+							}
+
+							public void saveFailed(String saveFilePath,
+									LogicException error) {
+								updateStatusBar(Icons.WARNING,
+										"File not saved.", true);
+								showError(error.getMessage());
+							}
+						});
 			} catch (LogicException error) {
-				showError(filename);
+				updateStatusBar(Icons.WARNING, "File not saved.", true);
+				showError(error.getMessage());
 			}
 		}
-		return false;
 	}
 
 	/**
 	 * Checks if the user wants to save the current match before performing some
-	 * other operation. Returns whether or not it's OK to proceed.
+	 * other operation, then performs it once it's OK to proceed (after the
+	 * save has finished, if the user chose to save). The operation isn't
+	 * performed if the user cancels or the save fails.
 	 * 
 	 * @param action
 	 *            The missing text in the sentence
 	 *            "Do you want to save before ...?"
+	 * @param operation
+	 *            The operation to perform, on the event dispatch thread.
 	 */
-	public boolean checkSaveNeeded(String action) {
+	public void checkSaveNeeded(String action, Runnable operation) {
 		JamControl jamControl = JamControl.getInstance();
 		if (MatchControl.getInstance().isUnsavedChanges()
 				|| jamControl.isTimerRunning()) {
@@ -273,18 +362,17 @@ public class MainWindow {
 			if (result == JOptionPane.YES_OPTION) {
 				// user wants to save - make sure timer is stopped, then save
 				jamControl.stopTimer();
-				return saveMatch();
+				saveMatchAs(MatchControl.getInstance().getMatch()
+						.getSaveFilePath(), operation);
 			} else if (result == JOptionPane.NO_OPTION) {
 				// user doesn't want to save - ensure timer is stopped
 				jamControl.stopTimer();
-				return true;
-			} else {
-				// user cancelled
-				return false;
+				operation.run();
 			}
+			// otherwise the user cancelled
 		} else {
 			// no unsaved changes and timer not running
-			return true;
+			operation.run();
 		}
 	}
 
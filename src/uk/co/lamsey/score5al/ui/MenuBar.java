@@ -3,6 +3,11 @@ package uk.co.lamsey.score5al.ui;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JFileChooser;
@@ -12,6 +17,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JSeparator;
 import javax.swing.KeyStroke;
+import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import uk.co.lamsey.score5al.control.LogicException;
@@ -38,6 +44,16 @@ public class MenuBar {
 	 */
 	private JFileChooser fileChooser;
 
+	/**
+	 * The export format for each of the file chooser's filters.
+	 */
+	private Map<FileFilter, ExportFormat> exportFilters;
+
+	/**
+	 * The file chooser used to select saved matches to export.
+	 */
+	private JFileChooser matchChooser;
+
 	/**
 	 * The team formatting to be used when exporting match data.
 	 */
@@ -49,11 +65,23 @@ public class MenuBar {
 	 */
 	private MenuBar() {
 
-		// create the menubar and the export filechooser
+		// create the menubar and the export filechoosers (CSV by default)
 		menuBar = new JMenuBar();
 		fileChooser = new JFileChooser();
-		fileChooser.setFileFilter(new FileNameExtensionFilter(
-				"Comma-Separated Value (CSV) files", "csv"));
+		exportFilters = new HashMap<FileFilter, ExportFormat>();
+		for (ExportFormat format : ExportFormat.values()) {
+			FileFilter filter = new FileNameExtensionFilter(
+					format.getDescription(), format.getExtension());
+			exportFilters.put(filter, format);
+			fileChooser.addChoosableFileFilter(filter);
+			if (format == ExportFormat.CSV) {
+				fileChooser.setFileFilter(filter);
+			}
+		}
+		matchChooser = new JFileChooser();
+		matchChooser.setMultiSelectionEnabled(true);
+		matchChooser.setFileFilter(new FileNameExtensionFilter(
+				"Score5al saved match files", "s5l", "s5b"));
 
 		// match menu - like the standard File menu
 		JMenu matchMenu = new JMenu("Match");
@@ -143,10 +171,11 @@ public class MenuBar {
 		matchMenu.add(distribution);
 
 		// save match
-		JMenuItem export = new JMenuItem("Export to CSV", Icons.EXPORT);
+		JMenuItem export = new JMenuItem("Export...", Icons.EXPORT);
 		export.setMnemonic(KeyEvent.VK_E);
 		export.addMouseListener(new HoverStatus("Exports the match data to a "
-				+ "CSV file for importing into a spreadsheet package"));
+				+ "CSV file for importing into a spreadsheet package, a JSON "
+				+ "file or an HTML results sheet"));
 		export.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				export();
@@ -154,6 +183,19 @@ public class MenuBar {
 		});
 		matchMenu.add(export);
 
+		// export several saved matches
+		JMenuItem exportMatches = new JMenuItem("Export saved matches...",
+				Icons.EXPORT);
+		exportMatches.setMnemonic(KeyEvent.VK_V);
+		exportMatches.addMouseListener(new HoverStatus("Exports the data of "
+				+ "several saved matches to a single file"));
+		exportMatches.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				exportMatches();
+			}
+		});
+		matchMenu.add(exportMatches);
+
 		// export options submenu
 		JMenu exportOptions = new JMenu("Export options");
 		exportOptions.setMnemonic(KeyEvent.VK_P);
@@ -280,22 +322,92 @@ public class MenuBar {
 
 		// always ask for the filename when exporting
 		MainWindow mw = MainWindow.getInstance();
-		if (fileChooser.showSaveDialog(mw.getWindow()) == JFileChooser.APPROVE_OPTION) {
-			String filename = fileChooser.getSelectedFile().getPath();
-			if (!filename.endsWith(".csv")) {
-				filename += ".csv";
-			}
+		String filename = chooseExportFile();
+		if (filename != null) {
 
 			// try to export the file
 			try {
 				MatchControl.getInstance().exportMatch(filename,
+						ExportFormat.forFileName(filename).createExporter(),
 						exportTeamFormat);
 				mw.updateStatusBar(Icons.SUCCESS,
 						"Match data exported successfully.", true);
 			} catch (LogicException error) {
-				mw.showError(filename);
+				mw.showError(error.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Shows the filechoosers for the 'export saved matches' function (one to
+	 * pick the matches, then one for the export file) and performs the export
+	 * in the background if desired.
+	 */
+	private void exportMatches() {
+
+		// pick the matches to export
+		final MainWindow mw = MainWindow.getInstance();
+		if (matchChooser.showOpenDialog(mw.getWindow()) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		final List<String> matchPaths = new ArrayList<String>();
+		for (File file : matchChooser.getSelectedFiles()) {
+			matchPaths.add(file.getPath());
+		}
+		final String filename = chooseExportFile();
+		if (matchPaths.isEmpty() || filename == null) {
+			return;
+		}
+
+		// read and export the matches off the event dispatch thread
+		final ExportFormat format = ExportFormat.forFileName(filename);
+		final ExportTeamFormat teamFormat = exportTeamFormat;
+		mw.updateStatusBar(Icons.EXPORT, "Exporting " + matchPaths.size()
+				+ " matches...", true);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					List<String> warnings = MatchControl.getInstance()
+							.exportMatches(matchPaths, filename,
+									format.createExporter(), teamFormat);
+					if (warnings.isEmpty()) {
+						mw.updateStatusBar(Icons.SUCCESS, matchPaths.size()
+								+ " matches exported successfully.", true);
+					} else {
+						mw.updateStatusBar(Icons.WARNING, matchPaths.size()
+								+ " matches exported with warnings: "
+								+ warnings.get(0), true);
+					}
+				} catch (LogicException error) {
+					mw.updateStatusBar(Icons.WARNING, "Matches not exported - "
+							+ error.getMessage(), true);
+				}
 			}
+		}, "Match export");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Asks the user for the file to export to, adding the extension of the
+	 * selected format if the name doesn't already have a known one.
+	 * 
+	 * @return The file's path, or null if the user cancelled.
+	 */
+	private String chooseExportFile() {
+		MainWindow mw = MainWindow.getInstance();
+		if (fileChooser.showSaveDialog(mw.getWindow()) != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
+		String filename = fileChooser.getSelectedFile().getPath();
+		if (ExportFormat.forFileName(filename) == null) {
+			ExportFormat format = exportFilters.get(fileChooser
+					.getFileFilter());
+			filename += "."
+					+ (format == null ? ExportFormat.CSV : format)
+							.getExtension();
 		}
+		return filename;
 	}
 
 	/**
@@ -26,7 +26,8 @@ public class RankingTableModel extends AbstractTableModel {
 	public RankingTableModel() {
 		RankingControl rankingControl = RankingControl.getInstance();
 		rankings = rankingControl.getRankings();
-		rankingControl.addObserver(new RankingListener());
+		rankingControl.addObserver(new FrameObserver<List<Ranking>>(
+				new RankingListener()));
 	}
 
 	/**
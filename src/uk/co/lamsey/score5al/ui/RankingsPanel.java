@@ -21,6 +21,7 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
 import uk.co.lamsey.score5al.model.Match;
@@ -131,7 +132,8 @@ public class RankingsPanel {
 		// add match listener and force update
 		MatchControl matchControl = MatchControl.getInstance();
 		MatchUpdater matchUpdater = new MatchUpdater();
-		matchControl.addObserver(matchUpdater);
+		matchControl.addObserver(new FrameObserver<Match>(matchUpdater),
+				ChangeType.MATCH_CHANGED);
 		matchUpdater.update(matchControl.getMatch());
 
 		// add scaler
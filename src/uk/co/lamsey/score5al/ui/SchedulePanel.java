@@ -22,12 +22,14 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.JamControl;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
 import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.JamSnapshot;
 import uk.co.lamsey.score5al.model.Match;
-import uk.co.lamsey.score5al.model.Team;
+import uk.co.lamsey.score5al.model.TeamSnapshot;
 
 /**
  * Contains the schedule panel which can be displayed in the scoreboard.
@@ -97,7 +99,7 @@ public class SchedulePanel {
 
 		// set up custom renderers
 		teamRenderer = new TeamRenderer();
-		scheduleTable.setDefaultRenderer(Jam.class, teamRenderer);
+		scheduleTable.setDefaultRenderer(JamSnapshot.class, teamRenderer);
 		scoreRenderer = new ScoreRenderer();
 		scheduleTable.setDefaultRenderer(String.class, scoreRenderer);
 
@@ -139,9 +141,12 @@ public class SchedulePanel {
 		// add listeners and force updates
 		MatchControl matchControl = MatchControl.getInstance();
 		MatchUpdater matchUpdater = new MatchUpdater();
-		matchControl.addObserver(matchUpdater);
+		matchControl.addObserver(new FrameObserver<Match>(matchUpdater),
+				ChangeType.MATCH_CHANGED);
 		JamUpdater jamUpdater = new JamUpdater();
-		JamControl.getInstance().addObserver(jamUpdater);
+		JamControl.getInstance().addObserver(
+				new FrameObserver<Jam>(jamUpdater),
+				ChangeType.JAM_SELECTED);
 		Match match = matchControl.getMatch();
 		matchUpdater.update(match);
 		jamUpdater.update(match.getJam(0));
@@ -264,8 +269,8 @@ public class SchedulePanel {
 			String star = getFont().canDisplay('\u2605') ? "\u2605" : "*";
 
 			// show the team's name and LJ status
-			Jam jam = (Jam) object;
-			Team leadJammer = jam.getLeadJammer();
+			JamSnapshot jam = (JamSnapshot) object;
+			TeamSnapshot leadJammer = jam.getLeadJammer();
 			if (column == 0) {
 				showTeam(jam.getTeam1(), true, true);
 				setHorizontalAlignment(RIGHT);
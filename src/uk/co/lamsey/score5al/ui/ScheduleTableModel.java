@@ -6,10 +6,12 @@ import java.util.List;
 import javax.swing.SwingConstants;
 import javax.swing.table.AbstractTableModel;
 
+import uk.co.lamsey.score5al.control.ChangeType;
 import uk.co.lamsey.score5al.control.JamControl;
 import uk.co.lamsey.score5al.control.MatchControl;
 import uk.co.lamsey.score5al.control.Observer;
 import uk.co.lamsey.score5al.model.Jam;
+import uk.co.lamsey.score5al.model.JamSnapshot;
 import uk.co.lamsey.score5al.model.Match;
 
 /**
@@ -23,9 +25,10 @@ public class ScheduleTableModel extends AbstractTableModel {
 	private int heatNum;
 
 	/**
-	 * The list of jams for the heat being displayed.
+	 * The list of jams for the heat being displayed, from the most recent
+	 * snapshot of the match.
 	 */
-	private List<Jam> jamList;
+	private List<JamSnapshot> jamList;
 
 	/**
 	 * A spacer character used to justify scores - ideally the Unicode
@@ -38,8 +41,12 @@ public class ScheduleTableModel extends AbstractTableModel {
 	 */
 	public ScheduleTableModel() {
 		showHeat(0);
-		MatchControl.getInstance().addObserver(new MatchListener());
-		JamControl.getInstance().addObserver(new JamListener());
+		MatchControl.getInstance().addObserver(
+				new FrameObserver<Match>(new MatchListener()));
+		JamControl.getInstance().addObserver(
+				new FrameObserver<Jam>(new JamListener()),
+				ChangeType.SCORE_CHANGED, ChangeType.LEAD_JAMMER_CHANGED,
+				ChangeType.JAM_COMPLETED, ChangeType.JAM_SELECTED);
 
 		// work out which spacer to use
 		spacer = new GradientLabel(SwingConstants.LEFT, Font.PLAIN).getFont()
@@ -51,14 +58,14 @@ public class ScheduleTableModel extends AbstractTableModel {
 	 */
 	public void showHeat(int newHeatNum) {
 		heatNum = newHeatNum;
-		reload(MatchControl.getInstance().getMatch());
+		reload();
 	}
 
 	/**
-	 * Reloads the heat data from the passed match.
+	 * Reloads the heat data from the most recent snapshot of the match.
 	 */
-	private void reload(Match match) {
-		jamList = match.getHeats().get(heatNum).getJams();
+	private void reload() {
+		jamList = MatchControl.getInstance().getSnapshot().getJams(heatNum);
 		fireTableDataChanged();
 	}
 
@@ -79,13 +86,13 @@ public class ScheduleTableModel extends AbstractTableModel {
 	}
 
 	/**
-	 * Returns the table data for the given row and column. The jam is returned
-	 * for columns 0 and 2 so the renderer can extract team and LJ data. The
-	 * score (column 1) is returned as a string.
+	 * Returns the table data for the given row and column. The jam snapshot is
+	 * returned for columns 0 and 2 so the renderer can extract team and LJ
+	 * data. The score (column 1) is returned as a string.
 	 */
 	@Override
 	public Object getValueAt(int row, int column) {
-		Jam jam = jamList.get(row);
+		JamSnapshot jam = jamList.get(row);
 		if (column == 1) {
 			if (jam.isCompleted()) {
 
@@ -116,7 +123,7 @@ public class ScheduleTableModel extends AbstractTableModel {
 		if (columnIndex == 1) {
 			return String.class;
 		} else {
-			return Jam.class;
+			return JamSnapshot.class;
 		}
 	}
 
@@ -152,7 +159,7 @@ public class ScheduleTableModel extends AbstractTableModel {
 			if (heatNum >= match.getTotalHeats()) {
 				heatNum = 0;
 			}
-			reload(match);
+			reload();
 		}
 	}
 
@@ -166,14 +173,18 @@ public class ScheduleTableModel extends AbstractTableModel {
 		 */
 		@Override
 		public void update(Jam jam) {
-			int index = jamList.indexOf(jam);
+			Match match = MatchControl.getInstance().getMatch();
+			int index = match.getHeatIndex(jam) == heatNum ? match
+					.getJamIndexInHeat(jam) : -1;
 			if (index != -1) {
-				// jam is in current heat
+				// jam is in current heat - pick up the latest snapshot
+				jamList = MatchControl.getInstance().getSnapshot()
+						.getJams(heatNum);
 				fireTableRowsUpdated(index, index);
 			} else {
 				// jam is not in current heat, reload
 				heatNum = JamControl.getInstance().getHeatIndex();
-				reload(MatchControl.getInstance().getMatch());
+				reload();
 			}
 		}
 	}